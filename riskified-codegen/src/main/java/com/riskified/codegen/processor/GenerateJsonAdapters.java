@@ -0,0 +1,18 @@
+package com.riskified.codegen.processor;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generate a streaming json adapter for every class of the annotated package (or for the annotated class),
+ * plus a GeneratedJsonAdapters type adapter factory registering them.
+ * The adapters write exactly what the reflective Gson adapters configured with
+ * LOWER_CASE_WITH_UNDERSCORES field naming would write.
+ * @see JsonAdapterProcessor
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target({ElementType.PACKAGE, ElementType.TYPE})
+public @interface GenerateJsonAdapters {
+}
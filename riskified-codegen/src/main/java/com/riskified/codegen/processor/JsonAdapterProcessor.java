@@ -0,0 +1,489 @@
+package com.riskified.codegen.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.*;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * Compile time generator of the streaming json adapters, see {@link GenerateJsonAdapters}.
+ *
+ * For every class it emits a com.riskified.codegen.GeneratedTypeAdapter (part of the sdk) writing the fields in Gson's order
+ * (the class fields first, then the super classes fields, skipping static and transient ones)
+ * under their snake_case names. Fields are reached directly when visible, else through their
+ * getter / setter when the types match exactly, else through a cached Field.
+ */
+@SupportedAnnotationTypes("com.riskified.codegen.processor.GenerateJsonAdapters")
+public class JsonAdapterProcessor extends AbstractProcessor {
+    private static final String FACTORY_NAME = "GeneratedJsonAdapters";
+    private static final String ADAPTER_SUFFIX = "_JsonAdapter";
+    private static final String BASE_ADAPTER = "com.riskified.codegen.GeneratedTypeAdapter";
+
+    private Types types;
+    private Elements elements;
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (annotations.isEmpty()) {
+            return false;
+        }
+        types = processingEnv.getTypeUtils();
+        elements = processingEnv.getElementUtils();
+
+        Map<String, List<TypeElement>> classesByPackage = new TreeMap<String, List<TypeElement>>();
+        for (Element annotated : roundEnv.getElementsAnnotatedWith(GenerateJsonAdapters.class)) {
+            List<TypeElement> roots = new ArrayList<TypeElement>();
+            if (annotated.getKind() == ElementKind.PACKAGE) {
+                roots.addAll(ElementFilter.typesIn(annotated.getEnclosedElements()));
+            } else {
+                roots.add((TypeElement) annotated);
+            }
+            for (TypeElement root : roots) {
+                collect(root, classesByPackage);
+            }
+        }
+
+        for (Map.Entry<String, List<TypeElement>> entry : classesByPackage.entrySet()) {
+            try {
+                for (TypeElement type : entry.getValue()) {
+                    writeAdapter(entry.getKey(), type);
+                }
+                writeFactory(entry.getKey(), entry.getValue());
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Failed writing json adapters: " + e);
+            }
+        }
+        return true;
+    }
+
+    private void collect(TypeElement type, Map<String, List<TypeElement>> classesByPackage) {
+        if (type.getKind() != ElementKind.CLASS) {
+            return;
+        }
+        if (type.getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains(Modifier.STATIC)) {
+            return;
+        }
+        if (type.getModifiers().contains(Modifier.PRIVATE)) {
+            return;
+        }
+        if (isGenerated(type)) {
+            // the output of a previous run, compiled again when the build isn't clean
+            return;
+        }
+        String packageName = elements.getPackageOf(type).getQualifiedName().toString();
+        List<TypeElement> classes = classesByPackage.get(packageName);
+        if (classes == null) {
+            classes = new ArrayList<TypeElement>();
+            classesByPackage.put(packageName, classes);
+        }
+        if (!classes.contains(type)) {
+            classes.add(type);
+        }
+        for (TypeElement nested : ElementFilter.typesIn(type.getEnclosedElements())) {
+            collect(nested, classesByPackage);
+        }
+    }
+
+    private boolean isGenerated(TypeElement type) {
+        String name = type.getSimpleName().toString();
+        if (name.endsWith(ADAPTER_SUFFIX) || name.equals(FACTORY_NAME)) {
+            return true;
+        }
+        TypeElement adapter = elements.getTypeElement("com.google.gson.TypeAdapter");
+        TypeElement factory = elements.getTypeElement("com.google.gson.TypeAdapterFactory");
+        return adapter != null && types.isSubtype(types.erasure(type.asType()), types.erasure(adapter.asType()))
+                || factory != null && types.isSubtype(type.asType(), factory.asType());
+    }
+
+    private void writeFactory(String packageName, List<TypeElement> classes) throws IOException {
+        StringBuilder src = new StringBuilder();
+        src.append("package ").append(packageName).append(";\n\n");
+        src.append("// Generated by ").append(JsonAdapterProcessor.class.getName()).append(", do not edit\n");
+        src.append("public final class ").append(FACTORY_NAME).append(" implements com.google.gson.TypeAdapterFactory {\n\n");
+        src.append("    @SuppressWarnings(\"unchecked\")\n");
+        src.append("    public <T> com.google.gson.TypeAdapter<T> create(com.google.gson.Gson gson, com.google.gson.reflect.TypeToken<T> type) {\n");
+        src.append("        Class<? super T> raw = type.getRawType();\n");
+        for (TypeElement type : classes) {
+            src.append("        if (raw == ").append(rawName(type)).append(".class) {\n");
+            src.append("            return (com.google.gson.TypeAdapter<T>) new ").append(adapterName(type)).append("(gson, this);\n");
+            src.append("        }\n");
+        }
+        src.append("        return null;\n");
+        src.append("    }\n");
+        src.append("}\n");
+        write(packageName + "." + FACTORY_NAME, src);
+    }
+
+    private void writeAdapter(String packageName, TypeElement type) throws IOException {
+        List<Property> properties = properties(packageName, type);
+        String typeName = rawName(type);
+        String adapterName = adapterName(type);
+
+        StringBuilder src = new StringBuilder();
+        src.append("package ").append(packageName).append(";\n\n");
+        src.append("// Generated by ").append(JsonAdapterProcessor.class.getName()).append(", do not edit\n");
+        src.append("@SuppressWarnings({\"unchecked\", \"rawtypes\"})\n");
+        src.append("final class ").append(adapterName).append(" extends ").append(BASE_ADAPTER).append("<")
+                .append(typeName).append("> {\n");
+        for (Property property : properties) {
+            if (property.reflectiveField) {
+                src.append("    private static final java.lang.reflect.Field F_").append(property.id).append(" = field(")
+                        .append(rawName(property.owner)).append(".class, \"").append(property.fieldName).append("\");\n");
+            }
+        }
+        for (Property property : properties) {
+            src.append("    private final com.google.gson.TypeAdapter<").append(property.boxedType).append("> a_")
+                    .append(property.id).append(";\n");
+            if (property.elementType != null) {
+                src.append("    private final com.google.gson.TypeAdapter<").append(property.elementType).append("> e_")
+                        .append(property.id).append(";\n");
+            }
+        }
+        src.append("\n    ").append(adapterName).append("(com.google.gson.Gson gson, com.google.gson.TypeAdapterFactory factory) {\n");
+        src.append("        super(gson, factory, ").append(typeName).append(".class);\n");
+        for (Property property : properties) {
+            src.append("        a_").append(property.id).append(" = ").append(adapterLookup(property.type)).append(";\n");
+            if (property.elementType != null) {
+                src.append("        e_").append(property.id).append(" = gson.getAdapter(").append(property.elementClass).append(".class);\n");
+            }
+        }
+        src.append("    }\n\n");
+
+        // write
+        src.append("    public void write(com.google.gson.stream.JsonWriter out, ").append(typeName).append(" value) throws java.io.IOException {\n");
+        src.append("        if (value == null) {\n            out.nullValue();\n            return;\n        }\n");
+        src.append("        out.beginObject();\n");
+        for (Property property : properties) {
+            src.append("        {\n");
+            src.append("            ").append(property.boxedType).append(" v = ").append(property.getter).append(";\n");
+            String indent = "            ";
+            if (!property.primitive) {
+                src.append("            if ((Object) v != value) {\n");
+                indent = "                ";
+            }
+            src.append(indent).append("out.name(\"").append(property.jsonName).append("\");\n");
+            if (property.elementType != null) {
+                src.append(indent).append("if (v == null) {\n");
+                src.append(indent).append("    out.nullValue();\n");
+                src.append(indent).append("} else {\n");
+                src.append(indent).append("    out.beginArray();\n");
+                src.append(indent).append("    for (").append(property.elementType).append(" e : v) {\n");
+                if (property.elementRuntime) {
+                    src.append(indent).append("        writeRuntime(gson, out, e_").append(property.id).append(", ")
+                            .append(property.elementClass).append(".class, e);\n");
+                } else {
+                    src.append(indent).append("        e_").append(property.id).append(".write(out, e);\n");
+                }
+                src.append(indent).append("    }\n");
+                src.append(indent).append("    out.endArray();\n");
+                src.append(indent).append("}\n");
+            } else if (property.runtime) {
+                src.append(indent).append("writeRuntime(gson, out, a_").append(property.id).append(", ")
+                        .append(property.rawClass).append(".class, v);\n");
+            } else {
+                src.append(indent).append("a_").append(property.id).append(".write(out, v);\n");
+            }
+            if (!property.primitive) {
+                src.append("            }\n");
+            }
+            src.append("        }\n");
+        }
+        src.append("        out.endObject();\n");
+        src.append("    }\n\n");
+
+        // read
+        src.append("    public ").append(typeName).append(" read(com.google.gson.stream.JsonReader in) throws java.io.IOException {\n");
+        if (!isInstantiable(type)) {
+            src.append("        return reflectiveAdapter().read(in);\n");
+        } else {
+            src.append("        if (in.peek() == com.google.gson.stream.JsonToken.NULL) {\n");
+            src.append("            in.nextNull();\n            return null;\n        }\n");
+            src.append("        ").append(typeName).append(" value = new ").append(typeName).append("();\n");
+            src.append("        in.beginObject();\n");
+            src.append("        while (in.hasNext()) {\n");
+            src.append("            String name = in.nextName();\n");
+            src.append("            switch (name) {\n");
+            for (Property property : properties) {
+                src.append("                case \"").append(property.jsonName).append("\": {\n");
+                src.append("                    ").append(property.boxedType).append(" v = a_").append(property.id).append(".read(in);\n");
+                if (property.primitive) {
+                    src.append("                    if (v != null) {\n");
+                    src.append("                        ").append(property.setter).append(";\n");
+                    src.append("                    }\n");
+                } else {
+                    src.append("                    ").append(property.setter).append(";\n");
+                }
+                src.append("                    break;\n");
+                src.append("                }\n");
+            }
+            src.append("                default:\n");
+            src.append("                    in.skipValue();\n");
+            src.append("            }\n");
+            src.append("        }\n");
+            src.append("        in.endObject();\n");
+            src.append("        return value;\n");
+        }
+        src.append("    }\n");
+        src.append("}\n");
+        write(packageName + "." + adapterName, src);
+    }
+
+    private void write(String qualifiedName, StringBuilder src) throws IOException {
+        Writer writer = processingEnv.getFiler().createSourceFile(qualifiedName).openWriter();
+        try {
+            writer.write(src.toString());
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * The serialized properties in Gson's order: the class fields, then each super class fields.
+     */
+    private List<Property> properties(String packageName, TypeElement type) {
+        List<Property> properties = new ArrayList<Property>();
+        Set<String> jsonNames = new HashSet<String>();
+        List<TypeElement> hierarchy = new ArrayList<TypeElement>();
+        TypeElement current = type;
+        while (current != null && !current.getQualifiedName().contentEquals("java.lang.Object")) {
+            hierarchy.add(current);
+            TypeMirror superclass = current.getSuperclass();
+            current = superclass.getKind() == TypeKind.DECLARED ? (TypeElement) types.asElement(superclass) : null;
+        }
+        for (int level = 0; level < hierarchy.size(); level++) {
+            TypeElement owner = hierarchy.get(level);
+            for (VariableElement field : ElementFilter.fieldsIn(owner.getEnclosedElements())) {
+                Set<Modifier> modifiers = field.getModifiers();
+                if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT)) {
+                    continue;
+                }
+                Property property = new Property();
+                property.id = properties.size();
+                property.owner = owner;
+                property.fieldName = field.getSimpleName().toString();
+                property.jsonName = jsonName(field);
+                if (!jsonNames.add(property.jsonName)) {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                            type + " declares multiple JSON fields named " + property.jsonName, field);
+                }
+                describeType(property, field.asType());
+                describeAccess(property, packageName, hierarchy.subList(0, level), field);
+                properties.add(property);
+            }
+        }
+        return properties;
+    }
+
+    private void describeType(Property property, TypeMirror fieldType) {
+        TypeMirror type = containsTypeVariable(fieldType) ? objectType() : fieldType;
+        property.type = type;
+        property.primitive = type.getKind().isPrimitive();
+        property.boxedType = property.primitive
+                ? types.boxedClass((PrimitiveType) type).getQualifiedName().toString()
+                : type.toString();
+        property.rawClass = types.erasure(type).toString();
+        // final and boxed types can't have a more specific runtime type, generics (Map, List...) are never switched by Gson
+        property.runtime = !property.primitive && !isFinal(type)
+                && (type.getKind() != TypeKind.DECLARED || ((DeclaredType) type).getTypeArguments().isEmpty());
+
+        TypeMirror collection = types.erasure(elements.getTypeElement("java.util.Collection").asType());
+        if (type.getKind() == TypeKind.DECLARED && types.isAssignable(types.erasure(type), collection)) {
+            List<? extends TypeMirror> arguments = ((DeclaredType) type).getTypeArguments();
+            TypeMirror element = arguments.size() == 1 ? arguments.get(0) : objectType();
+            property.elementRuntime = element.getKind() == TypeKind.DECLARED && !isFinal(element);
+            if (element.getKind() == TypeKind.WILDCARD) {
+                TypeMirror bound = ((WildcardType) element).getExtendsBound();
+                element = bound == null ? objectType() : bound;
+            }
+            property.elementType = types.erasure(element).toString();
+            property.elementClass = property.elementType;
+            property.runtime = false;
+        }
+    }
+
+    private void describeAccess(Property property, String packageName, List<TypeElement> subclasses, VariableElement field) {
+        String owner = rawName(property.owner);
+        String fieldAccess = "((" + owner + ") value)." + property.fieldName;
+        boolean visible = field.getModifiers().contains(Modifier.PUBLIC)
+                || (!field.getModifiers().contains(Modifier.PRIVATE)
+                && elements.getPackageOf(property.owner).getQualifiedName().contentEquals(packageName));
+        String capitalized = Character.toUpperCase(property.fieldName.charAt(0)) + property.fieldName.substring(1);
+
+        if (visible) {
+            property.getter = fieldAccess;
+            property.setter = fieldAccess + " = v";
+            return;
+        }
+
+        ExecutableElement getter = findAccessor(property, packageName, subclasses, "get" + capitalized, null);
+        if (getter == null && (property.type.getKind() == TypeKind.BOOLEAN || property.boxedType.equals("java.lang.Boolean"))) {
+            getter = findAccessor(property, packageName, subclasses, "is" + capitalized, null);
+        }
+        ExecutableElement setter = findAccessor(property, packageName, subclasses, "set" + capitalized, property.type);
+
+        property.reflectiveField = getter == null || setter == null;
+        property.getter = getter != null
+                ? "((" + owner + ") value)." + getter.getSimpleName() + "()"
+                : "(" + property.boxedType + ") get(F_" + property.id + ", value)";
+        property.setter = setter != null
+                ? "((" + owner + ") value)." + setter.getSimpleName() + "(v)"
+                : "set(F_" + property.id + ", value, v)";
+    }
+
+    /**
+     * An accessor declared by the field's class, visible from the generated package, typed exactly
+     * as the field and not overridden by a subclass (Gson reads the field itself).
+     */
+    private ExecutableElement findAccessor(Property property, String packageName, List<TypeElement> subclasses,
+                                           String name, TypeMirror parameterType) {
+        for (ExecutableElement method : ElementFilter.methodsIn(property.owner.getEnclosedElements())) {
+            if (!method.getSimpleName().contentEquals(name) || method.getModifiers().contains(Modifier.STATIC)) {
+                continue;
+            }
+            boolean visible = method.getModifiers().contains(Modifier.PUBLIC)
+                    || (!method.getModifiers().contains(Modifier.PRIVATE)
+                    && elements.getPackageOf(property.owner).getQualifiedName().contentEquals(packageName));
+            if (!visible) {
+                continue;
+            }
+            List<? extends VariableElement> parameters = method.getParameters();
+            boolean matches = parameterType == null
+                    ? parameters.isEmpty() && types.isSameType(method.getReturnType(), property.type)
+                    : parameters.size() == 1 && types.isSameType(parameters.get(0).asType(), parameterType);
+            if (matches && !isOverridden(method, subclasses)) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    private boolean isOverridden(ExecutableElement method, List<TypeElement> subclasses) {
+        for (TypeElement subclass : subclasses) {
+            for (ExecutableElement candidate : ElementFilter.methodsIn(subclass.getEnclosedElements())) {
+                if (candidate.getSimpleName().equals(method.getSimpleName())
+                        && candidate.getParameters().size() == method.getParameters().size()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private String adapterLookup(TypeMirror type) {
+        if (type.getKind().isPrimitive() || type.getKind() != TypeKind.DECLARED
+                || ((DeclaredType) type).getTypeArguments().isEmpty()) {
+            return "gson.getAdapter(" + types.erasure(type) + ".class)";
+        }
+        return "gson.getAdapter(new com.google.gson.reflect.TypeToken<" + type + ">() {})";
+    }
+
+    private boolean isInstantiable(TypeElement type) {
+        if (type.getModifiers().contains(Modifier.ABSTRACT) || !type.getTypeParameters().isEmpty()) {
+            return false;
+        }
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isFinal(TypeMirror type) {
+        if (type.getKind() != TypeKind.DECLARED) {
+            return false;
+        }
+        Element element = types.asElement(type);
+        return element.getModifiers().contains(Modifier.FINAL);
+    }
+
+    private boolean containsTypeVariable(TypeMirror type) {
+        if (type.getKind() == TypeKind.TYPEVAR) {
+            return true;
+        }
+        if (type.getKind() == TypeKind.DECLARED) {
+            for (TypeMirror argument : ((DeclaredType) type).getTypeArguments()) {
+                if (containsTypeVariable(argument)) {
+                    return true;
+                }
+            }
+        }
+        if (type.getKind() == TypeKind.WILDCARD) {
+            WildcardType wildcard = (WildcardType) type;
+            return (wildcard.getExtendsBound() != null && containsTypeVariable(wildcard.getExtendsBound()))
+                    || (wildcard.getSuperBound() != null && containsTypeVariable(wildcard.getSuperBound()));
+        }
+        return false;
+    }
+
+    private TypeMirror objectType() {
+        return elements.getTypeElement("java.lang.Object").asType();
+    }
+
+    /**
+     * Gson's @SerializedName, or the LOWER_CASE_WITH_UNDERSCORES translation of the field name
+     */
+    private String jsonName(VariableElement field) {
+        for (AnnotationMirror annotation : field.getAnnotationMirrors()) {
+            if (annotation.getAnnotationType().toString().equals("com.google.gson.annotations.SerializedName")) {
+                for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : annotation.getElementValues().entrySet()) {
+                    if (entry.getKey().getSimpleName().contentEquals("value")) {
+                        return (String) entry.getValue().getValue();
+                    }
+                }
+            }
+        }
+        String name = field.getSimpleName().toString();
+        StringBuilder translation = new StringBuilder();
+        for (int i = 0; i < name.length(); i++) {
+            char character = name.charAt(i);
+            if (Character.isUpperCase(character) && translation.length() != 0) {
+                translation.append('_');
+            }
+            translation.append(character);
+        }
+        return translation.toString().toLowerCase(Locale.ENGLISH);
+    }
+
+    private String rawName(TypeElement type) {
+        return type.getQualifiedName().toString();
+    }
+
+    private String adapterName(TypeElement type) {
+        String packageName = elements.getPackageOf(type).getQualifiedName().toString();
+        String qualified = type.getQualifiedName().toString();
+        return qualified.substring(packageName.length() + 1).replace('.', '_') + ADAPTER_SUFFIX;
+    }
+
+    private static class Property {
+        int id;
+        TypeElement owner;
+        String fieldName;
+        String jsonName;
+        TypeMirror type;
+        boolean primitive;
+        String boxedType;
+        String rawClass;
+        boolean runtime;
+        String elementType;
+        String elementClass;
+        boolean elementRuntime;
+        boolean reflectiveField;
+        String getter;
+        String setter;
+    }
+}
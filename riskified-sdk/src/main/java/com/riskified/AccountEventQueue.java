@@ -0,0 +1,259 @@
+package com.riskified;
+
+import com.riskified.models.Contact;
+import com.riskified.models.CustomerCreate;
+import com.riskified.models.CustomerUpdate;
+import com.riskified.models.Login;
+import com.riskified.models.Logout;
+import com.riskified.models.Redeem;
+import com.riskified.models.ResetPassword;
+import com.riskified.models.Wishlist;
+import com.riskified.validations.FieldBadFormatException;
+import com.riskified.validations.IValidated;
+import com.riskified.validations.Validation;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fire and forget submission of the account actions: login, logout, customer create / update, reset password,
+ * wishlist, redeem and contact.
+ * An action is validated and serialized on the calling thread, then queued and the call returns without waiting
+ * for Riskified. A few worker threads send the actions waiting, only the status of the response is read, its body
+ * is skipped. When the queue is full an action is dropped, see {@link AccountEventQueueConfig.DropPolicy}.
+ * The actions that can't be sent, after the retries of the client, are counted as failed and not sent again.
+ */
+public class AccountEventQueue {
+    private static final long POLL_MILLIS = 100;
+
+    private final RiskifiedClient client;
+    private final AccountEventQueueConfig config;
+    private final BlockingQueue<Event> queue;
+    private final Thread[] workers;
+    private volatile boolean closed;
+    // the workers stop taking actions, the ones left are dropped
+    private volatile boolean abandoned;
+    private final LongAdder sentEvents = new LongAdder();
+    private final LongAdder failedEvents = new LongAdder();
+    private final LongAdder droppedEvents = new LongAdder();
+
+    AccountEventQueue(RiskifiedClient client, AccountEventQueueConfig config) {
+        this.client = client;
+        this.config = config;
+        this.queue = new ArrayBlockingQueue<Event>(config.getCapacity());
+        RiskifiedThreadFactory threads = new RiskifiedThreadFactory("riskified-account-events");
+        workers = new Thread[config.getWorkers()];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = threads.newThread(this::work);
+            workers[i].start();
+        }
+    }
+
+    public AccountEventQueueConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Queue a login, see {@link RiskifiedClient#login(Login)}
+     * @param login A login object
+     * @return true if the action was queued, false if it was dropped
+     * @throws IOException error serializing the action
+     * @throws FieldBadFormatException bad format found on field
+     */
+    public boolean login(Login login) throws IOException, FieldBadFormatException {
+        return submit(Endpoints.LOGIN, login);
+    }
+
+    /**
+     * Queue a customer create, see {@link RiskifiedClient#customerCreate(CustomerCreate)}
+     * @param customerCreate A customer create object
+     * @return true if the action was queued, false if it was dropped
+     * @throws IOException error serializing the action
+     * @throws FieldBadFormatException bad format found on field
+     */
+    public boolean customerCreate(CustomerCreate customerCreate) throws IOException, FieldBadFormatException {
+        return submit(Endpoints.CUSTOMER_CREATE, customerCreate);
+    }
+
+    /**
+     * Queue a customer update, see {@link RiskifiedClient#customerUpdate(CustomerUpdate)}
+     * @param customerUpdate A customer update object
+     * @return true if the action was queued, false if it was dropped
+     * @throws IOException error serializing the action
+     * @throws FieldBadFormatException bad format found on field
+     */
+    public boolean customerUpdate(CustomerUpdate customerUpdate) throws IOException, FieldBadFormatException {
+        return submit(Endpoints.CUSTOMER_UPDATE, customerUpdate);
+    }
+
+    /**
+     * Queue a logout, see {@link RiskifiedClient#logout(Logout)}
+     * @param logout A logout object
+     * @return true if the action was queued, false if it was dropped
+     * @throws IOException error serializing the action
+     * @throws FieldBadFormatException bad format found on field
+     */
+    public boolean logout(Logout logout) throws IOException, FieldBadFormatException {
+        return submit(Endpoints.LOGOUT, logout);
+    }
+
+    /**
+     * Queue a reset password, see {@link RiskifiedClient#resetPassword(ResetPassword)}
+     * @param resetPassword A resetPassword object
+     * @return true if the action was queued, false if it was dropped
+     * @throws IOException error serializing the action
+     * @throws FieldBadFormatException bad format found on field
+     */
+    public boolean resetPassword(ResetPassword resetPassword) throws IOException, FieldBadFormatException {
+        return submit(Endpoints.RESET_PASSWORD, resetPassword);
+    }
+
+    /**
+     * Queue a wishlist action, see {@link RiskifiedClient#wishlist(Wishlist)}
+     * @param wishlist A Wishlist object
+     * @return true if the action was queued, false if it was dropped
+     * @throws IOException error serializing the action
+     * @throws FieldBadFormatException bad format found on field
+     */
+    public boolean wishlist(Wishlist wishlist) throws IOException, FieldBadFormatException {
+        return submit(Endpoints.WISHLIST, wishlist);
+    }
+
+    /**
+     * Queue a redeem, see {@link RiskifiedClient#redeem(Redeem)}
+     * @param redeem A Redeem object
+     * @return true if the action was queued, false if it was dropped
+     * @throws IOException error serializing the action
+     * @throws FieldBadFormatException bad format found on field
+     */
+    public boolean redeem(Redeem redeem) throws IOException, FieldBadFormatException {
+        return submit(Endpoints.REDEEM, redeem);
+    }
+
+    /**
+     * Queue a contact, see {@link RiskifiedClient#contact(Contact)}
+     * @param contact A Contact object
+     * @return true if the action was queued, false if it was dropped
+     * @throws IOException error serializing the action
+     * @throws FieldBadFormatException bad format found on field
+     */
+    public boolean contact(Contact contact) throws IOException, FieldBadFormatException {
+        return submit(Endpoints.CONTACT, contact);
+    }
+
+    /**
+     * @return the actions waiting to be sent
+     */
+    public int getQueuedEvents() {
+        return queue.size();
+    }
+
+    public long getSentEvents() {
+        return sentEvents.sum();
+    }
+
+    /**
+     * @return the actions Riskified refused or that couldn't be sent
+     */
+    public long getFailedEvents() {
+        return failedEvents.sum();
+    }
+
+    /**
+     * @return the actions dropped because the queue was full or closed
+     */
+    public long getDroppedEvents() {
+        return droppedEvents.sum();
+    }
+
+    /**
+     * Stop accepting actions and send the ones left for up to closeWaitMillis, the others are dropped.
+     * Called when the client is closed.
+     */
+    void close() {
+        closed = true;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getCloseWaitMillis());
+        boolean interrupted = false;
+        for (Thread worker : workers) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            try {
+                if (remaining > 0) {
+                    worker.join(remaining);
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+                break;
+            }
+        }
+        abandoned = true;
+        // a send in flight ends with the transport of the client
+        while (queue.poll() != null) {
+            droppedEvents.increment();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean submit(String path, IValidated action) throws IOException, FieldBadFormatException {
+        Validation validation = client.getValidation();
+        if (validation != Validation.NONE) {
+            action.validate(validation);
+        }
+        // serialized now, the caller may change the action once it is queued
+        Event event = new Event(path, JSONFormater.toJsonBytes(action));
+        if (closed) {
+            droppedEvents.increment();
+            return false;
+        }
+        if (config.getDropPolicy() == AccountEventQueueConfig.DropPolicy.DROP_NEWEST) {
+            if (!queue.offer(event)) {
+                droppedEvents.increment();
+                return false;
+            }
+            return true;
+        }
+        while (!queue.offer(event)) {
+            if (queue.poll() != null) {
+                droppedEvents.increment();
+            }
+        }
+        return true;
+    }
+
+    private void work() {
+        while (!abandoned) {
+            Event event;
+            try {
+                event = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (event == null) {
+                if (closed) {
+                    return;
+                }
+                continue;
+            }
+            try {
+                client.postAccountAction(event.path, client.signedBody().append(event.json).build());
+                sentEvents.increment();
+            } catch (IOException | RuntimeException e) {
+                failedEvents.increment();
+            }
+        }
+    }
+
+    private static final class Event {
+        private final String path;
+        private final byte[] json;
+
+        Event(String path, byte[] json) {
+            this.path = path;
+            this.json = json;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.riskified;
+
+/**
+ * Settings of the {@link AccountEventQueue} of a client.
+ * At most capacity account actions wait to be sent by the workers, when the queue is full the new action or the
+ * oldest one waiting is dropped, by the drop policy. On close the workers send the actions left for up to
+ * closeWaitMillis, the actions still waiting after are dropped.
+ */
+public class AccountEventQueueConfig {
+    /**
+     * The action dropped when the queue is full
+     */
+    public enum DropPolicy {
+        /**
+         * The new action is dropped, the actions waiting keep their place
+         */
+        DROP_NEWEST,
+        /**
+         * The oldest action waiting is dropped to make room for the new one
+         */
+        DROP_OLDEST
+    }
+
+    private final int capacity;
+    private final int workers;
+    private final DropPolicy dropPolicy;
+    private final long closeWaitMillis;
+
+    private AccountEventQueueConfig(AccountEventQueueConfigBuilder builder) {
+        this.capacity = builder.capacity;
+        this.workers = builder.workers;
+        this.dropPolicy = builder.dropPolicy;
+        this.closeWaitMillis = builder.closeWaitMillis;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public DropPolicy getDropPolicy() {
+        return dropPolicy;
+    }
+
+    public long getCloseWaitMillis() {
+        return closeWaitMillis;
+    }
+
+    public static class AccountEventQueueConfigBuilder {
+        private int capacity = 10000;
+        private int workers = 2;
+        private DropPolicy dropPolicy = DropPolicy.DROP_NEWEST;
+        private long closeWaitMillis = 5000;
+
+        /**
+         * @param capacity the account actions waiting to be sent (default 10000)
+         * @return this builder
+         */
+        public AccountEventQueueConfigBuilder setCapacity(int capacity) {
+            if (capacity < 1) {
+                throw new IllegalArgumentException("capacity must be at least 1");
+            }
+            this.capacity = capacity;
+            return this;
+        }
+
+        /**
+         * @param workers the threads sending the account actions (default 2)
+         * @return this builder
+         */
+        public AccountEventQueueConfigBuilder setWorkers(int workers) {
+            if (workers < 1) {
+                throw new IllegalArgumentException("workers must be at least 1");
+            }
+            this.workers = workers;
+            return this;
+        }
+
+        /**
+         * @param dropPolicy the action dropped when the queue is full (default DROP_NEWEST)
+         * @return this builder
+         */
+        public AccountEventQueueConfigBuilder setDropPolicy(DropPolicy dropPolicy) {
+            if (dropPolicy == null) {
+                throw new IllegalArgumentException("dropPolicy can't be null");
+            }
+            this.dropPolicy = dropPolicy;
+            return this;
+        }
+
+        /**
+         * @param closeWaitMillis the time the actions left are sent for when the client is closed (default 5000)
+         * @return this builder
+         */
+        public AccountEventQueueConfigBuilder setCloseWaitMillis(long closeWaitMillis) {
+            this.closeWaitMillis = Math.max(0, closeWaitMillis);
+            return this;
+        }
+
+        public AccountEventQueueConfig build() {
+            return new AccountEventQueueConfig(this);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.riskified;
+
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.ProxyAuthenticationStrategy;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+import java.io.IOException;
+
+/**
+ * Pooled blocking transport, the calling thread waits for the response.
+ */
+class BlockingHttpTransport extends HttpTransport {
+    private final CloseableHttpClient client;
+
+    BlockingHttpTransport(int connectionTimeout, int requestTimeout, int socketTimeout, int maxConnections, int maxConnectionsPerRoute,
+                          ProxyClientDetails proxy, String... urls) {
+        super(connectionTimeout, requestTimeout, socketTimeout, maxConnections, maxConnectionsPerRoute, proxy, urls);
+
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        for (HttpRoute route : routes) {
+            connectionManager.setMaxPerRoute(route, maxConnectionsPerRoute);
+        }
+
+        HttpClientBuilder builder = HttpClientBuilder.create();
+        builder.setDefaultRequestConfig(createRequestConfig());
+        builder.setConnectionManager(connectionManager);
+        if (proxy != null) {
+            builder.setProxy(getProxyHost());
+            builder.setDefaultCredentialsProvider(getHttpProxyCredentials());
+            builder.setProxyAuthenticationStrategy(new ProxyAuthenticationStrategy());
+        }
+        this.client = builder.build();
+    }
+
+    public <T> T execute(HttpPost request, ResponseHandler<? extends T> handler) throws IOException {
+        return client.execute(request, handler, createContext());
+    }
+
+    public void close() throws IOException {
+        client.close();
+    }
+}
@@ -0,0 +1,130 @@
+package com.riskified;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded pool of the byte buffers used for request and response bodies.
+ * Buffers are size-classed in powers of two, from {@link #MIN_BUFFER_SIZE} to {@link #MAX_BUFFER_SIZE};
+ * larger requests are allocated and dropped. Each class keeps at most {@code maxBytesPerClass} worth
+ * of buffers, so a burst can't grow the pool for good. The pool is lock-free and shared by all threads,
+ * like the macs of {@link SHA256Handler}, so it works the same with virtual threads.
+ */
+public class BufferPool {
+    public static final int MIN_BUFFER_SIZE = 1024;
+    public static final int MAX_BUFFER_SIZE = 64 * 1024;
+    private static final int DEFAULT_MAX_BYTES_PER_CLASS = 4 * 1024 * 1024;
+    private static final BufferPool SHARED = new BufferPool(DEFAULT_MAX_BYTES_PER_CLASS);
+
+    private final SizeClass[] classes;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param maxBytesPerClass the bytes each size class may keep, at least one buffer is kept per class
+     */
+    public BufferPool(int maxBytesPerClass) {
+        int count = Integer.numberOfTrailingZeros(MAX_BUFFER_SIZE) - Integer.numberOfTrailingZeros(MIN_BUFFER_SIZE) + 1;
+        classes = new SizeClass[count];
+        for (int i = 0; i < count; i++) {
+            int size = MIN_BUFFER_SIZE << i;
+            classes[i] = new SizeClass(size, Math.max(1, maxBytesPerClass / size));
+        }
+    }
+
+    /**
+     * @return the pool shared by the clients and notification handlers of the process
+     */
+    public static BufferPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * Borrow a buffer, to be given back with {@link #release(byte[])}
+     * @param minSize the minimal length of the buffer
+     * @return a buffer of at least minSize bytes, its content is undefined
+     */
+    public byte[] acquire(int minSize) {
+        SizeClass sizeClass = classFor(minSize);
+        if (sizeClass == null) {
+            misses.increment();
+            return new byte[minSize];
+        }
+        byte[] buffer = sizeClass.buffers.poll();
+        if (buffer != null) {
+            sizeClass.pooled.decrementAndGet();
+            hits.increment();
+            return buffer;
+        }
+        misses.increment();
+        return new byte[sizeClass.size];
+    }
+
+    /**
+     * Give back a buffer obtained from {@link #acquire(int)}, it must not be used afterwards
+     * @param buffer the buffer, ignored when null or not of a pooled size
+     */
+    public void release(byte[] buffer) {
+        if (buffer == null) {
+            return;
+        }
+        SizeClass sizeClass = classFor(buffer.length);
+        if (sizeClass == null || sizeClass.size != buffer.length) {
+            return;
+        }
+        if (sizeClass.pooled.incrementAndGet() <= sizeClass.maxBuffers) {
+            sizeClass.buffers.offer(buffer);
+        } else {
+            sizeClass.pooled.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return the number of acquisitions served from the pool
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of acquisitions that allocated a new buffer
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the bytes currently held by the pool
+     */
+    public long getPooledBytes() {
+        long bytes = 0;
+        for (SizeClass sizeClass : classes) {
+            bytes += (long) sizeClass.pooled.get() * sizeClass.size;
+        }
+        return bytes;
+    }
+
+    private SizeClass classFor(int size) {
+        if (size > MAX_BUFFER_SIZE) {
+            return null;
+        }
+        if (size <= MIN_BUFFER_SIZE) {
+            return classes[0];
+        }
+        int rounded = Integer.highestOneBit(size - 1) << 1;
+        return classes[Integer.numberOfTrailingZeros(rounded) - Integer.numberOfTrailingZeros(MIN_BUFFER_SIZE)];
+    }
+
+    private static final class SizeClass {
+        private final int size;
+        private final int maxBuffers;
+        private final ConcurrentLinkedQueue<byte[]> buffers = new ConcurrentLinkedQueue<byte[]>();
+        private final AtomicInteger pooled = new AtomicInteger();
+
+        SizeClass(int size, int maxBuffers) {
+            this.size = size;
+            this.maxBuffers = maxBuffers;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.riskified;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrency limit of one {@link EndpointGroup}, see {@link BulkheadConfig}.
+ * A slot is held for the whole call, retries included.
+ */
+public class Bulkhead {
+    private final EndpointGroup group;
+    private final BulkheadConfig config;
+    private final Semaphore slots;
+    private final LongAdder rejectedCalls = new LongAdder();
+
+    Bulkhead(EndpointGroup group, BulkheadConfig config) {
+        this.group = group;
+        this.config = config;
+        this.slots = new Semaphore(config.getMaxConcurrentCalls());
+    }
+
+    public EndpointGroup getGroup() {
+        return group;
+    }
+
+    public BulkheadConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * @return the calls that can still start without waiting
+     */
+    public int getAvailableCalls() {
+        return slots.availablePermits();
+    }
+
+    /**
+     * @return the number of calls rejected because the bulkhead was full
+     */
+    public long getRejectedCalls() {
+        return rejectedCalls.sum();
+    }
+
+    /**
+     * Take a slot, to be given back with {@link #release()}
+     * @param remainingMillis the time left before the deadline of the call
+     * @throws BulkheadFullException when no slot was freed in time
+     * @throws InterruptedIOException when interrupted while waiting
+     */
+    void acquire(long remainingMillis) throws BulkheadFullException, InterruptedIOException {
+        long wait = Math.min(config.getMaxWaitMillis(), remainingMillis);
+        boolean acquired;
+        try {
+            acquired = wait <= 0 ? slots.tryAcquire() : slots.tryAcquire(wait, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a free " + group + " slot");
+        }
+        if (!acquired) {
+            rejectedCalls.increment();
+            throw new BulkheadFullException(group);
+        }
+    }
+
+    void release() {
+        slots.release();
+    }
+}
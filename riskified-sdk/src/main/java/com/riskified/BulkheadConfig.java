@@ -0,0 +1,74 @@
+package com.riskified;
+
+/**
+ * Settings of the {@link Bulkhead} of an {@link EndpointGroup}.
+ * A bulkhead with its own connections gets a connection pool of its own, otherwise its calls share the
+ * pool of the client. At most maxConcurrentCalls calls of the group are in flight, a call waits up to
+ * maxWaitMillis for its turn (never past its deadline) and fails with {@link BulkheadFullException} after.
+ */
+public class BulkheadConfig {
+    private final Integer maxConnections;
+    private final int maxConcurrentCalls;
+    private final long maxWaitMillis;
+
+    private BulkheadConfig(BulkheadConfigBuilder builder) {
+        this.maxConnections = builder.maxConnections;
+        this.maxConcurrentCalls = builder.maxConcurrentCalls;
+        this.maxWaitMillis = builder.maxWaitMillis;
+    }
+
+    /**
+     * @return the size of the group's own connection pool, null when it shares the client pool
+     */
+    public Integer getMaxConnections() {
+        return maxConnections;
+    }
+
+    public int getMaxConcurrentCalls() {
+        return maxConcurrentCalls;
+    }
+
+    public long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    public static class BulkheadConfigBuilder {
+        private Integer maxConnections;
+        private int maxConcurrentCalls = Integer.MAX_VALUE;
+        private long maxWaitMillis;
+
+        /**
+         * @param maxConnections the size of a connection pool dedicated to the group (default none, the client pool is used)
+         * @return this builder
+         */
+        public BulkheadConfigBuilder setMaxConnections(Integer maxConnections) {
+            this.maxConnections = maxConnections;
+            return this;
+        }
+
+        /**
+         * @param maxConcurrentCalls the calls of the group that can be in flight together (default unbounded)
+         * @return this builder
+         */
+        public BulkheadConfigBuilder setMaxConcurrentCalls(int maxConcurrentCalls) {
+            if (maxConcurrentCalls < 1) {
+                throw new IllegalArgumentException("maxConcurrentCalls must be at least 1");
+            }
+            this.maxConcurrentCalls = maxConcurrentCalls;
+            return this;
+        }
+
+        /**
+         * @param maxWaitMillis the time a call waits for a free slot (default 0, rejected at once)
+         * @return this builder
+         */
+        public BulkheadConfigBuilder setMaxWaitMillis(long maxWaitMillis) {
+            this.maxWaitMillis = maxWaitMillis;
+            return this;
+        }
+
+        public BulkheadConfig build() {
+            return new BulkheadConfig(this);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.riskified;
+
+import java.io.IOException;
+
+/**
+ * Thrown without calling Riskified when the bulkhead of the endpoint group has no free slot
+ */
+public class BulkheadFullException extends IOException {
+    private final EndpointGroup group;
+
+    public BulkheadFullException(EndpointGroup group) {
+        super("Too many concurrent calls to the " + group + " endpoints");
+        this.group = group;
+    }
+
+    public EndpointGroup getGroup() {
+        return group;
+    }
+}
@@ -0,0 +1,239 @@
+package com.riskified;
+
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.conn.ConnectTimeoutException;
+
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Circuit breaker of one Riskified base URL, see {@link CircuitBreakerConfig} for the rules.
+ * The failure rate is computed over a rolling window of {@value #BUCKETS} time buckets.
+ * A closed breaker lets a call through without the lock. Its permit carries the generation of the state, the
+ * outcome of a call permitted before the state changed is not recorded.
+ */
+public class CircuitBreaker {
+    public enum State {
+        /**
+         * Calls go through, their outcome is recorded
+         */
+        CLOSED,
+        /**
+         * Calls fail fast with CircuitBreakerOpenException
+         */
+        OPEN,
+        /**
+         * A few probe calls go through, the others fail fast
+         */
+        HALF_OPEN
+    }
+
+    static final int BUCKETS = 10;
+
+    private final String baseUrl;
+    private final CircuitBreakerConfig config;
+    private final long bucketMillis;
+    private final long[] bucketIds = new long[BUCKETS];
+    private final int[] bucketCalls = new int[BUCKETS];
+    private final int[] bucketFailures = new int[BUCKETS];
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private volatile State state = State.CLOSED;
+    private long openedAt;
+    private volatile long generation;
+    private int probesInFlight;
+    private int probeSuccesses;
+
+    CircuitBreaker(String baseUrl, CircuitBreakerConfig config) {
+        this.baseUrl = baseUrl;
+        this.config = config;
+        this.bucketMillis = config.getWindowMillis() / BUCKETS;
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    /**
+     * @return the current state, an open breaker whose open time is over is reported half-open
+     */
+    public State getState() {
+        State current = state;
+        if (current == State.OPEN && now() - openedAt >= config.getOpenMillis()) {
+            return State.HALF_OPEN;
+        }
+        return current;
+    }
+
+    /**
+     * @return true when a call would fail fast right now
+     */
+    public boolean isOpen() {
+        return getState() == State.OPEN;
+    }
+
+    /**
+     * @return the failure rate over the rolling window, 0 when no call was made
+     */
+    public double getFailureRate() {
+        lock.lock();
+        try {
+            long bucket = now() / bucketMillis;
+            int calls = 0;
+            int failures = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                if (bucket - bucketIds[i] < BUCKETS) {
+                    calls += bucketCalls[i];
+                    failures += bucketFailures[i];
+                }
+            }
+            return calls == 0 ? 0 : (double) failures / calls;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ask for permission to call
+     * @return the permit to pass to {@link #onResult}
+     * @throws CircuitBreakerOpenException when the call must fail fast
+     */
+    long acquire() throws CircuitBreakerOpenException {
+        if (state == State.CLOSED) {
+            return generation;
+        }
+        lock.lock();
+        try {
+            if (state == State.OPEN) {
+                if (now() - openedAt < config.getOpenMillis()) {
+                    throw new CircuitBreakerOpenException(baseUrl);
+                }
+                transition(State.HALF_OPEN);
+            }
+            if (state == State.HALF_OPEN) {
+                if (probesInFlight + probeSuccesses >= config.getHalfOpenProbes()) {
+                    throw new CircuitBreakerOpenException(baseUrl);
+                }
+                probesInFlight++;
+            }
+            return generation;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Record the outcome of a permitted call
+     * @param permit the permit returned by {@link #acquire()}
+     * @param error the error of the call, null on success
+     */
+    void onResult(long permit, Throwable error) {
+        if (error != null && isAbort(error)) {
+            onAbort(permit);
+            return;
+        }
+        if (error != null && !isFailure(error)) {
+            // the request was refused, Riskified itself is fine
+            error = null;
+        }
+        lock.lock();
+        try {
+            if (permit != generation) {
+                // the state changed while the call was in flight
+                return;
+            }
+            if (state == State.HALF_OPEN) {
+                probesInFlight--;
+                if (error != null) {
+                    transition(State.OPEN);
+                } else if (++probeSuccesses >= config.getHalfOpenProbes()) {
+                    transition(State.CLOSED);
+                }
+            } else if (state == State.CLOSED) {
+                record(error != null);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Give back the permit of a call aborted before Riskified answered, e.g. at its deadline.
+     * The call tells nothing about Riskified, it counts neither as a success nor as a failure.
+     * @param permit the permit returned by {@link #acquire()}
+     */
+    void onAbort(long permit) {
+        lock.lock();
+        try {
+            if (permit == generation && state == State.HALF_OPEN) {
+                // the probe slot goes to the next call
+                probesInFlight--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void record(boolean failed) {
+        long bucket = now() / bucketMillis;
+        int index = (int) Math.floorMod(bucket, (long) BUCKETS);
+        if (bucketIds[index] != bucket) {
+            bucketIds[index] = bucket;
+            bucketCalls[index] = 0;
+            bucketFailures[index] = 0;
+        }
+        bucketCalls[index]++;
+        if (!failed) {
+            return;
+        }
+        bucketFailures[index]++;
+        int calls = 0;
+        int failures = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (bucket - bucketIds[i] < BUCKETS) {
+                calls += bucketCalls[i];
+                failures += bucketFailures[i];
+            }
+        }
+        if (calls >= config.getMinimumCalls() && failures >= config.getFailureRateThreshold() * calls) {
+            transition(State.OPEN);
+        }
+    }
+
+    private void transition(State next) {
+        generation++;
+        probesInFlight = 0;
+        probeSuccesses = 0;
+        if (next == State.OPEN) {
+            openedAt = now();
+        } else if (next == State.CLOSED) {
+            for (int i = 0; i < BUCKETS; i++) {
+                bucketCalls[i] = 0;
+                bucketFailures[i] = 0;
+            }
+        }
+        state = next;
+    }
+
+    private static boolean isFailure(Throwable error) {
+        if (error instanceof HttpResponseException) {
+            return ((HttpResponseException) error).getStatusCode() >= 500;
+        }
+        return !(error instanceof CircuitBreakerOpenException);
+    }
+
+    /**
+     * The InterruptedIOExceptions other than the timeouts are aborts: the non-blocking transport cancellation,
+     * the blocking transport RequestAbortedException and DeadlineExceededException
+     */
+    static boolean isAbort(Throwable error) {
+        return error instanceof InterruptedIOException && !(error instanceof SocketTimeoutException)
+                && !(error instanceof ConnectTimeoutException);
+    }
+
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+}
@@ -0,0 +1,108 @@
+package com.riskified;
+
+/**
+ * Settings of the circuit breakers RiskifiedClient keeps for each Riskified base URL.
+ * A breaker opens when, over the rolling window, at least minimumCalls were made and the failure rate
+ * reached failureRateThreshold. While open, calls fail at once with {@link CircuitBreakerOpenException}.
+ * After openMillis the breaker is half-open: halfOpenProbes calls are let through, it closes when they all
+ * succeed and opens again on the first failure.
+ * Connection failures, timeouts and 5xx statuses are failures, 4xx statuses are not.
+ */
+public class CircuitBreakerConfig {
+    private final double failureRateThreshold;
+    private final int minimumCalls;
+    private final long windowMillis;
+    private final long openMillis;
+    private final int halfOpenProbes;
+
+    private CircuitBreakerConfig(CircuitBreakerConfigBuilder builder) {
+        this.failureRateThreshold = builder.failureRateThreshold;
+        this.minimumCalls = builder.minimumCalls;
+        this.windowMillis = builder.windowMillis;
+        this.openMillis = builder.openMillis;
+        this.halfOpenProbes = builder.halfOpenProbes;
+    }
+
+    public double getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    public int getMinimumCalls() {
+        return minimumCalls;
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    public long getOpenMillis() {
+        return openMillis;
+    }
+
+    public int getHalfOpenProbes() {
+        return halfOpenProbes;
+    }
+
+    public static class CircuitBreakerConfigBuilder {
+        private double failureRateThreshold = 0.5;
+        private int minimumCalls = 20;
+        private long windowMillis = 10000;
+        private long openMillis = 5000;
+        private int halfOpenProbes = 3;
+
+        /**
+         * @param failureRateThreshold the failure rate opening the breaker, between 0 and 1 (default 0.5)
+         * @return this builder
+         */
+        public CircuitBreakerConfigBuilder setFailureRateThreshold(double failureRateThreshold) {
+            if (failureRateThreshold <= 0 || failureRateThreshold > 1) {
+                throw new IllegalArgumentException("failureRateThreshold must be in (0, 1]");
+            }
+            this.failureRateThreshold = failureRateThreshold;
+            return this;
+        }
+
+        /**
+         * @param minimumCalls the calls needed in the window before the failure rate is considered (default 20)
+         * @return this builder
+         */
+        public CircuitBreakerConfigBuilder setMinimumCalls(int minimumCalls) {
+            this.minimumCalls = Math.max(1, minimumCalls);
+            return this;
+        }
+
+        /**
+         * @param windowMillis the length of the rolling window (default 10000)
+         * @return this builder
+         */
+        public CircuitBreakerConfigBuilder setWindowMillis(long windowMillis) {
+            if (windowMillis < CircuitBreaker.BUCKETS) {
+                throw new IllegalArgumentException("windowMillis must be at least " + CircuitBreaker.BUCKETS);
+            }
+            this.windowMillis = windowMillis;
+            return this;
+        }
+
+        /**
+         * @param openMillis the time calls fail fast before probing again (default 5000)
+         * @return this builder
+         */
+        public CircuitBreakerConfigBuilder setOpenMillis(long openMillis) {
+            this.openMillis = openMillis;
+            return this;
+        }
+
+        /**
+         * @param halfOpenProbes the calls let through, and needed to succeed, while half-open (default 3)
+         * @return this builder
+         */
+        public CircuitBreakerConfigBuilder setHalfOpenProbes(int halfOpenProbes) {
+            this.halfOpenProbes = Math.max(1, halfOpenProbes);
+            return this;
+        }
+
+        public CircuitBreakerConfig build() {
+            return new CircuitBreakerConfig(this);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.riskified;
+
+import java.io.IOException;
+
+/**
+ * Thrown without calling Riskified when the circuit breaker of the target base URL is open
+ */
+public class CircuitBreakerOpenException extends IOException {
+    private final String baseUrl;
+
+    public CircuitBreakerOpenException(String baseUrl) {
+        super("Circuit breaker is open for " + baseUrl);
+        this.baseUrl = baseUrl;
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+}
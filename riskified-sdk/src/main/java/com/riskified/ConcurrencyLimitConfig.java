@@ -0,0 +1,129 @@
+package com.riskified;
+
+/**
+ * Settings of the adaptive {@link ConcurrencyLimiter} of an endpoint group.
+ * The limit starts at initialLimit and moves between minLimit and maxLimit. It grows while the latency stays
+ * within rttTolerance times the minimum latency observed, and shrinks in proportion when the latency rises
+ * above it. A timeout or an overload status (429, 503, 504) multiplies it by backoffRatio. Each response moves the limit by
+ * smoothing of the computed change. Calls over the limit fail at once with {@link ConcurrencyLimitExceededException}.
+ */
+public class ConcurrencyLimitConfig {
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double rttTolerance;
+    private final double backoffRatio;
+    private final double smoothing;
+
+    private ConcurrencyLimitConfig(ConcurrencyLimitConfigBuilder builder) {
+        this.initialLimit = builder.initialLimit;
+        this.minLimit = builder.minLimit;
+        this.maxLimit = builder.maxLimit;
+        this.rttTolerance = builder.rttTolerance;
+        this.backoffRatio = builder.backoffRatio;
+        this.smoothing = builder.smoothing;
+    }
+
+    public int getInitialLimit() {
+        return initialLimit;
+    }
+
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    public double getRttTolerance() {
+        return rttTolerance;
+    }
+
+    public double getBackoffRatio() {
+        return backoffRatio;
+    }
+
+    public double getSmoothing() {
+        return smoothing;
+    }
+
+    public static class ConcurrencyLimitConfigBuilder {
+        private int initialLimit = 20;
+        private int minLimit = 1;
+        private int maxLimit = 200;
+        private double rttTolerance = 2;
+        private double backoffRatio = 0.9;
+        private double smoothing = 0.2;
+
+        /**
+         * @param initialLimit the limit before any response was seen (default 20)
+         * @return this builder
+         */
+        public ConcurrencyLimitConfigBuilder setInitialLimit(int initialLimit) {
+            this.initialLimit = Math.max(1, initialLimit);
+            return this;
+        }
+
+        /**
+         * @param minLimit the lowest limit (default 1)
+         * @return this builder
+         */
+        public ConcurrencyLimitConfigBuilder setMinLimit(int minLimit) {
+            this.minLimit = Math.max(1, minLimit);
+            return this;
+        }
+
+        /**
+         * @param maxLimit the highest limit, usually the size of the connection pool (default 200)
+         * @return this builder
+         */
+        public ConcurrencyLimitConfigBuilder setMaxLimit(int maxLimit) {
+            this.maxLimit = Math.max(1, maxLimit);
+            return this;
+        }
+
+        /**
+         * @param rttTolerance the latency, as a multiple of the minimum latency, above which the limit shrinks (default 2)
+         * @return this builder
+         */
+        public ConcurrencyLimitConfigBuilder setRttTolerance(double rttTolerance) {
+            if (rttTolerance < 1) {
+                throw new IllegalArgumentException("rttTolerance must be at least 1");
+            }
+            this.rttTolerance = rttTolerance;
+            return this;
+        }
+
+        /**
+         * @param backoffRatio the factor applied to the limit on a timeout or a 429, 503 or 504 status (default 0.9)
+         * @return this builder
+         */
+        public ConcurrencyLimitConfigBuilder setBackoffRatio(double backoffRatio) {
+            if (backoffRatio <= 0 || backoffRatio >= 1) {
+                throw new IllegalArgumentException("backoffRatio must be in (0, 1)");
+            }
+            this.backoffRatio = backoffRatio;
+            return this;
+        }
+
+        /**
+         * @param smoothing the share of the computed change applied on each response, between 0 and 1 (default 0.2)
+         * @return this builder
+         */
+        public ConcurrencyLimitConfigBuilder setSmoothing(double smoothing) {
+            if (smoothing <= 0 || smoothing > 1) {
+                throw new IllegalArgumentException("smoothing must be in (0, 1]");
+            }
+            this.smoothing = smoothing;
+            return this;
+        }
+
+        public ConcurrencyLimitConfig build() {
+            if (minLimit > maxLimit) {
+                throw new IllegalArgumentException("minLimit must not exceed maxLimit");
+            }
+            return new ConcurrencyLimitConfig(this);
+        }
+    }
+}
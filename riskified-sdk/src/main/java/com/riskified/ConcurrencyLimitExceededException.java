@@ -0,0 +1,25 @@
+package com.riskified;
+
+import java.io.IOException;
+
+/**
+ * Thrown without calling Riskified when the endpoint group already has as many calls in flight as its adaptive limit
+ */
+public class ConcurrencyLimitExceededException extends IOException {
+    private final EndpointGroup group;
+    private final int limit;
+
+    public ConcurrencyLimitExceededException(EndpointGroup group, int limit) {
+        super("Concurrency limit of " + limit + " calls reached for the " + group + " endpoints");
+        this.group = group;
+        this.limit = limit;
+    }
+
+    public EndpointGroup getGroup() {
+        return group;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+}
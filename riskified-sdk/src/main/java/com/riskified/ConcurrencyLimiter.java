@@ -0,0 +1,157 @@
+package com.riskified;
+
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.conn.ConnectTimeoutException;
+
+import java.net.SocketTimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Adaptive concurrency limit of one {@link EndpointGroup}, see {@link ConcurrencyLimitConfig} for the rules.
+ * Each attempt holds a slot while it is in flight, the latency of its response moves the limit:
+ * {@code limit = limit * clamp(rttTolerance * minRtt / rtt, 0.5, 1) + sqrt(limit)}, smoothed.
+ * The minimum latency is forgotten every {@value #MIN_RTT_SAMPLES} responses so it follows lasting changes.
+ * Taking a slot is a compare and set against the current limit, the samples update the limit and the minimum
+ * latency together.
+ */
+public class ConcurrencyLimiter {
+    static final int MIN_RTT_SAMPLES = 1000;
+
+    private final EndpointGroup group;
+    private final ConcurrencyLimitConfig config;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder rejectedCalls = new LongAdder();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private volatile int limit;
+    private double estimatedLimit;
+    private long minRttNanos = Long.MAX_VALUE;
+    private int samples;
+
+    ConcurrencyLimiter(EndpointGroup group, ConcurrencyLimitConfig config) {
+        this.group = group;
+        this.config = config;
+        this.estimatedLimit = Math.min(config.getMaxLimit(), Math.max(config.getMinLimit(), config.getInitialLimit()));
+        this.limit = (int) estimatedLimit;
+    }
+
+    public EndpointGroup getGroup() {
+        return group;
+    }
+
+    public ConcurrencyLimitConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * @return the calls that may currently be in flight together
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return the calls currently in flight
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return the minimum latency observed, 0 before the first response
+     */
+    public double getMinRttMillis() {
+        lock.lock();
+        try {
+            return minRttNanos == Long.MAX_VALUE ? 0 : minRttNanos / 1e6;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of calls rejected because the limit was reached
+     */
+    public long getRejectedCalls() {
+        return rejectedCalls.sum();
+    }
+
+    /**
+     * Take a slot for one attempt, to be given back with {@link #onResult}
+     * @return the start time of the attempt
+     * @throws ConcurrencyLimitExceededException when the limit is reached
+     */
+    long acquire() throws ConcurrencyLimitExceededException {
+        for (;;) {
+            int current = inFlight.get();
+            int max = limit;
+            if (current >= max) {
+                rejectedCalls.increment();
+                throw new ConcurrencyLimitExceededException(group, max);
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * Give the slot back and learn from the outcome of the attempt
+     * @param start the start time returned by {@link #acquire()}
+     * @param error the error of the attempt, null on success
+     */
+    void onResult(long start, Throwable error) {
+        int current = inFlight.getAndDecrement();
+        if (isOverload(error)) {
+            onSample(System.nanoTime() - start, current, true);
+        } else if (error == null || error instanceof HttpResponseException) {
+            // Riskified answered, the latency of the other statuses is as good as the one of a success
+            onSample(System.nanoTime() - start, current, false);
+        }
+        // other errors (aborts, refused connections) say nothing of the latency
+    }
+
+    /**
+     * @param rttNanos the latency of the response
+     * @param inFlight the calls in flight when it came
+     * @param dropped true when the call timed out or Riskified was overloaded
+     */
+    void onSample(long rttNanos, int inFlight, boolean dropped) {
+        lock.lock();
+        try {
+            double next;
+            if (dropped) {
+                next = estimatedLimit * config.getBackoffRatio();
+            } else {
+                if (++samples >= MIN_RTT_SAMPLES) {
+                    samples = 0;
+                    minRttNanos = Long.MAX_VALUE;
+                }
+                minRttNanos = Math.min(minRttNanos, Math.max(1, rttNanos));
+                double gradient = Math.max(0.5, Math.min(1, config.getRttTolerance() * minRttNanos / Math.max(1, rttNanos)));
+                double target = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+                if (target > estimatedLimit && inFlight * 2 < estimatedLimit) {
+                    // the callers don't use the limit, there is nothing to learn by growing it
+                    return;
+                }
+                next = estimatedLimit + (target - estimatedLimit) * config.getSmoothing();
+            }
+            estimatedLimit = Math.min(config.getMaxLimit(), Math.max(config.getMinLimit(), next));
+            limit = (int) estimatedLimit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static boolean isOverload(Throwable error) {
+        if (error instanceof HttpResponseException) {
+            // throttled, unavailable or timed out behind the gateway
+            int status = ((HttpResponseException) error).getStatusCode();
+            return status == 429 || status == 503 || status == 504;
+        }
+        // ConnectionPoolTimeoutException is a ConnectTimeoutException
+        return error instanceof SocketTimeoutException || error instanceof ConnectTimeoutException;
+    }
+}
@@ -0,0 +1,13 @@
+package com.riskified;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Thrown when a call didn't complete before the deadline of its {@link RequestOptions}
+ */
+public class DeadlineExceededException extends InterruptedIOException {
+
+    public DeadlineExceededException() {
+        super("Riskified call deadline exceeded");
+    }
+}
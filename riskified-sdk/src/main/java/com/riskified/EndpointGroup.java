@@ -0,0 +1,54 @@
+package com.riskified;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The families of Riskified endpoints, by how latency critical they are.
+ * Each group can be given its own {@link Bulkhead} so a busy group can't starve the others.
+ */
+public enum EndpointGroup {
+    /**
+     * Calls made while the customer waits: checkout, create, submit, analyze (decide), eligible, opt_in
+     */
+    DECISION(Endpoints.CHECKOUT_CREATE, Endpoints.ADVISE, Endpoints.CHECKOUT_DENIED, Endpoints.CREATE, Endpoints.SUBMIT,
+            Endpoints.DECIDE, Endpoints.ELIGIBLE, Endpoints.OPT_IN),
+    /**
+     * Updates of orders already decided: update, cancel, refund, fulfill, decision, chargeback
+     */
+    LIFECYCLE(Endpoints.UPDATE, Endpoints.CANCEL, Endpoints.REFUND, Endpoints.FULFILL, Endpoints.DECISION,
+            Endpoints.CHARGEBACK),
+    /**
+     * Account actions: login, logout, customer create / update, reset password, wishlist, redeem, contact
+     */
+    ACCOUNT(Endpoints.LOGIN, Endpoints.LOGOUT, Endpoints.CUSTOMER_CREATE, Endpoints.CUSTOMER_UPDATE,
+            Endpoints.RESET_PASSWORD, Endpoints.WISHLIST, Endpoints.REDEEM, Endpoints.CONTACT),
+    /**
+     * Historical orders uploads
+     */
+    HISTORICAL(Endpoints.HISTORICAL);
+
+    private static final Map<String, EndpointGroup> BY_PATH = new HashMap<String, EndpointGroup>();
+
+    static {
+        for (EndpointGroup group : values()) {
+            for (String path : group.paths) {
+                BY_PATH.put(path, group);
+            }
+        }
+    }
+
+    private final String[] paths;
+
+    EndpointGroup(String... paths) {
+        this.paths = paths;
+    }
+
+    /**
+     * @param path the path of an endpoint relative to its base URL, e.g. "/api/create"
+     * @return the group of the endpoint, null when it is unknown
+     */
+    public static EndpointGroup forPath(String path) {
+        return BY_PATH.get(path);
+    }
+}
@@ -0,0 +1,33 @@
+package com.riskified;
+
+/**
+ * The paths of the Riskified endpoints, relative to the base URL serving them.
+ */
+final class Endpoints {
+    static final String CHECKOUT_CREATE = "/api/checkout_create";
+    static final String ADVISE = "/api/advise";
+    static final String CHECKOUT_DENIED = "/api/checkout_denied";
+    static final String CREATE = "/api/create";
+    static final String SUBMIT = "/api/submit";
+    static final String UPDATE = "/api/update";
+    static final String CANCEL = "/api/cancel";
+    static final String REFUND = "/api/refund";
+    static final String FULFILL = "/api/fulfill";
+    static final String DECISION = "/api/decision";
+    static final String DECIDE = "/api/decide";
+    static final String ELIGIBLE = "/api/eligible";
+    static final String OPT_IN = "/api/opt_in";
+    static final String CHARGEBACK = "/api/chargeback";
+    static final String HISTORICAL = "/api/historical";
+    static final String LOGIN = "/customers/login";
+    static final String CUSTOMER_CREATE = "/customers/customer_create";
+    static final String CUSTOMER_UPDATE = "/customers/customer_update";
+    static final String LOGOUT = "/customers/logout";
+    static final String RESET_PASSWORD = "/customers/reset_password";
+    static final String WISHLIST = "/customers/wishlist";
+    static final String REDEEM = "/customers/redeem";
+    static final String CONTACT = "/customers/contact";
+
+    private Endpoints() {
+    }
+}
@@ -0,0 +1,87 @@
+package com.riskified;
+
+import com.riskified.models.Response;
+
+import java.util.List;
+
+/**
+ * The outcome of one request of a {@link HistoricalUploader}
+ */
+public class HistoricalChunk {
+    private final int index;
+    private final List<String> orderIds;
+    private final long sizeBytes;
+    private final Response response;
+    private final Exception error;
+    private final long startOffset;
+    private final long endOffset;
+
+    HistoricalChunk(int index, List<String> orderIds, long sizeBytes, Response response, Exception error) {
+        this(index, orderIds, sizeBytes, response, error, -1, -1);
+    }
+
+    HistoricalChunk(int index, List<String> orderIds, long sizeBytes, Response response, Exception error,
+                    long startOffset, long endOffset) {
+        this.index = index;
+        this.orderIds = orderIds;
+        this.sizeBytes = sizeBytes;
+        this.response = response;
+        this.error = error;
+        this.startOffset = startOffset;
+        this.endOffset = endOffset;
+    }
+
+    /**
+     * @return the number of the chunk, in the order the chunks were cut, from 0
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return the ids of the orders of the chunk, e.g. to send them again after a failure,
+     * empty when the records of a file were sent without being parsed
+     */
+    public List<String> getOrderIds() {
+        return orderIds;
+    }
+
+    /**
+     * @return the size of the json sent, 0 when the chunk failed before it was serialized
+     */
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    /**
+     * @return the response of Riskified, null when the chunk failed
+     */
+    public Response getResponse() {
+        return response;
+    }
+
+    /**
+     * @return the validation, serialization or request error, null when the chunk was sent
+     */
+    public Exception getError() {
+        return error;
+    }
+
+    /**
+     * @return the position of the first record of the chunk in the imported file, -1 when not read from a file
+     */
+    public long getStartOffset() {
+        return startOffset;
+    }
+
+    /**
+     * @return the position after the last record of the chunk in the imported file, -1 when not read from a file
+     */
+    public long getEndOffset() {
+        return endOffset;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+}
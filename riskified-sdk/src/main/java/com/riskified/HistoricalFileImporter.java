@@ -0,0 +1,412 @@
+package com.riskified;
+
+import com.riskified.models.Order;
+import com.riskified.models.Response;
+import com.riskified.validations.FieldBadFormatException;
+import com.riskified.validations.Validation;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Backfill of historical orders from NDJSON files, one order per line, e.g. exports of several GB.
+ * The file is memory mapped window by window and cut in chunks at the line ends by the calling thread, the
+ * records are never copied to the heap before they are appended to the signed body of their chunk. The chunks
+ * are signed and posted on the executor of the client with the limits of a {@link HistoricalUploadConfig}.
+ * With {@link Validation#NONE} the records are sent as they are, otherwise each one is parsed into an
+ * {@link Order}, validated and serialized again.
+ * The position before which every record was sent is kept in a checkpoint file, replaced as the chunks complete,
+ * so a run stopped by a crash or a failed chunk resumes from it. A failed chunk stops the run, the chunks sent
+ * after it are sent again by the next run.
+ */
+public class HistoricalFileImporter {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    // the largest region mapped at once, a record must fit in it
+    static final int WINDOW_SIZE = 256 * 1024 * 1024;
+
+    private final RiskifiedClient client;
+    private final HistoricalUploadConfig config;
+    private final int windowSize;
+
+    HistoricalFileImporter(RiskifiedClient client, HistoricalUploadConfig config) {
+        this(client, config, WINDOW_SIZE);
+    }
+
+    HistoricalFileImporter(RiskifiedClient client, HistoricalUploadConfig config, int windowSize) {
+        this.client = client;
+        this.config = config;
+        this.windowSize = windowSize;
+    }
+
+    public HistoricalUploadConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Import the orders of a file, from the checkpoint of the previous run if any
+     * @param file the NDJSON file, blank lines are skipped
+     * @param checkpoint the file keeping the position reached, null to read the whole file without checkpoint
+     * @return the outcome of the run
+     * @throws IOException error reading the file or writing the checkpoint, or a record larger than the mapped window
+     */
+    public HistoricalImportResult importFile(Path file, Path checkpoint) throws IOException {
+        return importFile(file, checkpoint, null);
+    }
+
+    /**
+     * Import the orders of a file, from the checkpoint of the previous run if any, reporting every chunk
+     * @param file the NDJSON file, blank lines are skipped
+     * @param checkpoint the file keeping the position reached, null to read the whole file without checkpoint
+     * @param listener notified of every chunk, may be null
+     * @return the outcome of the run, once every chunk is sent or failed
+     * @throws IOException error reading the file or writing the checkpoint, or a record larger than the mapped window
+     */
+    public HistoricalImportResult importFile(Path file, Path checkpoint, HistoricalUploader.ChunkListener listener) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long start = checkpoint == null ? 0 : readCheckpoint(checkpoint, channel, size);
+            Run run = new Run(checkpoint, start, listener);
+            // bounds the mapped chunks waiting for a thread, like the batches of an upload
+            int maxChunks = config.getParallelism() + config.getMaxConcurrentUploads();
+            Semaphore pending = new Semaphore(maxChunks);
+            try {
+                read(channel, size, start, run, pending);
+                pending.acquire(maxChunks);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while importing historical orders");
+            }
+            return run.result(size);
+        }
+    }
+
+    private void read(FileChannel channel, long size, long start, Run run, Semaphore pending) throws IOException, InterruptedException {
+        int maxOrders = config.getMaxOrdersPerChunk();
+        long maxBytes = config.getMaxChunkBytes();
+        long windowStart = start;
+        while (windowStart < size && !run.stopped) {
+            int length = (int) Math.min(windowSize, size - windowStart);
+            boolean last = windowStart + length == size;
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, length);
+            int chunkStart = 0;
+            int records = 0;
+            int position = 0;
+            while (position < length && !run.stopped) {
+                int end = indexOfNewLine(window, position, length);
+                if (end < 0 && !last) {
+                    // the record goes on in the next window
+                    break;
+                }
+                int next = end < 0 ? length : end + 1;
+                if (!isBlank(window, position, next)) {
+                    if (records > 0 && (records == maxOrders || next - chunkStart + HistoricalRun.OPEN.length() + HistoricalRun.CLOSE.length() > maxBytes)) {
+                        submit(window, windowStart, chunkStart, position, records, run, pending);
+                        chunkStart = position;
+                        records = 0;
+                    }
+                    records++;
+                }
+                position = next;
+            }
+            if (run.stopped) {
+                return;
+            }
+            if (position == 0) {
+                throw new IOException("The record at offset " + windowStart + " is larger than " + windowSize + " bytes");
+            }
+            submit(window, windowStart, chunkStart, position, records, run, pending);
+            windowStart += position;
+        }
+    }
+
+    private void submit(ByteBuffer window, long windowStart, int from, int to, int records, Run run, Semaphore pending)
+            throws InterruptedException {
+        final long sequence = run.sequence++;
+        final long start = windowStart + from;
+        final long end = windowStart + to;
+        if (records == 0) {
+            // blank lines only, nothing to send
+            run.complete(sequence, end);
+            return;
+        }
+        // numbered as they are cut, in the order of the file
+        final int index = run.nextChunk();
+        ByteBuffer chunk = window.duplicate();
+        chunk.limit(to);
+        chunk.position(from);
+        final ByteBuffer slice = chunk.slice();
+        run.addOrders(records);
+        pending.acquire();
+        try {
+            client.getExecutor().execute(() -> {
+                try {
+                    run.process(sequence, index, slice, records, start, end);
+                } finally {
+                    pending.release();
+                }
+            });
+        } catch (RejectedExecutionException | IllegalStateException e) {
+            pending.release();
+            run.fail(index, Collections.<String>emptyList(), start, end, e);
+        }
+    }
+
+    private static int indexOfNewLine(ByteBuffer buffer, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isBlank(ByteBuffer buffer, int from, int to) {
+        // a record starts with '{', so only blank lines are read to the end
+        for (int i = from; i < to; i++) {
+            if (!isWhitespace(buffer.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    private static long readCheckpoint(Path checkpoint, FileChannel channel, long size) throws IOException {
+        if (!Files.exists(checkpoint)) {
+            return 0;
+        }
+        String text = new String(Files.readAllBytes(checkpoint), UTF_8).trim();
+        long offset;
+        try {
+            offset = Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid checkpoint " + checkpoint + ": " + text);
+        }
+        if (offset < 0 || offset > size) {
+            throw new IOException("The checkpoint " + checkpoint + " is beyond the end of the file: " + offset);
+        }
+        if (offset > 0 && offset < size) {
+            ByteBuffer previous = ByteBuffer.allocate(1);
+            channel.read(previous, offset - 1);
+            if (previous.get(0) != '\n') {
+                throw new IOException("The checkpoint " + checkpoint + " doesn't match the file, offset " + offset
+                        + " isn't the start of a record");
+            }
+        }
+        return offset;
+    }
+
+    private static void writeCheckpoint(Path checkpoint, long offset) throws IOException {
+        // replaced in one move, a crash leaves either the previous or the new offset
+        Path temp = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+        Files.write(temp, Long.toString(offset).getBytes(UTF_8));
+        Files.move(temp, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * The state of one run
+     */
+    private final class Run extends HistoricalRun {
+        private final Path checkpoint;
+        private final long startOffset;
+        // the chunks done out of order, by sequence, waiting for the ones before them
+        private final Map<Long, Long> completed = new HashMap<Long, Long>();
+        // used by the calling thread only
+        private long sequence;
+        // not a monitor, the chunks may be posted from virtual threads
+        private final ReentrantLock lock = new ReentrantLock();
+        // guarded by lock
+        private long nextToCommit;
+        private long committed;
+        private long checkpointed;
+        // a thread is writing the checkpoint, the offsets committed meanwhile are written by it
+        private boolean writing;
+        private IOException checkpointError;
+        private volatile boolean stopped;
+
+        Run(Path checkpoint, long startOffset, HistoricalUploader.ChunkListener listener) {
+            super(HistoricalFileImporter.this.client, config, listener);
+            this.checkpoint = checkpoint;
+            this.startOffset = startOffset;
+            this.committed = startOffset;
+            this.checkpointed = startOffset;
+        }
+
+        @Override
+        boolean isStopped() {
+            return stopped;
+        }
+
+        /**
+         * Sign the records of a chunk, parsed and validated unless the validation is off, then post it
+         */
+        void process(long sequence, int index, ByteBuffer chunk, int records, long start, long end) {
+            if (stopped) {
+                return;
+            }
+            Validation validation = client.getValidation();
+            List<String> ids = validation == Validation.NONE ? Collections.<String>emptyList() : new ArrayList<String>();
+            try {
+                acquireSerializer();
+            } catch (InterruptedIOException e) {
+                fail(index, ids, start, end, e);
+                return;
+            }
+            SignedJsonEntity.Builder body = null;
+            SignedJsonEntity built;
+            try {
+                body = client.signedBody().append(OPEN);
+                boolean first = true;
+                int limit = chunk.limit();
+                int position = 0;
+                while (position < limit) {
+                    int newLine = indexOfNewLine(chunk, position, limit);
+                    int next = newLine < 0 ? limit : newLine + 1;
+                    int from = position;
+                    int to = newLine < 0 ? limit : newLine;
+                    while (from < to && isWhitespace(chunk.get(from))) {
+                        from++;
+                    }
+                    while (to > from && isWhitespace(chunk.get(to - 1))) {
+                        to--;
+                    }
+                    if (from < to) {
+                        if (!first) {
+                            body.append(",");
+                        }
+                        first = false;
+                        ByteBuffer record = chunk.duplicate();
+                        record.limit(to);
+                        record.position(from);
+                        if (validation == Validation.NONE) {
+                            body.append(record);
+                        } else {
+                            Order order = JSONFormater.getGson().fromJson(UTF_8.decode(record).toString(), Order.class);
+                            order.validate(validation);
+                            ids.add(order.getId());
+                            body.append(JSONFormater.toJsonBytes(order));
+                        }
+                    }
+                    position = next;
+                }
+                built = body.append(CLOSE).build();
+                body = null;
+            } catch (FieldBadFormatException | RuntimeException e) {
+                if (body != null) {
+                    body.discard();
+                }
+                fail(index, ids, start, end, e);
+                return;
+            } finally {
+                releaseSerializer();
+            }
+            long size = built.getContentLength();
+            Response response;
+            try {
+                response = post(built);
+            } catch (IOException | RuntimeException e) {
+                fail(index, ids, start, end, e);
+                return;
+            }
+            if (response == null) {
+                // stopped meanwhile, resent by the next run anyway
+                return;
+            }
+            complete(sequence, end);
+            sent(new HistoricalChunk(index, ids, size, response, null, start, end), records);
+        }
+
+        /**
+         * Move the checkpoint past the chunks done without a gap before them.
+         * The file is written outside the lock, by one thread at a time, so the offsets land in order.
+         */
+        void complete(long sequence, long end) {
+            lock.lock();
+            try {
+                completed.put(sequence, end);
+                Long next;
+                while ((next = completed.remove(nextToCommit)) != null) {
+                    committed = next;
+                    nextToCommit++;
+                }
+                if (checkpoint == null || writing || checkpointed == committed || checkpointError != null) {
+                    return;
+                }
+                writing = true;
+            } finally {
+                lock.unlock();
+            }
+            while (true) {
+                long offset;
+                lock.lock();
+                try {
+                    if (checkpointed == committed) {
+                        writing = false;
+                        return;
+                    }
+                    offset = committed;
+                } finally {
+                    lock.unlock();
+                }
+                try {
+                    writeCheckpoint(checkpoint, offset);
+                } catch (IOException e) {
+                    lock.lock();
+                    try {
+                        checkpointError = e;
+                        writing = false;
+                    } finally {
+                        lock.unlock();
+                    }
+                    stopped = true;
+                    return;
+                }
+                lock.lock();
+                try {
+                    checkpointed = offset;
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        void fail(int index, List<String> ids, long start, long end, Exception error) {
+            stopped = true;
+            failed(new HistoricalChunk(index, ids, 0, null, error, start, end));
+        }
+
+        HistoricalImportResult result(long size) throws IOException {
+            long reached;
+            lock.lock();
+            try {
+                if (checkpointError != null) {
+                    throw checkpointError;
+                }
+                reached = committed;
+            } finally {
+                lock.unlock();
+            }
+            return new HistoricalImportResult(getOrders(), getSentOrders(), getChunks(), getSentBytes(), getFailedChunks(),
+                    startOffset, reached, size);
+        }
+    }
+}
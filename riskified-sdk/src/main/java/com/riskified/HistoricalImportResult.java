@@ -0,0 +1,45 @@
+package com.riskified;
+
+import java.util.List;
+
+/**
+ * The outcome of a {@link HistoricalFileImporter#importFile} run
+ */
+public class HistoricalImportResult extends HistoricalUploadResult {
+    private final long startOffset;
+    private final long checkpoint;
+    private final long fileSize;
+
+    HistoricalImportResult(long orders, long sentOrders, int chunks, long sentBytes, List<HistoricalChunk> failedChunks,
+                           long startOffset, long checkpoint, long fileSize) {
+        super(orders, sentOrders, chunks, sentBytes, failedChunks);
+        this.startOffset = startOffset;
+        this.checkpoint = checkpoint;
+        this.fileSize = fileSize;
+    }
+
+    /**
+     * @return the position the run resumed from, 0 when the file was read from its start
+     */
+    public long getStartOffset() {
+        return startOffset;
+    }
+
+    /**
+     * @return the position before which every record was sent, the next run resumes from it
+     */
+    public long getCheckpoint() {
+        return checkpoint;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * @return true when every record of the file was sent, in this run or the previous ones
+     */
+    public boolean isComplete() {
+        return checkpoint == fileSize;
+    }
+}
@@ -0,0 +1,148 @@
+package com.riskified;
+
+import com.riskified.models.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The state shared by an upload of a {@link HistoricalUploader} and an import of a {@link HistoricalFileImporter}:
+ * the limits of the {@link HistoricalUploadConfig}, the numbering of the chunks, the counters of the result and the
+ * chunk listener.
+ */
+abstract class HistoricalRun {
+    static final String OPEN = "{\"orders\":[";
+    static final String CLOSE = "]}";
+
+    final RiskifiedClient client;
+    private final HistoricalUploader.ChunkListener listener;
+    private final Semaphore serializers;
+    private final Semaphore uploads;
+    private final AtomicInteger chunks = new AtomicInteger();
+    private final LongAdder orders = new LongAdder();
+    private final LongAdder sentOrders = new LongAdder();
+    private final LongAdder sentBytes = new LongAdder();
+    private final List<HistoricalChunk> failedChunks = Collections.synchronizedList(new ArrayList<HistoricalChunk>());
+
+    HistoricalRun(RiskifiedClient client, HistoricalUploadConfig config, HistoricalUploader.ChunkListener listener) {
+        this.client = client;
+        this.listener = listener;
+        this.serializers = new Semaphore(config.getParallelism());
+        this.uploads = new Semaphore(config.getMaxConcurrentUploads());
+    }
+
+    /**
+     * @return the index of the chunk being cut, the chunks are numbered in the order they are cut
+     */
+    int nextChunk() {
+        return chunks.getAndIncrement();
+    }
+
+    void addOrders(int count) {
+        orders.add(count);
+    }
+
+    /**
+     * Wait for one of the parallelism slots, released with {@link #releaseSerializer()}
+     */
+    void acquireSerializer() throws InterruptedIOException {
+        try {
+            serializers.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while sending historical orders");
+        }
+    }
+
+    void releaseSerializer() {
+        serializers.release();
+    }
+
+    /**
+     * Post a signed chunk within the limit of concurrent uploads, the body is released in every case
+     * @param body the signed chunk
+     * @return the response of Riskified, null when the run stopped while the chunk was waiting
+     * @throws IOException the error of the call
+     */
+    Response post(SignedJsonEntity body) throws IOException {
+        try {
+            uploads.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            body.release();
+            throw new InterruptedIOException("Interrupted while sending historical orders");
+        }
+        try {
+            if (isStopped()) {
+                body.release();
+                return null;
+            }
+            return client.postSigned(Endpoints.HISTORICAL, body);
+        } finally {
+            uploads.release();
+        }
+    }
+
+    /**
+     * @return true when the chunks not posted yet are dropped
+     */
+    boolean isStopped() {
+        return false;
+    }
+
+    /**
+     * @param chunk a chunk sent
+     * @param records the orders of the chunk
+     */
+    void sent(HistoricalChunk chunk, int records) {
+        sentOrders.add(records);
+        sentBytes.add(chunk.getSizeBytes());
+        report(chunk);
+    }
+
+    void failed(HistoricalChunk chunk) {
+        failedChunks.add(chunk);
+        report(chunk);
+    }
+
+    private void report(HistoricalChunk chunk) {
+        if (listener != null) {
+            listener.onChunk(chunk);
+        }
+    }
+
+    long getOrders() {
+        return orders.sum();
+    }
+
+    long getSentOrders() {
+        return sentOrders.sum();
+    }
+
+    int getChunks() {
+        return chunks.get();
+    }
+
+    long getSentBytes() {
+        return sentBytes.sum();
+    }
+
+    /**
+     * @return the failed chunks, sorted by index
+     */
+    List<HistoricalChunk> getFailedChunks() {
+        List<HistoricalChunk> failed;
+        synchronized (failedChunks) {
+            failed = new ArrayList<HistoricalChunk>(failedChunks);
+        }
+        Collections.sort(failed, Comparator.comparingInt(HistoricalChunk::getIndex));
+        return failed;
+    }
+}
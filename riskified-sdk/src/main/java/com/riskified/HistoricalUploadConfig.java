@@ -0,0 +1,85 @@
+package com.riskified;
+
+/**
+ * Settings of a {@link HistoricalUploader}.
+ * The orders are split in chunks of at most maxOrdersPerChunk orders and maxChunkBytes bytes of json,
+ * an order larger than maxChunkBytes is sent alone. Up to parallelism chunks are validated, serialized
+ * and signed at once, and up to maxConcurrentUploads are posted at once. The orders not yet sent are read
+ * only when a chunk is done, so the memory used doesn't depend on the number of orders.
+ */
+public class HistoricalUploadConfig {
+    private final int maxOrdersPerChunk;
+    private final long maxChunkBytes;
+    private final int parallelism;
+    private final int maxConcurrentUploads;
+
+    private HistoricalUploadConfig(HistoricalUploadConfigBuilder builder) {
+        this.maxOrdersPerChunk = builder.maxOrdersPerChunk;
+        this.maxChunkBytes = builder.maxChunkBytes;
+        this.parallelism = builder.parallelism;
+        this.maxConcurrentUploads = builder.maxConcurrentUploads;
+    }
+
+    public int getMaxOrdersPerChunk() {
+        return maxOrdersPerChunk;
+    }
+
+    public long getMaxChunkBytes() {
+        return maxChunkBytes;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public int getMaxConcurrentUploads() {
+        return maxConcurrentUploads;
+    }
+
+    public static class HistoricalUploadConfigBuilder {
+        private int maxOrdersPerChunk = 1000;
+        private long maxChunkBytes = 5 * 1024 * 1024;
+        private int parallelism = Runtime.getRuntime().availableProcessors();
+        private int maxConcurrentUploads = 4;
+
+        /**
+         * @param maxOrdersPerChunk the orders sent in one request (default 1000)
+         * @return this builder
+         */
+        public HistoricalUploadConfigBuilder setMaxOrdersPerChunk(int maxOrdersPerChunk) {
+            this.maxOrdersPerChunk = Math.max(1, maxOrdersPerChunk);
+            return this;
+        }
+
+        /**
+         * @param maxChunkBytes the size of the json sent in one request (default 5MB)
+         * @return this builder
+         */
+        public HistoricalUploadConfigBuilder setMaxChunkBytes(long maxChunkBytes) {
+            this.maxChunkBytes = Math.max(1, maxChunkBytes);
+            return this;
+        }
+
+        /**
+         * @param parallelism the chunks serialized at once (default the number of processors)
+         * @return this builder
+         */
+        public HistoricalUploadConfigBuilder setParallelism(int parallelism) {
+            this.parallelism = Math.max(1, parallelism);
+            return this;
+        }
+
+        /**
+         * @param maxConcurrentUploads the chunks posted at once (default 4)
+         * @return this builder
+         */
+        public HistoricalUploadConfigBuilder setMaxConcurrentUploads(int maxConcurrentUploads) {
+            this.maxConcurrentUploads = Math.max(1, maxConcurrentUploads);
+            return this;
+        }
+
+        public HistoricalUploadConfig build() {
+            return new HistoricalUploadConfig(this);
+        }
+    }
+}
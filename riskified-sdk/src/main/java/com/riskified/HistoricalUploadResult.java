@@ -0,0 +1,62 @@
+package com.riskified;
+
+import java.util.List;
+
+/**
+ * The outcome of a {@link HistoricalUploader#upload} run.
+ * Only the failed chunks are kept, the others are reported to the chunk listener of the run.
+ */
+public class HistoricalUploadResult {
+    private final long orders;
+    private final long sentOrders;
+    private final int chunks;
+    private final long sentBytes;
+    private final List<HistoricalChunk> failedChunks;
+
+    HistoricalUploadResult(long orders, long sentOrders, int chunks, long sentBytes, List<HistoricalChunk> failedChunks) {
+        this.orders = orders;
+        this.sentOrders = sentOrders;
+        this.chunks = chunks;
+        this.sentBytes = sentBytes;
+        this.failedChunks = failedChunks;
+    }
+
+    /**
+     * @return the orders read
+     */
+    public long getOrders() {
+        return orders;
+    }
+
+    /**
+     * @return the orders accepted by Riskified
+     */
+    public long getSentOrders() {
+        return sentOrders;
+    }
+
+    /**
+     * @return the chunks cut, sent or failed
+     */
+    public int getChunks() {
+        return chunks;
+    }
+
+    /**
+     * @return the json bytes accepted by Riskified
+     */
+    public long getSentBytes() {
+        return sentBytes;
+    }
+
+    /**
+     * @return the chunks that failed, sorted by index
+     */
+    public List<HistoricalChunk> getFailedChunks() {
+        return failedChunks;
+    }
+
+    public boolean isSuccess() {
+        return failedChunks.isEmpty();
+    }
+}
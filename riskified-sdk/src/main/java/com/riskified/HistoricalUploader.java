@@ -0,0 +1,206 @@
+package com.riskified;
+
+import com.riskified.models.Order;
+import com.riskified.models.Response;
+import com.riskified.validations.FieldBadFormatException;
+import com.riskified.validations.Validation;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+
+/**
+ * Bulk upload of historical orders, see {@link HistoricalUploadConfig}.
+ * The orders are read from an iterator or a stream as the chunks are sent, each order is serialized once
+ * and appended to the signed body of its chunk, so neither the whole set nor its json is ever held in memory.
+ * The chunks are validated, serialized and posted on the executor of the client, and sent through the same
+ * retries, deadlines and limits as {@link RiskifiedClient#historicalOrders}. A failed chunk doesn't stop the
+ * upload, it is reported in the {@link HistoricalUploadResult}.
+ */
+public class HistoricalUploader {
+
+    private final RiskifiedClient client;
+    private final HistoricalUploadConfig config;
+
+    HistoricalUploader(RiskifiedClient client, HistoricalUploadConfig config) {
+        this.client = client;
+        this.config = config;
+    }
+
+    public HistoricalUploadConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Notified of every chunk, sent or failed, from the threads of the upload
+     */
+    public interface ChunkListener {
+        void onChunk(HistoricalChunk chunk);
+    }
+
+    /**
+     * Upload the orders of a stream
+     * @param orders the orders, read once
+     * @return the outcome of the upload
+     * @throws InterruptedIOException when interrupted, the chunks already started go on
+     */
+    public HistoricalUploadResult upload(Stream<? extends Order> orders) throws InterruptedIOException {
+        return upload(orders.iterator(), null);
+    }
+
+    /**
+     * Upload the orders of an iterator
+     * @param orders the orders, read once
+     * @return the outcome of the upload
+     * @throws InterruptedIOException when interrupted, the chunks already started go on
+     */
+    public HistoricalUploadResult upload(Iterator<? extends Order> orders) throws InterruptedIOException {
+        return upload(orders, null);
+    }
+
+    /**
+     * Upload the orders of an iterator, reporting every chunk
+     * @param orders the orders, read once
+     * @param listener notified of every chunk, may be null
+     * @return the outcome of the upload, once every chunk is sent or failed
+     * @throws InterruptedIOException when interrupted, the chunks already started go on
+     */
+    public HistoricalUploadResult upload(Iterator<? extends Order> orders, ChunkListener listener) throws InterruptedIOException {
+        Run run = new Run(listener);
+        // the orders of a batch are read only once a batch is done, bounding the orders in memory
+        int maxBatches = config.getParallelism() + config.getMaxConcurrentUploads();
+        Semaphore batches = new Semaphore(maxBatches);
+        Executor executor = client.getExecutor();
+        try {
+            while (orders.hasNext()) {
+                final List<Order> batch = new ArrayList<Order>(Math.min(config.getMaxOrdersPerChunk(), 1024));
+                while (batch.size() < config.getMaxOrdersPerChunk() && orders.hasNext()) {
+                    batch.add(orders.next());
+                }
+                run.addOrders(batch.size());
+                batches.acquire();
+                try {
+                    executor.execute(() -> {
+                        try {
+                            run.process(batch);
+                        } finally {
+                            batches.release();
+                        }
+                    });
+                } catch (RejectedExecutionException | IllegalStateException e) {
+                    batches.release();
+                    run.fail(run.nextChunk(), idsOf(batch), e);
+                }
+            }
+            batches.acquire(maxBatches);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while uploading historical orders");
+        }
+        return run.result();
+    }
+
+    private static List<String> idsOf(List<Order> orders) {
+        List<String> ids = new ArrayList<String>(orders.size());
+        for (Order order : orders) {
+            ids.add(order.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * The state of one upload
+     */
+    private final class Run extends HistoricalRun {
+        Run(ChunkListener listener) {
+            super(HistoricalUploader.this.client, config, listener);
+        }
+
+        /**
+         * Validate, cut, serialize and sign a batch, then post its chunks
+         */
+        void process(List<Order> batch) {
+            List<SignedJsonEntity> bodies = new ArrayList<SignedJsonEntity>();
+            List<List<String>> bodyIds = new ArrayList<List<String>>();
+            List<Integer> indexes = new ArrayList<Integer>();
+            SignedJsonEntity.Builder body = null;
+            try {
+                acquireSerializer();
+            } catch (InterruptedIOException e) {
+                fail(nextChunk(), idsOf(batch), e);
+                return;
+            }
+            try {
+                Validation validation = client.getValidation();
+                if (validation != Validation.NONE) {
+                    for (Order order : batch) {
+                        order.validate(validation);
+                    }
+                }
+                List<String> ids = null;
+                for (Order order : batch) {
+                    byte[] json = JSONFormater.toJsonBytes(order);
+                    if (body != null && body.length() + json.length + 3 > config.getMaxChunkBytes()) {
+                        bodies.add(body.append(CLOSE).build());
+                        body = null;
+                    }
+                    if (body == null) {
+                        body = client.signedBody().append(OPEN);
+                        ids = new ArrayList<String>();
+                        bodyIds.add(ids);
+                        indexes.add(nextChunk());
+                    } else {
+                        body.append(",");
+                    }
+                    body.append(json);
+                    ids.add(order.getId());
+                }
+                if (body != null) {
+                    bodies.add(body.append(CLOSE).build());
+                    body = null;
+                }
+            } catch (FieldBadFormatException | RuntimeException e) {
+                if (body != null) {
+                    body.discard();
+                }
+                for (SignedJsonEntity built : bodies) {
+                    built.release();
+                }
+                // the whole batch fails under the index of its first chunk
+                fail(indexes.isEmpty() ? nextChunk() : indexes.get(0), idsOf(batch), e);
+                return;
+            } finally {
+                releaseSerializer();
+            }
+            for (int i = 0; i < bodies.size(); i++) {
+                post(indexes.get(i), bodyIds.get(i), bodies.get(i));
+            }
+        }
+
+        private void post(int index, List<String> ids, SignedJsonEntity body) {
+            long size = body.getContentLength();
+            Response response;
+            try {
+                response = post(body);
+            } catch (IOException | RuntimeException e) {
+                fail(index, ids, e);
+                return;
+            }
+            sent(new HistoricalChunk(index, ids, size, response, null), ids.size());
+        }
+
+        void fail(int index, List<String> ids, Exception error) {
+            failed(new HistoricalChunk(index, ids, 0, null, error));
+        }
+
+        HistoricalUploadResult result() {
+            return new HistoricalUploadResult(getOrders(), getSentOrders(), getChunks(), getSentBytes(), getFailedChunks());
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.riskified;
+
+import org.apache.http.HttpHost;
+import org.apache.http.auth.AUTH;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.MalformedChallengeException;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.AuthCache;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.auth.BasicScheme;
+import org.apache.http.impl.client.BasicAuthCache;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.message.BasicHeader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The HTTP engine underneath RiskifiedClient.
+ * Holds the connection pool, timeouts and proxy settings shared by all the calls of a client.
+ */
+abstract class HttpTransport implements Closeable {
+    protected final int connectionTimeout;
+    protected final int requestTimeout;
+    protected final int socketTimeout;
+    protected final int maxConnections;
+    protected final int maxConnectionsPerRoute;
+    protected final ProxyClientDetails proxy;
+    protected final List<HttpRoute> routes;
+    private AuthCache proxyAuthCache;
+
+    protected HttpTransport(int connectionTimeout, int requestTimeout, int socketTimeout, int maxConnections, int maxConnectionsPerRoute,
+                            ProxyClientDetails proxy, String... urls) {
+        this.connectionTimeout = connectionTimeout;
+        this.requestTimeout = requestTimeout;
+        this.socketTimeout = socketTimeout;
+        this.maxConnections = maxConnections;
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+        this.proxy = proxy;
+        this.routes = new ArrayList<HttpRoute>();
+        for (String url : urls) {
+            HttpRoute route = getRoute(url);
+            if (route != null && !routes.contains(route)) {
+                routes.add(route);
+            }
+        }
+        if (proxy != null) {
+            try {
+                proxyAuthCache = createProxyAuthCache();
+            } catch (MalformedChallengeException e) {
+                System.out.println("Error: failed to process challenge for proxy");
+            }
+        }
+    }
+
+    /**
+     * Send the request, blocking until the response was handled.
+     * @param request the signed request
+     * @param handler converts the http response, it may throw HttpResponseException for bad statuses
+     * @param <T> the handler result type
+     * @return the handler result
+     * @throws IOException in case of an http protocol error or the error thrown by the handler
+     */
+    public abstract <T> T execute(HttpPost request, ResponseHandler<? extends T> handler) throws IOException;
+
+    protected RequestConfig createRequestConfig() {
+        return RequestConfig.custom()
+                .setConnectTimeout(connectionTimeout)
+                .setConnectionRequestTimeout(requestTimeout)
+                .setSocketTimeout(socketTimeout)
+                .build();
+    }
+
+    /**
+     * The timeouts of a request, each capped by the time left before its deadline
+     * @param remainingMillis the time left before the deadline
+     * @return the request config
+     */
+    RequestConfig createRequestConfig(long remainingMillis) {
+        return RequestConfig.custom()
+                .setConnectTimeout(cap(connectionTimeout, remainingMillis))
+                .setConnectionRequestTimeout(cap(requestTimeout, remainingMillis))
+                .setSocketTimeout(cap(socketTimeout, remainingMillis))
+                .build();
+    }
+
+    private static int cap(int timeout, long remainingMillis) {
+        int remaining = (int) Math.max(1, Math.min(Integer.MAX_VALUE, remainingMillis));
+        // 0 means no timeout for the http client
+        return timeout <= 0 ? remaining : Math.min(timeout, remaining);
+    }
+
+    protected HttpHost getProxyHost() {
+        return proxy == null ? null : new HttpHost(proxy.getProxyUrl(), proxy.getProxyPort());
+    }
+
+    protected CredentialsProvider getHttpProxyCredentials() {
+        CredentialsProvider credsProvider = new BasicCredentialsProvider();
+        credsProvider.setCredentials(
+                new AuthScope(getProxyHost()),
+                new UsernamePasswordCredentials(proxy.getProxyUsername(), proxy.getProxyPassword()));
+        return credsProvider;
+    }
+
+    /**
+     * A fresh context per request, sharing the preemptive proxy authentication
+     * @return the request context or null when no proxy is used
+     */
+    protected HttpClientContext createContext() {
+        if (proxyAuthCache == null) {
+            return null;
+        }
+        HttpClientContext context = HttpClientContext.create();
+        context.setAuthCache(proxyAuthCache);
+        context.setCredentialsProvider(getHttpProxyCredentials());
+        return context;
+    }
+
+    private AuthCache createProxyAuthCache() throws MalformedChallengeException {
+        BasicScheme proxyAuth = new BasicScheme();
+        proxyAuth.processChallenge(new BasicHeader(AUTH.PROXY_AUTH, "BASIC realm=default"));
+        BasicAuthCache authCache = new BasicAuthCache();
+        authCache.put(getProxyHost(), proxyAuth);
+        return authCache;
+    }
+
+    private HttpRoute getRoute(String url) {
+        if (url == null) {
+            return null;
+        }
+        URI uri = URI.create(url);
+        boolean secure = "https".equalsIgnoreCase(uri.getScheme());
+        int port = uri.getPort();
+        if (port <= 0) {
+            port = secure ? 443 : 80;
+        }
+        HttpHost target = new HttpHost(uri.getHost(), port, uri.getScheme());
+        if (proxy != null) {
+            return new HttpRoute(target, null, getProxyHost(), secure);
+        }
+        return new HttpRoute(target, null, secure);
+    }
+}
@@ -1,33 +1,88 @@
 package com.riskified;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.lang.reflect.Type;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
+import java.nio.charset.Charset;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.Date;
 
 import com.google.gson.*;
 import com.riskified.models.BankWirePaymentDetails;
 import com.riskified.models.CreditCardPaymentDetails;
+import com.riskified.models.GeneratedJsonAdapters;
 import com.riskified.models.IPaymentDetails;
 import com.riskified.models.PaypalPaymentDetails;
-import sun.security.x509.IPAddressName;
 
+/**
+ * Serializes the sdk models to the Riskified json format.
+ * The Gson instance is built once and shared: its type adapters (including the snake_case
+ * field names of every model) are created on first use of a class and reused by all threads.
+ */
 public class JSONFormater {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Gson GSON = create();
 
-	public static String toJson(Object obj) {
-        Gson gson = new GsonBuilder().setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
+    public static String toJson(Object obj) {
+        return GSON.toJson(obj);
+    }
+
+    /**
+     * Serialize straight to UTF-8 bytes, without building the intermediate json String
+     * @param obj the object to serialize
+     * @return the UTF-8 encoded json
+     */
+    public static byte[] toJsonBytes(Object obj) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+        try {
+            toJson(obj, new OutputStreamWriter(out, UTF_8));
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Serialize to the writer, the writer is flushed but not closed
+     * @param obj the object to serialize
+     * @param writer the destination
+     * @throws IOException error writing to the destination
+     */
+    public static void toJson(Object obj, Writer writer) throws IOException {
+        GSON.toJson(obj, writer);
+        writer.flush();
+    }
+
+    static Gson getGson() {
+        return GSON;
+    }
+
+    private static Gson create() {
+        // the generated adapters are registered first so the payment details factory delegates to them
+        return new GsonBuilder().setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
+                .registerTypeAdapterFactory(new GeneratedJsonAdapters())
                 .registerTypeAdapter(Date.class, new DateTimeSerializer())
                 .registerTypeAdapterFactory(paymentDetailsSerializer())
                 .create();
-        return gson.toJson(obj);
     }
 
     public static class DateTimeSerializer implements JsonSerializer<Date> {
+        private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mmXXX");
+
         public JsonElement serialize(Date src, Type typeOfSrc, JsonSerializationContext context) {
-            DateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mmXXX");
-            return new JsonPrimitive(df.format(src));
+            return new JsonPrimitive(format(src));
+        }
+
+        static String format(Date src) {
+            // the zone is resolved per call, like a SimpleDateFormat created for each date would
+            return FORMATTER.format(Instant.ofEpochMilli(src.getTime()).atZone(ZoneId.systemDefault()));
         }
     }
+
     public static RuntimeTypeAdapterFactory paymentDetailsSerializer() {
         return RuntimeTypeAdapterFactory
                 .of(IPaymentDetails.class, "method")
@@ -35,6 +90,4 @@ public class JSONFormater {
                 .registerSubtype(CreditCardPaymentDetails.class, "credit_card")
                 .registerSubtype(BankWirePaymentDetails.class, "bank_wire");
     }
-    
-    
 }
@@ -0,0 +1,126 @@
+package com.riskified;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.ProxyAuthenticationStrategy;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Event loop based transport built on the Apache async client.
+ * In-flight requests are multiplexed over a few I/O dispatch threads instead of one thread per call.
+ */
+class NonBlockingHttpTransport extends HttpTransport {
+    private final CloseableHttpAsyncClient client;
+
+    NonBlockingHttpTransport(int connectionTimeout, int requestTimeout, int socketTimeout, int maxConnections, int maxConnectionsPerRoute,
+                             ProxyClientDetails proxy, String... urls) throws RiskifiedError {
+        super(connectionTimeout, requestTimeout, socketTimeout, maxConnections, maxConnectionsPerRoute, proxy, urls);
+
+        PoolingNHttpClientConnectionManager connectionManager;
+        try {
+            IOReactorConfig reactorConfig = IOReactorConfig.custom()
+                    .setConnectTimeout(connectionTimeout)
+                    .build();
+            connectionManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(reactorConfig));
+        } catch (IOReactorException e) {
+            throw new RiskifiedError(e);
+        }
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        for (HttpRoute route : routes) {
+            connectionManager.setMaxPerRoute(route, maxConnectionsPerRoute);
+        }
+
+        HttpAsyncClientBuilder builder = HttpAsyncClientBuilder.create();
+        builder.setDefaultRequestConfig(createRequestConfig());
+        builder.setConnectionManager(connectionManager);
+        builder.setThreadFactory(new RiskifiedThreadFactory("riskified-io"));
+        if (proxy != null) {
+            builder.setProxy(getProxyHost());
+            builder.setDefaultCredentialsProvider(getHttpProxyCredentials());
+            builder.setProxyAuthenticationStrategy(new ProxyAuthenticationStrategy());
+        }
+        this.client = builder.build();
+        this.client.start();
+    }
+
+    public <T> T execute(HttpPost request, ResponseHandler<? extends T> handler) throws IOException {
+        return await(executeAsync(request, handler), request);
+    }
+
+    /**
+     * Block until the exchange started by {@link #executeAsync} is over, the request is aborted on interrupt
+     * @param future the future of the exchange
+     * @param request the request being sent
+     * @param <T> the handler result type
+     * @return the handler result
+     * @throws IOException the transport / handler error
+     */
+    <T> T await(CompletableFuture<T> future, HttpPost request) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            request.abort();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for Riskified response");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Send the request without blocking, the handler runs on the I/O dispatch thread.
+     * @param request the signed request
+     * @param handler converts the http response, it may throw HttpResponseException for bad statuses
+     * @param <T> the handler result type
+     * @return a future completed with the handler result or exceptionally with the transport / handler error
+     */
+    public <T> CompletableFuture<T> executeAsync(HttpPost request, final ResponseHandler<? extends T> handler) {
+        final CompletableFuture<T> future = new CompletableFuture<T>();
+        client.execute(request, createContext(), new FutureCallback<HttpResponse>() {
+            public void completed(HttpResponse response) {
+                try {
+                    future.complete(handler.handleResponse(response));
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    EntityUtils.consumeQuietly(response.getEntity());
+                }
+            }
+
+            public void failed(Exception ex) {
+                future.completeExceptionally(ex);
+            }
+
+            public void cancelled() {
+                future.completeExceptionally(new InterruptedIOException("Riskified request was cancelled"));
+            }
+        });
+        return future;
+    }
+
+    public void close() throws IOException {
+        client.close();
+    }
+}
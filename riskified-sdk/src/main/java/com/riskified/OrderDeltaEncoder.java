@@ -0,0 +1,441 @@
+package com.riskified;
+
+import com.google.gson.stream.JsonWriter;
+import com.riskified.models.BaseOrder;
+import com.riskified.models.Response;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Sends only the changed fields of the orders given to updateOrder.
+ * For each order id the last state accepted by Riskified is kept as a hash of each top level field, a few
+ * bytes per field whatever the size of the line items or addresses. An update then carries the id and the
+ * fields whose hash changed; a nested object or list that changed is sent whole. Fields that became null are
+ * not sent, as with a full update. The first update of an order and an update following a failed one are sent
+ * whole. An update changing nothing isn't sent, it returns a copy of the last response accepted for the order
+ * flagged {@link Response#isDeduplicated()}. The order is serialized once, by its generated adapter: each field is
+ * hashed from the text written for it and a delta is cut from that same text. The snapshots are kept in an LRU
+ * bounded to maxOrders orders.
+ */
+public class OrderDeltaEncoder {
+    private static final String ID = "id";
+
+    private final int maxOrders;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, Snapshot> snapshots;
+    private final LongAdder deltaUpdates = new LongAdder();
+    private final LongAdder fullUpdates = new LongAdder();
+    private final LongAdder omittedFields = new LongAdder();
+    private final LongAdder skippedUpdates = new LongAdder();
+
+    /**
+     * @param maxOrders the orders whose last state is kept, the least recently updated are forgotten first
+     */
+    public OrderDeltaEncoder(final int maxOrders) {
+        if (maxOrders < 1) {
+            throw new IllegalArgumentException("maxOrders must be at least 1");
+        }
+        this.maxOrders = maxOrders;
+        this.snapshots = new LinkedHashMap<String, Snapshot>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Snapshot> eldest) {
+                return size() > maxOrders;
+            }
+        };
+    }
+
+    public int getMaxOrders() {
+        return maxOrders;
+    }
+
+    /**
+     * @return the orders whose last state is kept
+     */
+    public int getSize() {
+        lock.lock();
+        try {
+            return snapshots.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the updates sent as a delta
+     */
+    public long getDeltaUpdates() {
+        return deltaUpdates.sum();
+    }
+
+    /**
+     * @return the updates sent whole
+     */
+    public long getFullUpdates() {
+        return fullUpdates.sum();
+    }
+
+    /**
+     * @return the unchanged fields left out of the updates sent as a delta
+     */
+    public long getOmittedFields() {
+        return omittedFields.sum();
+    }
+
+    /**
+     * @return the updates changing nothing, not sent
+     */
+    public long getSkippedUpdates() {
+        return skippedUpdates.sum();
+    }
+
+    /**
+     * Compute the payload of an update
+     * @param order the order to update, with an id
+     * @return the payload and the state to keep once Riskified accepted it, or the last response when the update
+     * changes nothing
+     */
+    Delta encode(BaseOrder order) {
+        FieldWriter fields = new FieldWriter();
+        JSONFormater.getGson().toJson(order, order.getClass(), fields);
+        String[] names = fields.getNames();
+        long[] hashes = fields.getHashes();
+        Snapshot next = new Snapshot(names, hashes);
+
+        Snapshot last;
+        lock.lock();
+        try {
+            last = snapshots.get(order.getId());
+        } finally {
+            lock.unlock();
+        }
+        if (last == null) {
+            fullUpdates.increment();
+            return new Delta(order.getId(), fields.getJson(), next);
+        }
+        StringBuilder delta = new StringBuilder(fields.text.length()).append('{');
+        int sent = 0;
+        int omitted = 0;
+        for (int i = 0; i < names.length; i++) {
+            if (ID.equals(names[i]) || last.changed(names[i], hashes[i])) {
+                if (sent++ > 0) {
+                    delta.append(',');
+                }
+                delta.append(fields.text, fields.starts[i], fields.ends[i]);
+            } else {
+                omitted++;
+            }
+        }
+        if (sent <= 1 && last.response != null) {
+            skippedUpdates.increment();
+            Response copy = new Response(last.response);
+            copy.setDeduplicated(true);
+            return new Delta(order.getId(), copy);
+        }
+        if (sent <= 1) {
+            // an update needs a field besides the id
+            fullUpdates.increment();
+            return new Delta(order.getId(), fields.getJson(), last.merge(next));
+        }
+        deltaUpdates.increment();
+        omittedFields.add(omitted);
+        // fields missing from this update keep their last value on Riskified's side
+        return new Delta(order.getId(), delta.append('}').toString().getBytes(StandardCharsets.UTF_8), last.merge(next));
+    }
+
+    /**
+     * Keep the state sent once Riskified accepted it
+     * @param delta the update sent
+     * @param response the response of Riskified, returned by the updates changing nothing
+     */
+    void commit(Delta delta, Response response) {
+        Snapshot snapshot = delta.snapshot.accepted(response);
+        lock.lock();
+        try {
+            snapshots.put(delta.orderId, snapshot);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forget an order after a failed update, the next one is sent whole
+     */
+    void forget(String orderId) {
+        lock.lock();
+        try {
+            snapshots.remove(orderId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The payload of an update and the state of the order once it is accepted
+     */
+    static final class Delta {
+        private final String orderId;
+        private final byte[] payload;
+        private final Snapshot snapshot;
+        private final Response skipped;
+
+        Delta(String orderId, byte[] payload, Snapshot snapshot) {
+            this.orderId = orderId;
+            this.payload = payload;
+            this.snapshot = snapshot;
+            this.skipped = null;
+        }
+
+        Delta(String orderId, Response skipped) {
+            this.orderId = orderId;
+            this.payload = null;
+            this.snapshot = null;
+            this.skipped = skipped;
+        }
+
+        /**
+         * @return the UTF-8 json of the order to send, null when the update isn't sent
+         */
+        byte[] getPayload() {
+            return payload;
+        }
+
+        /**
+         * @return the response to return instead of sending the update, null when it must be sent
+         */
+        Response getSkipped() {
+            return skipped;
+        }
+    }
+
+    /**
+     * Json writer fed by the type adapters of the order, keeping the text of the order and, for each of its top
+     * level fields, where its {@code "name":value} starts and ends and a 64 bit FNV-1a of it. The fields written
+     * as null are left out by the adapters, as in a full update.
+     */
+    private static final class FieldWriter extends JsonWriter {
+        private final StringBuilder text;
+        private String[] names = new String[16];
+        private int[] starts = new int[16];
+        private int[] ends = new int[16];
+        private int fields;
+        private int depth;
+        private int start;
+
+        FieldWriter() {
+            this(new TextWriter());
+        }
+
+        private FieldWriter(TextWriter out) {
+            super(out);
+            this.text = out.text;
+        }
+
+        String[] getNames() {
+            return Arrays.copyOf(names, fields);
+        }
+
+        long[] getHashes() {
+            long[] hashes = new long[fields];
+            for (int i = 0; i < fields; i++) {
+                long hash = 0xcbf29ce484222325L;
+                for (int j = starts[i]; j < ends[i]; j++) {
+                    hash = (hash ^ text.charAt(j)) * 0x100000001b3L;
+                }
+                hashes[i] = hash;
+            }
+            return hashes;
+        }
+
+        byte[] getJson() {
+            return text.toString().getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public JsonWriter name(String name) throws IOException {
+            if (depth == 1) {
+                if (fields == names.length) {
+                    names = Arrays.copyOf(names, fields * 2);
+                    starts = Arrays.copyOf(starts, fields * 2);
+                    ends = Arrays.copyOf(ends, fields * 2);
+                }
+                names[fields] = name.intern();
+                start = text.length();
+            }
+            return super.name(name);
+        }
+
+        @Override
+        public JsonWriter beginObject() throws IOException {
+            super.beginObject();
+            depth++;
+            return this;
+        }
+
+        @Override
+        public JsonWriter endObject() throws IOException {
+            super.endObject();
+            return closed();
+        }
+
+        @Override
+        public JsonWriter beginArray() throws IOException {
+            super.beginArray();
+            depth++;
+            return this;
+        }
+
+        @Override
+        public JsonWriter endArray() throws IOException {
+            super.endArray();
+            return closed();
+        }
+
+        @Override
+        public JsonWriter value(String value) throws IOException {
+            super.value(value);
+            return written();
+        }
+
+        @Override
+        public JsonWriter nullValue() throws IOException {
+            super.nullValue();
+            return written();
+        }
+
+        @Override
+        public JsonWriter value(boolean value) throws IOException {
+            super.value(value);
+            return written();
+        }
+
+        @Override
+        public JsonWriter value(double value) throws IOException {
+            super.value(value);
+            return written();
+        }
+
+        @Override
+        public JsonWriter value(long value) throws IOException {
+            super.value(value);
+            return written();
+        }
+
+        @Override
+        public JsonWriter value(Number value) throws IOException {
+            super.value(value);
+            return written();
+        }
+
+        private JsonWriter closed() {
+            depth--;
+            return written();
+        }
+
+        /**
+         * A value is over, at the top level of the order it ends a field
+         */
+        private JsonWriter written() {
+            if (depth == 1 && text.length() > start) {
+                // the comma before the field belongs to the previous one
+                starts[fields] = text.charAt(start) == ',' ? start + 1 : start;
+                ends[fields++] = text.length();
+            }
+            return this;
+        }
+    }
+
+    /**
+     * Writer appending to a StringBuilder, without the locking of StringWriter
+     */
+    private static final class TextWriter extends Writer {
+        private final StringBuilder text = new StringBuilder(1024);
+
+        @Override
+        public void write(int c) {
+            text.append((char) c);
+        }
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            text.append(buffer, offset, length);
+        }
+
+        @Override
+        public void write(String string, int offset, int length) {
+            text.append(string, offset, offset + length);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * The hashes of the top level fields of an order, the names are interned and shared by all the snapshots
+     */
+    private static final class Snapshot {
+        private final String[] names;
+        private final long[] hashes;
+        // the response of Riskified to the update of this state, null until it is accepted
+        private final Response response;
+
+        Snapshot(String[] names, long[] hashes) {
+            this(names, hashes, null);
+        }
+
+        private Snapshot(String[] names, long[] hashes, Response response) {
+            this.names = names;
+            this.hashes = hashes;
+            this.response = response;
+        }
+
+        Snapshot accepted(Response response) {
+            return new Snapshot(names, hashes, response);
+        }
+
+        boolean changed(String name, long hash) {
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equals(name)) {
+                    return hashes[i] != hash;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return this state updated by the fields of the next one, the fields it lacks keep their hash
+         */
+        Snapshot merge(Snapshot next) {
+            String[] mergedNames = Arrays.copyOf(next.names, next.names.length + names.length);
+            long[] mergedHashes = Arrays.copyOf(next.hashes, mergedNames.length);
+            int size = next.names.length;
+            for (int i = 0; i < names.length; i++) {
+                if (!next.has(names[i])) {
+                    mergedNames[size] = names[i];
+                    mergedHashes[size++] = hashes[i];
+                }
+            }
+            return new Snapshot(Arrays.copyOf(mergedNames, size), Arrays.copyOf(mergedHashes, size));
+        }
+
+        private boolean has(String name) {
+            for (String current : names) {
+                if (current.equals(name)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,661 @@
+package com.riskified;
+
+import com.riskified.models.CancelOrder;
+import com.riskified.models.ChargebackOrder;
+import com.riskified.models.DecisionOrder;
+import com.riskified.models.FulfillmentOrder;
+import com.riskified.models.OrderWrapper;
+import com.riskified.models.RefundOrder;
+import com.riskified.validations.FieldBadFormatException;
+import com.riskified.validations.IValidated;
+import com.riskified.validations.Validation;
+import org.apache.http.client.HttpResponseException;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Durable outbox for the events sent once an order was decided: fulfillments, refunds, cancellations, decisions
+ * and chargebacks.
+ * An event is validated, serialized and appended to the current segment file of the outbox directory, the call
+ * returns once it is written and the future returned completes once it is on disk - the events recorded within
+ * the sync interval share one fsync, done by a background thread, as is the fsync of a segment being sealed.
+ * A background thread delivers the events in the order they were recorded, trying a failed delivery again with
+ * a growing wait until it succeeds, and deletes each segment once all its events are delivered. The position of
+ * the delivery is kept in a cursor file, so the events not delivered yet are sent after a restart. The delivery
+ * is at least once, the events delivered just before a crash may be sent again.
+ * An event Riskified refuses (400 or 404) would be refused again, it is appended to rejected.log with its endpoint.
+ */
+public class Outbox implements Closeable {
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CURSOR = "cursor";
+    private static final String LOCK = "outbox.lock";
+    private static final String REJECTED = "rejected.log";
+    // the length and the crc32 of the payload, the payload is the endpoint path and the json
+    private static final int RECORD_HEADER = 8;
+    private static final int CURSOR_SAVE_EVENTS = 100;
+    private static final long IDLE_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long CLOSE_WAIT_MILLIS = 5000;
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final RiskifiedClient client;
+    private final OutboxConfig config;
+    private final Path directory;
+    private final FileChannel lockChannel;
+    // not a monitor, the callers may run on virtual threads
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition syncNeeded = lock.newCondition();
+    // guarded by lock: the segments not deleted yet, the last one is appended to
+    private final ArrayDeque<Segment> segments = new ArrayDeque<Segment>();
+    private Segment active;
+    // guarded by lock: the segments sealed and not forced yet, forced and closed by the sync thread
+    private final List<Segment> sealing = new ArrayList<Segment>();
+    private volatile boolean closed;
+    // used by the delivery thread only
+    private long cursorSegment;
+    private long cursorOffset;
+    private int unsavedEvents;
+    private final AtomicLong pendingEvents = new AtomicLong();
+    private final LongAdder deliveredEvents = new LongAdder();
+    private final LongAdder rejectedEvents = new LongAdder();
+    private final Thread syncThread;
+    private final Thread deliveryThread;
+
+    Outbox(RiskifiedClient client, OutboxConfig config) throws IOException {
+        this.client = client;
+        this.config = config;
+        this.directory = config.getDirectory();
+        Files.createDirectories(directory);
+        lockChannel = FileChannel.open(directory.resolve(LOCK), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        // released when the channel is closed
+        FileLock lock;
+        try {
+            lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock == null) {
+            lockChannel.close();
+            throw new IOException("The outbox " + directory + " is already open");
+        }
+        try {
+            recover();
+        } catch (IOException | RuntimeException e) {
+            lockChannel.close();
+            throw e;
+        }
+        RiskifiedThreadFactory threads = new RiskifiedThreadFactory("riskified-outbox");
+        syncThread = threads.newThread(this::syncLoop);
+        deliveryThread = threads.newThread(this::deliveryLoop);
+        syncThread.start();
+        deliveryThread.start();
+    }
+
+    public OutboxConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Record a fulfillment, see {@link RiskifiedClient#fulfillOrder(FulfillmentOrder)}
+     * @param order The fulfillment order details
+     * @return completed once the event is on disk
+     * @throws IOException error writing the event, or the outbox is closed
+     * @throws FieldBadFormatException bad format found on field
+     */
+    public CompletableFuture<Void> fulfillOrder(FulfillmentOrder order) throws IOException, FieldBadFormatException {
+        return record(Endpoints.FULFILL, order, new OrderWrapper<FulfillmentOrder>(order));
+    }
+
+    /**
+     * Record a refund, see {@link RiskifiedClient#refundOrder(RefundOrder)}
+     * @param order The refund order details
+     * @return completed once the event is on disk
+     * @throws IOException error writing the event, or the outbox is closed
+     * @throws FieldBadFormatException bad format found on field
+     */
+    public CompletableFuture<Void> refundOrder(RefundOrder order) throws IOException, FieldBadFormatException {
+        return record(Endpoints.REFUND, order, new OrderWrapper<RefundOrder>(order));
+    }
+
+    /**
+     * Record a cancellation, see {@link RiskifiedClient#cancelOrder(CancelOrder)}
+     * @param order The order to cancel
+     * @return completed once the event is on disk
+     * @throws IOException error writing the event, or the outbox is closed
+     * @throws FieldBadFormatException bad format found on field
+     */
+    public CompletableFuture<Void> cancelOrder(CancelOrder order) throws IOException, FieldBadFormatException {
+        return record(Endpoints.CANCEL, order, new OrderWrapper<CancelOrder>(order));
+    }
+
+    /**
+     * Record a decision, see {@link RiskifiedClient#decisionOrder(DecisionOrder)}
+     * @param order The decision order details
+     * @return completed once the event is on disk
+     * @throws IOException error writing the event, or the outbox is closed
+     * @throws FieldBadFormatException bad format found on field
+     */
+    public CompletableFuture<Void> decisionOrder(DecisionOrder order) throws IOException, FieldBadFormatException {
+        return record(Endpoints.DECISION, order, new OrderWrapper<DecisionOrder>(order));
+    }
+
+    /**
+     * Record a chargeback, see {@link RiskifiedClient#chargebackOrder(ChargebackOrder)}
+     * @param order The order to mark as chargeback
+     * @return completed once the event is on disk
+     * @throws IOException error writing the event, or the outbox is closed
+     * @throws FieldBadFormatException bad format found on field
+     */
+    public CompletableFuture<Void> chargebackOrder(ChargebackOrder order) throws IOException, FieldBadFormatException {
+        return record(Endpoints.CHARGEBACK, order, new OrderWrapper<ChargebackOrder>(order));
+    }
+
+    /**
+     * @return the events recorded and not delivered yet, including the ones recovered after a restart
+     */
+    public long getPendingEvents() {
+        return pendingEvents.get();
+    }
+
+    public long getDeliveredEvents() {
+        return deliveredEvents.sum();
+    }
+
+    /**
+     * @return the events refused by Riskified, appended to rejected.log
+     */
+    public long getRejectedEvents() {
+        return rejectedEvents.sum();
+    }
+
+    /**
+     * Stop the delivery and make the events recorded durable, the pending events are delivered by the next outbox
+     * opened on the directory
+     * @throws IOException error closing the segment
+     */
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            syncNeeded.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        LockSupport.unpark(deliveryThread);
+        boolean interrupted = false;
+        try {
+            syncThread.join();
+            // a delivery in flight ends with the transport of the client
+            deliveryThread.join(CLOSE_WAIT_MILLIS);
+        } catch (InterruptedException e) {
+            interrupted = true;
+        }
+        try {
+            lock.lock();
+            try {
+                active.writer.close();
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            lockChannel.close();
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private CompletableFuture<Void> record(String path, IValidated order, Object data) throws IOException, FieldBadFormatException {
+        Validation validation = client.getValidation();
+        if (validation != Validation.NONE) {
+            order.validate(validation);
+        }
+        byte[] json = JSONFormater.toJsonBytes(data);
+        byte[] endpoint = path.getBytes(US_ASCII);
+        int length = 1 + endpoint.length + json.length;
+        CRC32 crc = new CRC32();
+        crc.update(endpoint.length);
+        crc.update(endpoint);
+        crc.update(json);
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER + 1 + endpoint.length);
+        header.putInt(length).putInt((int) crc.getValue()).put((byte) endpoint.length).put(endpoint);
+        header.flip();
+        ByteBuffer[] record = {header, ByteBuffer.wrap(json)};
+        long size = RECORD_HEADER + length;
+        CompletableFuture<Void> durable = new CompletableFuture<Void>();
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IOException("The outbox is closed");
+            }
+            if (active.end > 0 && active.end + size > config.getSegmentBytes()) {
+                roll();
+            }
+            try {
+                while (record[0].hasRemaining() || record[1].hasRemaining()) {
+                    active.writer.write(record);
+                }
+            } catch (IOException e) {
+                // the next record starts at the end of the last whole one
+                active.writer.truncate(active.end);
+                active.writer.position(active.end);
+                throw e;
+            }
+            active.end += size;
+            active.unsynced.add(durable);
+            if (active.unsynced.size() == 1) {
+                syncNeeded.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+        pendingEvents.incrementAndGet();
+        LockSupport.unpark(deliveryThread);
+        return durable;
+    }
+
+    /**
+     * Seal the active segment and start the next one, called with the lock held.
+     * The sealed segment is forced and closed by the sync thread, not by the caller.
+     */
+    private void roll() throws IOException {
+        Segment previous = active;
+        Segment next = new Segment(previous.id + 1, segmentFile(previous.id + 1));
+        next.writer = FileChannel.open(next.file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        // sealed once its end is final, the delivery deletes it after its last event
+        previous.sealed = true;
+        sealing.add(previous);
+        syncNeeded.signal();
+        segments.add(next);
+        active = next;
+    }
+
+    private void syncLoop() {
+        while (true) {
+            lock.lock();
+            try {
+                while (sealing.isEmpty() && active.unsynced.isEmpty() && !closed) {
+                    syncNeeded.awaitUninterruptibly();
+                }
+                if (sealing.isEmpty() && active.unsynced.isEmpty()) {
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (config.getSyncIntervalMillis() > 0 && !closed) {
+                // the events recorded meanwhile share the fsync
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(config.getSyncIntervalMillis()));
+            }
+            List<Segment> sealed;
+            Segment current;
+            List<CompletableFuture<Void>> batch;
+            lock.lock();
+            try {
+                sealed = new ArrayList<Segment>(sealing);
+                sealing.clear();
+                current = active;
+                batch = current.unsynced;
+                current.unsynced = new ArrayList<CompletableFuture<Void>>();
+            } finally {
+                lock.unlock();
+            }
+            // the sealed segments first, their events were recorded before the ones of the active segment
+            for (Segment segment : sealed) {
+                sync(segment.writer, segment.unsynced);
+                try {
+                    segment.writer.close();
+                } catch (IOException e) {
+                    // forced already, nothing is lost
+                }
+            }
+            if (!batch.isEmpty()) {
+                // if it was sealed meanwhile, the next loop forces it again before closing it
+                sync(current.writer, batch);
+            }
+        }
+    }
+
+    private static void sync(FileChannel writer, List<CompletableFuture<Void>> batch) {
+        try {
+            writer.force(false);
+            complete(batch, null);
+        } catch (IOException e) {
+            complete(batch, e);
+        }
+    }
+
+    private static void complete(List<CompletableFuture<Void>> futures, Throwable error) {
+        for (CompletableFuture<Void> future : futures) {
+            if (error == null) {
+                future.complete(null);
+            } else {
+                future.completeExceptionally(error);
+            }
+        }
+    }
+
+    private void deliveryLoop() {
+        long retryMillis = config.getInitialRetryMillis();
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+        try {
+            while (!closed) {
+                Segment segment;
+                lock.lock();
+                try {
+                    segment = segments.peekFirst();
+                } finally {
+                    lock.unlock();
+                }
+                // read before the end, the end of a sealed segment is final
+                boolean sealed = segment.sealed;
+                long end = segment.end;
+                if (cursorOffset < end) {
+                    Event event;
+                    try {
+                        event = read(segment, cursorOffset, header);
+                        if (event == null) {
+                            // corrupted on disk, the rest of the segment can't be read
+                            cursorOffset = end;
+                            continue;
+                        }
+                        deliver(event);
+                    } catch (IOException | RuntimeException e) {
+                        await(retryMillis);
+                        retryMillis = Math.min(retryMillis * 2, config.getMaxRetryMillis());
+                        continue;
+                    }
+                    retryMillis = config.getInitialRetryMillis();
+                    cursorOffset += event.size;
+                    pendingEvents.decrementAndGet();
+                    if (++unsavedEvents >= CURSOR_SAVE_EVENTS) {
+                        saveCursor();
+                    }
+                } else if (sealed) {
+                    Segment next;
+                    lock.lock();
+                    try {
+                        segments.removeFirst();
+                        next = segments.peekFirst();
+                    } finally {
+                        lock.unlock();
+                    }
+                    segment.closeReader();
+                    cursorSegment = next.id;
+                    cursorOffset = 0;
+                    // the cursor moves first, a segment left by a crash is deleted when the outbox is opened
+                    saveCursor();
+                    try {
+                        Files.deleteIfExists(segment.file);
+                    } catch (IOException e) {
+                        // deleted when the outbox is opened
+                    }
+                } else {
+                    if (unsavedEvents > 0) {
+                        saveCursor();
+                    }
+                    LockSupport.parkNanos(this, IDLE_NANOS);
+                }
+            }
+        } finally {
+            if (unsavedEvents > 0) {
+                saveCursor();
+            }
+            lock.lock();
+            try {
+                for (Segment segment : segments) {
+                    segment.closeReader();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void deliver(Event event) throws IOException {
+        SignedJsonEntity body = client.signedBody().append(event.json.duplicate()).build();
+        try {
+            client.postSigned(event.path, body);
+        } catch (HttpResponseException e) {
+            if (e.getStatusCode() != 400 && e.getStatusCode() != 404) {
+                throw e;
+            }
+            reject(event);
+            return;
+        }
+        deliveredEvents.increment();
+    }
+
+    private void reject(Event event) throws IOException {
+        ByteBuffer json = event.json.duplicate();
+        byte[] line = new byte[event.path.length() + 1 + json.remaining() + 1];
+        byte[] path = event.path.getBytes(US_ASCII);
+        System.arraycopy(path, 0, line, 0, path.length);
+        line[path.length] = ' ';
+        json.get(line, path.length + 1, json.remaining());
+        line[line.length - 1] = '\n';
+        Files.write(directory.resolve(REJECTED), line, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        rejectedEvents.increment();
+    }
+
+    private void await(long millis) {
+        // not cut short by the events recorded meanwhile
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        long remaining;
+        while (!closed && (remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(this, remaining);
+        }
+    }
+
+    private Event read(Segment segment, long offset, ByteBuffer header) throws IOException {
+        if (segment.reader == null) {
+            segment.reader = FileChannel.open(segment.file, StandardOpenOption.READ);
+        }
+        header.clear();
+        readFully(segment.reader, header, offset);
+        int length = header.getInt(0);
+        if (length <= 0 || offset + RECORD_HEADER + length > segment.end) {
+            return null;
+        }
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        readFully(segment.reader, payload, offset + RECORD_HEADER);
+        if (!isValid(payload.array(), length, header.getInt(4))) {
+            return null;
+        }
+        int pathLength = payload.get(0) & 0xff;
+        String path = new String(payload.array(), 1, pathLength, US_ASCII);
+        payload.position(1 + pathLength);
+        return new Event(path, payload.slice(), RECORD_HEADER + length);
+    }
+
+    private static boolean isValid(byte[] payload, int length, int checksum) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, length);
+        return (int) crc.getValue() == checksum;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of the outbox segment");
+            }
+        }
+    }
+
+    /**
+     * Load the segments left by the previous outbox, the events after the cursor are pending
+     */
+    private void recover() throws IOException {
+        long[] cursor = readCursor();
+        List<Long> ids = new ArrayList<Long>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    ids.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    // not a segment
+                }
+            }
+        }
+        Collections.sort(ids);
+        long lastId = cursor != null ? cursor[0] : 0;
+        for (long id : ids) {
+            lastId = Math.max(lastId, id);
+            if (cursor != null && id < cursor[0]) {
+                // delivered, the outbox stopped before deleting it
+                Files.delete(segmentFile(id));
+                continue;
+            }
+            Segment segment = new Segment(id, segmentFile(id));
+            segment.end = scan(segment.file, cursor != null && id == cursor[0] ? cursor[1] : 0);
+            segment.sealed = true;
+            segments.add(segment);
+        }
+        active = new Segment(lastId + 1, segmentFile(lastId + 1));
+        active.writer = FileChannel.open(active.file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        segments.add(active);
+        Segment first = segments.peekFirst();
+        cursorSegment = first.id;
+        cursorOffset = cursor != null && first.id == cursor[0] ? Math.min(cursor[1], first.end) : 0;
+    }
+
+    /**
+     * Count the events of a segment from a position, the record torn by a crash is cut off
+     * @return the end of the last whole record
+     */
+    private long scan(Path file, long from) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            long position = 0;
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+            ByteBuffer payload = ByteBuffer.allocate(1024);
+            while (position + RECORD_HEADER <= size) {
+                header.clear();
+                readFully(channel, header, position);
+                int length = header.getInt(0);
+                if (length <= 0 || position + RECORD_HEADER + length > size) {
+                    break;
+                }
+                if (payload.capacity() < length) {
+                    payload = ByteBuffer.allocate(Math.max(length, payload.capacity() * 2));
+                }
+                payload.clear();
+                payload.limit(length);
+                readFully(channel, payload, position + RECORD_HEADER);
+                if (!isValid(payload.array(), length, header.getInt(4))) {
+                    break;
+                }
+                if (position >= from) {
+                    pendingEvents.incrementAndGet();
+                }
+                position += RECORD_HEADER + length;
+            }
+            if (position < size) {
+                channel.truncate(position);
+            }
+            return position;
+        }
+    }
+
+    private long[] readCursor() throws IOException {
+        Path file = directory.resolve(CURSOR);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        String[] fields = new String(Files.readAllBytes(file), UTF_8).trim().split(" ");
+        try {
+            return new long[]{Long.parseLong(fields[0]), Long.parseLong(fields[1])};
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Invalid outbox cursor " + file);
+        }
+    }
+
+    private void saveCursor() {
+        Path file = directory.resolve(CURSOR);
+        Path temp = directory.resolve(CURSOR + ".tmp");
+        try {
+            Files.write(temp, (cursorSegment + " " + cursorOffset).getBytes(UTF_8));
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            unsavedEvents = 0;
+        } catch (IOException e) {
+            // saved with the next events, the events since the last save are sent again after a restart
+        }
+    }
+
+    private Path segmentFile(long id) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+    }
+
+    private static final class Segment {
+        private final long id;
+        private final Path file;
+        private volatile long end;
+        private volatile boolean sealed;
+        // the channel appended to, open until the sync thread forced the sealed segment
+        private FileChannel writer;
+        // guarded by the outbox lock: the events written and not forced yet
+        private List<CompletableFuture<Void>> unsynced = new ArrayList<CompletableFuture<Void>>();
+        // the channel read by the delivery thread
+        private FileChannel reader;
+
+        Segment(long id, Path file) {
+            this.id = id;
+            this.file = file;
+        }
+
+        void closeReader() {
+            FileChannel channel = reader;
+            reader = null;
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    // read only
+                }
+            }
+        }
+    }
+
+    private static final class Event {
+        private final String path;
+        private final ByteBuffer json;
+        private final long size;
+
+        Event(String path, ByteBuffer json, long size) {
+            this.path = path;
+            this.json = json;
+            this.size = size;
+        }
+    }
+}
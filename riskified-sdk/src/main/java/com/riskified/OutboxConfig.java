@@ -0,0 +1,100 @@
+package com.riskified;
+
+import java.nio.file.Path;
+
+/**
+ * Settings of an {@link Outbox}.
+ * The events are appended to segment files of about segmentBytes in the directory, and made durable by one
+ * fsync for all the events recorded within syncIntervalMillis. A delivery that fails is tried again after
+ * initialRetryMillis, doubled up to maxRetryMillis, until it succeeds.
+ */
+public class OutboxConfig {
+    private final Path directory;
+    private final long segmentBytes;
+    private final long syncIntervalMillis;
+    private final long initialRetryMillis;
+    private final long maxRetryMillis;
+
+    private OutboxConfig(OutboxConfigBuilder builder) {
+        this.directory = builder.directory;
+        this.segmentBytes = builder.segmentBytes;
+        this.syncIntervalMillis = builder.syncIntervalMillis;
+        this.initialRetryMillis = builder.initialRetryMillis;
+        this.maxRetryMillis = builder.maxRetryMillis;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public long getSegmentBytes() {
+        return segmentBytes;
+    }
+
+    public long getSyncIntervalMillis() {
+        return syncIntervalMillis;
+    }
+
+    public long getInitialRetryMillis() {
+        return initialRetryMillis;
+    }
+
+    public long getMaxRetryMillis() {
+        return maxRetryMillis;
+    }
+
+    public static class OutboxConfigBuilder {
+        private final Path directory;
+        private long segmentBytes = 64 * 1024 * 1024;
+        private long syncIntervalMillis = 5;
+        private long initialRetryMillis = 1000;
+        private long maxRetryMillis = 60000;
+
+        /**
+         * @param directory the directory of the outbox, created if missing, used by one client at a time
+         */
+        public OutboxConfigBuilder(Path directory) {
+            this.directory = directory;
+        }
+
+        /**
+         * @param segmentBytes the size of a segment file, deleted once all its events are delivered (default 64MB)
+         * @return this builder
+         */
+        public OutboxConfigBuilder setSegmentBytes(long segmentBytes) {
+            this.segmentBytes = Math.max(1024, segmentBytes);
+            return this;
+        }
+
+        /**
+         * @param syncIntervalMillis the time the events recorded wait to share one fsync (default 5)
+         * @return this builder
+         */
+        public OutboxConfigBuilder setSyncIntervalMillis(long syncIntervalMillis) {
+            this.syncIntervalMillis = Math.max(0, syncIntervalMillis);
+            return this;
+        }
+
+        /**
+         * @param initialRetryMillis the wait before the delivery of an event is tried again (default 1000)
+         * @return this builder
+         */
+        public OutboxConfigBuilder setInitialRetryMillis(long initialRetryMillis) {
+            this.initialRetryMillis = Math.max(1, initialRetryMillis);
+            return this;
+        }
+
+        /**
+         * @param maxRetryMillis the longest wait between two tries of a delivery (default 60000)
+         * @return this builder
+         */
+        public OutboxConfigBuilder setMaxRetryMillis(long maxRetryMillis) {
+            this.maxRetryMillis = Math.max(1, maxRetryMillis);
+            return this;
+        }
+
+        public OutboxConfig build() {
+            return new OutboxConfig(this);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.riskified;
+
+import com.riskified.models.Response;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Skips updateOrder and fulfillOrder calls whose payload is byte-identical to the last one sent for the order.
+ * The digest of the last payload sent successfully is kept per endpoint and order id, in an LRU bounded to
+ * maxEntries orders. A call with the same digest within windowMillis of that send isn't sent, it returns a copy
+ * of the earlier response flagged {@link Response#isDeduplicated()}. The window isn't extended by skipped calls,
+ * so an unchanged payload is still sent once per window. A failed call forgets the order.
+ */
+public class PayloadDeduplicator {
+    private final int maxEntries;
+    private final long windowMillis;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, Sent> sent;
+    private final LongAdder deduplicatedCalls = new LongAdder();
+
+    /**
+     * @param maxEntries the orders remembered, the least recently used are forgotten first
+     * @param windowMillis the time an identical payload is skipped after it was sent
+     */
+    public PayloadDeduplicator(final int maxEntries, long windowMillis) {
+        if (maxEntries < 1 || windowMillis < 0) {
+            throw new IllegalArgumentException("maxEntries must be at least 1 and windowMillis can't be negative");
+        }
+        this.maxEntries = maxEntries;
+        this.windowMillis = windowMillis;
+        this.sent = new LinkedHashMap<String, Sent>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Sent> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    /**
+     * @return the orders currently remembered
+     */
+    public int getSize() {
+        lock.lock();
+        try {
+            return sent.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the calls skipped because their payload was just sent
+     */
+    public long getDeduplicatedCalls() {
+        return deduplicatedCalls.sum();
+    }
+
+    /**
+     * @param key the endpoint and order id of the call
+     * @param digest the digest of the payload
+     * @return the response to return instead of calling, null when the call must be sent
+     */
+    Response lookup(String key, String digest) {
+        Response response;
+        lock.lock();
+        try {
+            Sent last = sent.get(key);
+            if (last == null || !last.digest.equals(digest) || now() - last.sentAt > windowMillis) {
+                return null;
+            }
+            response = last.response;
+        } finally {
+            lock.unlock();
+        }
+        deduplicatedCalls.increment();
+        Response copy = new Response(response);
+        copy.setDeduplicated(true);
+        return copy;
+    }
+
+    /**
+     * Remember a payload that was sent successfully
+     */
+    void record(String key, String digest, Response response) {
+        Sent last = new Sent(digest, now(), response);
+        lock.lock();
+        try {
+            sent.put(key, last);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forget the order after a failed call, Riskified may or may not have seen it
+     */
+    void forget(String key) {
+        lock.lock();
+        try {
+            sent.remove(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    private static final class Sent {
+        private final String digest;
+        private final long sentAt;
+        private final Response response;
+
+        Sent(String digest, long sentAt, Response response) {
+            this.digest = digest;
+            this.sentAt = sentAt;
+            this.response = response;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.riskified;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Decoding reader of a response stream whose byte buffer is borrowed from a {@link BufferPool}
+ * (InputStreamReader allocates its own buffer for every response). The buffer is given back on close.
+ */
+final class PooledStreamReader extends Reader {
+    static final int BUFFER_SIZE = 8 * 1024;
+
+    private final InputStream in;
+    private final BufferPool pool;
+    private final CharsetDecoder decoder;
+    private byte[] buffer;
+    private final ByteBuffer bytes;
+    private boolean endOfInput;
+    private boolean flushed;
+
+    PooledStreamReader(InputStream in, Charset charset, BufferPool pool) {
+        this.in = in;
+        this.pool = pool;
+        // malformed input is replaced, like InputStreamReader does
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.buffer = pool.acquire(BUFFER_SIZE);
+        this.bytes = ByteBuffer.wrap(buffer);
+        this.bytes.flip();
+    }
+
+    @Override
+    public int read(char[] destination, int offset, int length) throws IOException {
+        if (buffer == null) {
+            throw new IOException("Stream closed");
+        }
+        if (length == 0) {
+            return 0;
+        }
+        CharBuffer chars = CharBuffer.wrap(destination, offset, length);
+        while (chars.position() == offset) {
+            if (flushed) {
+                return -1;
+            }
+            CoderResult result = decoder.decode(bytes, chars, endOfInput);
+            if (result.isOverflow()) {
+                break;
+            }
+            if (endOfInput) {
+                decoder.flush(chars);
+                flushed = true;
+                break;
+            }
+            fill();
+        }
+        int read = chars.position() - offset;
+        return read == 0 && flushed ? -1 : read;
+    }
+
+    private void fill() throws IOException {
+        bytes.compact();
+        int read = in.read(buffer, bytes.position(), bytes.remaining());
+        if (read < 0) {
+            endOfInput = true;
+        } else {
+            bytes.position(bytes.position() + read);
+        }
+        bytes.flip();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (buffer != null) {
+            pool.release(buffer);
+            buffer = null;
+        }
+        in.close();
+    }
+}
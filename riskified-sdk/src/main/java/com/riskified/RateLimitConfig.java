@@ -0,0 +1,116 @@
+package com.riskified;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Settings of the {@link RateLimits} of a client: the request rate agreed with Riskified for the whole shop,
+ * and tighter rates for single endpoints, e.g. while replaying historical orders or chargebacks.
+ * A call takes a token from the bucket of its endpoint, then from the bucket of the shop, each attempt included.
+ * When no token is due within maxWaitMillis (or before the deadline of the call) it fails with
+ * {@link RateLimitExceededException}; a maxWaitMillis of 0 never waits. Blocking calls wait on their thread,
+ * calls of the non-blocking transport wait on the timer of the client without holding a thread.
+ */
+public class RateLimitConfig {
+    private final Rate shopRate;
+    private final Map<String, Rate> endpointRates;
+    private final long maxWaitMillis;
+
+    private RateLimitConfig(RateLimitConfigBuilder builder) {
+        this.shopRate = builder.shopRate;
+        this.endpointRates = Collections.unmodifiableMap(new HashMap<String, Rate>(builder.endpointRates));
+        this.maxWaitMillis = builder.maxWaitMillis;
+    }
+
+    /**
+     * @return the rate of the whole shop, null when only endpoints are limited
+     */
+    public Rate getShopRate() {
+        return shopRate;
+    }
+
+    /**
+     * @param endpoint the path of the endpoint, e.g. "/api/historical"
+     * @return the rate of the endpoint, null when it has none
+     */
+    public Rate getEndpointRate(String endpoint) {
+        return endpointRates.get(endpoint);
+    }
+
+    public Map<String, Rate> getEndpointRates() {
+        return endpointRates;
+    }
+
+    public long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    /**
+     * A sustained rate and the burst allowed above it
+     */
+    public static class Rate {
+        private final double permitsPerSecond;
+        private final int burst;
+
+        /**
+         * @param permitsPerSecond the sustained calls per second
+         * @param burst the calls that can be made at once after a quiet period
+         */
+        public Rate(double permitsPerSecond, int burst) {
+            if (permitsPerSecond <= 0 || burst < 1) {
+                throw new IllegalArgumentException("permitsPerSecond must be positive and burst at least 1");
+            }
+            this.permitsPerSecond = permitsPerSecond;
+            this.burst = burst;
+        }
+
+        public double getPermitsPerSecond() {
+            return permitsPerSecond;
+        }
+
+        public int getBurst() {
+            return burst;
+        }
+    }
+
+    public static class RateLimitConfigBuilder {
+        private Rate shopRate;
+        private final Map<String, Rate> endpointRates = new HashMap<String, Rate>();
+        private long maxWaitMillis = 1000;
+
+        /**
+         * @param permitsPerSecond the calls per second of the whole shop
+         * @param burst the calls that can be made at once after a quiet period
+         * @return this builder
+         */
+        public RateLimitConfigBuilder setShopRate(double permitsPerSecond, int burst) {
+            this.shopRate = new Rate(permitsPerSecond, burst);
+            return this;
+        }
+
+        /**
+         * @param endpoint the path of the endpoint, e.g. "/api/historical"
+         * @param permitsPerSecond the calls per second of the endpoint
+         * @param burst the calls that can be made at once after a quiet period
+         * @return this builder
+         */
+        public RateLimitConfigBuilder setEndpointRate(String endpoint, double permitsPerSecond, int burst) {
+            this.endpointRates.put(endpoint, new Rate(permitsPerSecond, burst));
+            return this;
+        }
+
+        /**
+         * @param maxWaitMillis the time a call may wait for its tokens, 0 to fail at once (default 1000)
+         * @return this builder
+         */
+        public RateLimitConfigBuilder setMaxWaitMillis(long maxWaitMillis) {
+            this.maxWaitMillis = Math.max(0, maxWaitMillis);
+            return this;
+        }
+
+        public RateLimitConfig build() {
+            return new RateLimitConfig(this);
+        }
+    }
+}
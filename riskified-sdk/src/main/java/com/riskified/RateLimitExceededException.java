@@ -0,0 +1,22 @@
+package com.riskified;
+
+import java.io.IOException;
+
+/**
+ * Thrown without calling Riskified when no token of the shop or endpoint rate was due in time
+ */
+public class RateLimitExceededException extends IOException {
+    private final String key;
+
+    public RateLimitExceededException(String key) {
+        super("Rate limit reached for " + key);
+        this.key = key;
+    }
+
+    /**
+     * @return the shop url, followed by the endpoint when the limit of an endpoint was reached
+     */
+    public String getKey() {
+        return key;
+    }
+}
@@ -0,0 +1,143 @@
+package com.riskified;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token bucket of one shop, or of one endpoint of a shop, see {@link RateLimitConfig}.
+ * The bucket is kept as the time its next token is due, refilled and withdrawn by a single compare-and-set,
+ * so it is lock-free and as cheap as the counters of the client. A call waiting for a token reserves it first,
+ * the calls behind it are not overtaken.
+ */
+public class RateLimiter {
+    private final String key;
+    private final RateLimitConfig.Rate rate;
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final AtomicLong nextTokenNanos;
+    private final LongAdder delayedCalls = new LongAdder();
+    private final LongAdder rejectedCalls = new LongAdder();
+
+    RateLimiter(String key, RateLimitConfig.Rate rate) {
+        this.key = key;
+        this.rate = rate;
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / rate.getPermitsPerSecond()));
+        this.burstNanos = intervalNanos * rate.getBurst();
+        this.nextTokenNanos = new AtomicLong(System.nanoTime() - burstNanos);
+    }
+
+    /**
+     * @return the shop url, followed by the endpoint for the bucket of an endpoint
+     */
+    public String getKey() {
+        return key;
+    }
+
+    public RateLimitConfig.Rate getRate() {
+        return rate;
+    }
+
+    /**
+     * @return the calls that had to wait for a token
+     */
+    public long getDelayedCalls() {
+        return delayedCalls.sum();
+    }
+
+    /**
+     * @return the calls rejected because no token was due in time
+     */
+    public long getRejectedCalls() {
+        return rejectedCalls.sum();
+    }
+
+    /**
+     * Take a token if one is available right now
+     * @return true when a token was taken
+     */
+    public boolean tryAcquire() {
+        return reserve(0) == 0;
+    }
+
+    /**
+     * Take a token, waiting for it on the current thread
+     * @param maxWaitMillis the longest time to wait
+     * @throws RateLimitExceededException when no token is due within maxWaitMillis
+     * @throws InterruptedIOException when interrupted while waiting
+     */
+    public void acquire(long maxWaitMillis) throws RateLimitExceededException, InterruptedIOException {
+        long wait = reserve(TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxWaitMillis)));
+        if (wait < 0) {
+            throw new RateLimitExceededException(key);
+        }
+        if (wait > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a " + key + " token");
+            }
+        }
+    }
+
+    /**
+     * Take a token without holding a thread while waiting for it
+     * @param maxWaitMillis the longest time to wait
+     * @param timer the timer completing the future when the token is due
+     * @return a future completed when the token is taken, or exceptionally with RateLimitExceededException
+     */
+    public CompletableFuture<Void> acquireAsync(long maxWaitMillis, ScheduledExecutorService timer) {
+        final CompletableFuture<Void> acquired = new CompletableFuture<Void>();
+        long wait = reserve(TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxWaitMillis)));
+        if (wait < 0) {
+            acquired.completeExceptionally(new RateLimitExceededException(key));
+        } else if (wait == 0) {
+            acquired.complete(null);
+        } else {
+            try {
+                timer.schedule(() -> acquired.complete(null), wait, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                release();
+                acquired.completeExceptionally(e);
+            }
+        }
+        return acquired;
+    }
+
+    /**
+     * Reserve the next token
+     * @param maxWaitNanos the longest acceptable wait
+     * @return the time to wait before using the token, -1 when it would be longer than maxWaitNanos
+     */
+    long reserve(long maxWaitNanos) {
+        for (;;) {
+            long next = nextTokenNanos.get();
+            long now = System.nanoTime();
+            // the bucket holds at most burst tokens, a token earlier than that was never stored
+            long due = Math.max(next, now - burstNanos + intervalNanos);
+            long wait = Math.max(0, due - now);
+            if (wait > maxWaitNanos) {
+                rejectedCalls.increment();
+                return -1;
+            }
+            if (nextTokenNanos.compareAndSet(next, due + intervalNanos)) {
+                if (wait > 0) {
+                    delayedCalls.increment();
+                }
+                return wait;
+            }
+        }
+    }
+
+    /**
+     * Give back a reserved token that won't be used
+     */
+    void release() {
+        nextTokenNanos.addAndGet(-intervalNanos);
+    }
+}
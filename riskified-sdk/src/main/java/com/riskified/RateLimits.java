@@ -0,0 +1,87 @@
+package com.riskified;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The token buckets of a {@link RateLimitConfig}, keyed by shop url and endpoint.
+ * Clients given the same instance share the buckets of a shop, so the rate agreed with Riskified holds
+ * across all of them. The buckets are created on first use and looked up without locking.
+ */
+public class RateLimits {
+    private final RateLimitConfig config;
+    private final ConcurrentMap<String, RateLimiter> limiters = new ConcurrentHashMap<String, RateLimiter>();
+
+    public RateLimits(RateLimitConfig config) {
+        this.config = config;
+    }
+
+    public RateLimitConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * @param shopUrl the shop url
+     * @return the bucket of the whole shop, null when the config has no shop rate
+     */
+    public RateLimiter getShopLimiter(String shopUrl) {
+        return getLimiter(shopUrl, config.getShopRate());
+    }
+
+    /**
+     * @param shopUrl the shop url
+     * @param endpoint the path of the endpoint, e.g. "/api/historical"
+     * @return the bucket of the endpoint for the shop, null when the config has no rate for it
+     */
+    public RateLimiter getEndpointLimiter(String shopUrl, String endpoint) {
+        return getLimiter(shopUrl + endpoint, config.getEndpointRate(endpoint));
+    }
+
+    /**
+     * Reserve a token of the endpoint and one of the shop
+     * @param shopUrl the shop url
+     * @param endpoint the path of the endpoint
+     * @param maxWaitMillis the longest acceptable wait
+     * @return the nanoseconds to wait before calling
+     * @throws RateLimitExceededException when a token isn't due within maxWaitMillis, no token is kept then
+     */
+    long reserve(String shopUrl, String endpoint, long maxWaitMillis) throws RateLimitExceededException {
+        long maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxWaitMillis));
+        long wait = 0;
+        RateLimiter endpointLimiter = getEndpointLimiter(shopUrl, endpoint);
+        if (endpointLimiter != null) {
+            wait = endpointLimiter.reserve(maxWaitNanos);
+            if (wait < 0) {
+                throw new RateLimitExceededException(endpointLimiter.getKey());
+            }
+        }
+        RateLimiter shopLimiter = getShopLimiter(shopUrl);
+        if (shopLimiter != null) {
+            long shopWait = shopLimiter.reserve(maxWaitNanos);
+            if (shopWait < 0) {
+                if (endpointLimiter != null) {
+                    endpointLimiter.release();
+                }
+                throw new RateLimitExceededException(shopLimiter.getKey());
+            }
+            wait = Math.max(wait, shopWait);
+        }
+        return wait;
+    }
+
+    private RateLimiter getLimiter(String key, RateLimitConfig.Rate rate) {
+        if (rate == null) {
+            return null;
+        }
+        RateLimiter limiter = limiters.get(key);
+        if (limiter == null) {
+            RateLimiter created = new RateLimiter(key, rate);
+            limiter = limiters.putIfAbsent(key, created);
+            if (limiter == null) {
+                limiter = created;
+            }
+        }
+        return limiter;
+    }
+}
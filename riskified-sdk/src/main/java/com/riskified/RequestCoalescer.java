@@ -0,0 +1,67 @@
+package com.riskified;
+
+import com.riskified.models.Response;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Single-flight of identical calls: while a call is in flight, the same call for the same order with the same
+ * payload waits for its Response instead of sending another request. A call is keyed by its endpoint,
+ * the order id and the signature of its body. Only calls in flight are shared, a call made after the first
+ * one completed is sent again.
+ */
+public class RequestCoalescer {
+    private final ConcurrentMap<String, CompletableFuture<Response>> calls = new ConcurrentHashMap<String, CompletableFuture<Response>>();
+    private final LongAdder coalescedCalls = new LongAdder();
+
+    RequestCoalescer() {
+    }
+
+    /**
+     * @return the distinct calls currently in flight
+     */
+    public int getInFlight() {
+        return calls.size();
+    }
+
+    /**
+     * @return the calls that shared the response of a call in flight instead of calling Riskified
+     */
+    public long getCoalescedCalls() {
+        return coalescedCalls.sum();
+    }
+
+    /**
+     * Join the call in flight with the same key, or lead it
+     * @param key the key of the call
+     * @param leader the future of the caller, completed through {@link #complete} when it leads
+     * @return the future of the call in flight, null when the caller leads
+     */
+    CompletableFuture<Response> join(String key, CompletableFuture<Response> leader) {
+        CompletableFuture<Response> current = calls.putIfAbsent(key, leader);
+        if (current != null) {
+            coalescedCalls.increment();
+        }
+        return current;
+    }
+
+    /**
+     * Hand the outcome of a led call to the calls that joined it
+     * @param key the key of the call
+     * @param leader the future given to {@link #join}
+     * @param response the response of the call
+     * @param error the error of the call, null on success
+     */
+    void complete(String key, CompletableFuture<Response> leader, Response response, Throwable error) {
+        // removed first, a call made from now on is sent again
+        calls.remove(key, leader);
+        if (error != null) {
+            leader.completeExceptionally(error);
+        } else {
+            leader.complete(response);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.riskified;
+
+/**
+ * The priority lanes of the {@link RequestScheduler}, from the most to the least urgent.
+ * The lane of a call comes from the {@link EndpointGroup} of the endpoint called, a HIGH or LOW
+ * {@link RequestOptions.Priority} moves it to the first or the last lane.
+ */
+public enum RequestLane {
+    /**
+     * The {@link EndpointGroup#DECISION} group: checkout, create, submit, analyze (decide) and the deco calls
+     */
+    CHECKOUT,
+    /**
+     * The {@link EndpointGroup#LIFECYCLE} group but fulfillment: decision, cancel, refund, update and chargeback
+     */
+    DECISION,
+    /**
+     * Fulfillment
+     */
+    FULFILLMENT,
+    /**
+     * The {@link EndpointGroup#ACCOUNT} and {@link EndpointGroup#HISTORICAL} groups, and the unknown endpoints
+     */
+    BACKGROUND;
+
+    /**
+     * @param path the path of the endpoint called relative to its base URL, e.g. "/api/create"
+     * @param priority the priority of the call
+     * @return the lane of the call
+     */
+    static RequestLane of(String path, RequestOptions.Priority priority) {
+        return of(EndpointGroup.forPath(path), path, priority);
+    }
+
+    /**
+     * @param group the group of the endpoint called, null when it is unknown
+     * @param path the path of the endpoint called relative to its base URL, e.g. "/api/create"
+     * @param priority the priority of the call
+     * @return the lane of the call
+     */
+    static RequestLane of(EndpointGroup group, String path, RequestOptions.Priority priority) {
+        if (priority == RequestOptions.Priority.HIGH) {
+            return CHECKOUT;
+        }
+        if (priority == RequestOptions.Priority.LOW || group == null) {
+            return BACKGROUND;
+        }
+        switch (group) {
+            case DECISION:
+                return CHECKOUT;
+            case LIFECYCLE:
+                return Endpoints.FULFILL.equals(path) ? FULFILLMENT : DECISION;
+            default:
+                return BACKGROUND;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.riskified;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per call settings, applied with {@link RiskifiedClient#withOptions(RequestOptions)}.
+ * The deadline is absolute and covers the whole call: waiting for a pooled connection, connecting,
+ * sending, reading and parsing the response, and the backoff between retries. A call still running
+ * at the deadline is aborted and fails with {@link DeadlineExceededException}, on the blocking and on
+ * the asynchronous api alike.
+ */
+public class RequestOptions {
+    public enum Priority {
+        HIGH,
+        NORMAL,
+        /**
+         * Low priority calls are never retried
+         */
+        LOW
+    }
+
+    /**
+     * No deadline, normal priority and no idempotency key
+     */
+    public static final RequestOptions DEFAULT = new RequestOptionsBuilder().build();
+
+    private final long deadlineNanos;
+    private final boolean hasDeadline;
+    private final Priority priority;
+    private final String idempotencyKey;
+
+    private RequestOptions(RequestOptionsBuilder builder) {
+        this.deadlineNanos = builder.deadlineNanos;
+        this.hasDeadline = builder.hasDeadline;
+        this.priority = builder.priority;
+        this.idempotencyKey = builder.idempotencyKey;
+    }
+
+    public boolean hasDeadline() {
+        return hasDeadline;
+    }
+
+    /**
+     * @return the time left before the deadline, Long.MAX_VALUE without deadline, 0 or less once it passed
+     */
+    public long getRemainingMillis() {
+        if (!hasDeadline) {
+            return Long.MAX_VALUE;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+    }
+
+    public Priority getPriority() {
+        return priority;
+    }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public static class RequestOptionsBuilder {
+        private long deadlineNanos;
+        private boolean hasDeadline;
+        private Priority priority = Priority.NORMAL;
+        private String idempotencyKey;
+
+        /**
+         * @param epochMillis the wall clock time (as System.currentTimeMillis) the call must be over by
+         * @return this builder
+         */
+        public RequestOptionsBuilder setDeadline(long epochMillis) {
+            return setTimeout(epochMillis - System.currentTimeMillis());
+        }
+
+        /**
+         * @param timeoutMillis the time from now the call must be over in
+         * @return this builder
+         */
+        public RequestOptionsBuilder setTimeout(long timeoutMillis) {
+            this.deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            this.hasDeadline = true;
+            return this;
+        }
+
+        /**
+         * @param priority the priority of the call (default NORMAL)
+         * @return this builder
+         */
+        public RequestOptionsBuilder setPriority(Priority priority) {
+            this.priority = priority;
+            return this;
+        }
+
+        /**
+         * Sent as the Idempotency-Key header. A call with an idempotency key is also retried after a
+         * read timeout, when the retry policy allows retries.
+         * @param idempotencyKey a key unique to the logical call, e.g. the order id and the action
+         * @return this builder
+         */
+        public RequestOptionsBuilder setIdempotencyKey(String idempotencyKey) {
+            this.idempotencyKey = idempotencyKey;
+            return this;
+        }
+
+        public RequestOptions build() {
+            return new RequestOptions(this);
+        }
+    }
+}
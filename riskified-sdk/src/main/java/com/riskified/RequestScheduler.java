@@ -0,0 +1,241 @@
+package com.riskified;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Admission of the calls of a client by priority lane, see {@link RequestSchedulerConfig} for the rules.
+ * A call takes a {@link Ticket} before it is sent and gives it back when it is over, retries included.
+ * Waiting calls don't hold a thread on the non-blocking transport, they are started by the call ending before them.
+ * The queues and the calls in flight change together, the ticket a leaving call hands its place to is completed
+ * after that, so the call it starts never runs inside the scheduler.
+ */
+public class RequestScheduler {
+    private static final RequestLane[] LANES = RequestLane.values();
+
+    private final RequestSchedulerConfig config;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ArrayDeque<Ticket>[] queues;
+    private final LongAdder[] admittedCalls = new LongAdder[LANES.length];
+    private final LongAdder[] shedCalls = new LongAdder[LANES.length];
+    private final LongAdder[] waitNanos = new LongAdder[LANES.length];
+    private int inFlight;
+    private int queued;
+
+    @SuppressWarnings("unchecked")
+    RequestScheduler(RequestSchedulerConfig config) {
+        this.config = config;
+        this.queues = new ArrayDeque[LANES.length];
+        for (int i = 0; i < LANES.length; i++) {
+            queues[i] = new ArrayDeque<Ticket>();
+            admittedCalls[i] = new LongAdder();
+            shedCalls[i] = new LongAdder();
+            waitNanos[i] = new LongAdder();
+        }
+    }
+
+    public RequestSchedulerConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * @return the calls currently sent
+     */
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param lane a lane
+     * @return the calls waiting in the lane
+     */
+    public int getQueueDepth(RequestLane lane) {
+        lock.lock();
+        try {
+            return queues[lane.ordinal()].size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param lane a lane
+     * @return the calls of the lane that were sent
+     */
+    public long getAdmittedCalls(RequestLane lane) {
+        return admittedCalls[lane.ordinal()].sum();
+    }
+
+    /**
+     * @param lane a lane
+     * @return the calls of the lane that were shed
+     */
+    public long getShedCalls(RequestLane lane) {
+        return shedCalls[lane.ordinal()].sum();
+    }
+
+    /**
+     * @param lane a lane
+     * @return the average time the sent calls of the lane waited for their turn
+     */
+    public double getAverageWaitMillis(RequestLane lane) {
+        long admitted = admittedCalls[lane.ordinal()].sum();
+        return admitted == 0 ? 0 : waitNanos[lane.ordinal()].sum() / 1e6 / admitted;
+    }
+
+    /**
+     * Ask for a turn
+     * @param lane the lane of the call
+     * @return the ticket of the call, its future completes when the call may be sent or was shed
+     */
+    Ticket enter(RequestLane lane) {
+        Ticket ticket = new Ticket(lane);
+        Ticket evicted = null;
+        int outcome;
+        lock.lock();
+        try {
+            if (inFlight < config.getMaxInFlight() && queued == 0) {
+                inFlight++;
+                ticket.state = Ticket.ADMITTED;
+            } else if (queued < config.getMaxQueueSize() || (evicted = pollNewestAfter(lane)) != null) {
+                queues[lane.ordinal()].addLast(ticket);
+                queued++;
+            } else {
+                ticket.state = Ticket.SHED;
+            }
+            // once queued the ticket belongs to the other calls, its state is read under the lock
+            outcome = ticket.state;
+        } finally {
+            lock.unlock();
+        }
+        if (evicted != null) {
+            shed(evicted, "a more urgent call took its place");
+        }
+        if (outcome == Ticket.ADMITTED) {
+            admittedCalls[lane.ordinal()].increment();
+            ticket.admitted.complete(null);
+        } else if (outcome == Ticket.SHED) {
+            shed(ticket, "the queue is full");
+        }
+        return ticket;
+    }
+
+    /**
+     * Shed a call that waited too long
+     * @param ticket the ticket of the call
+     * @return true when the call was still waiting and was shed, false when it was already admitted or shed
+     */
+    boolean expire(Ticket ticket) {
+        if (!remove(ticket, Ticket.SHED)) {
+            return false;
+        }
+        shed(ticket, "it waited too long");
+        return true;
+    }
+
+    /**
+     * Give the turn back, the next waiting call is admitted. A waiting call is removed from its lane.
+     * @param ticket the ticket of the call, nothing is done when it was already given back
+     */
+    void leave(Ticket ticket) {
+        if (remove(ticket, Ticket.DONE)) {
+            ticket.admitted.completeExceptionally(new RequestShedException(ticket.lane, "the call was abandoned"));
+            return;
+        }
+        Ticket next = null;
+        lock.lock();
+        try {
+            if (ticket.state != Ticket.ADMITTED) {
+                return;
+            }
+            ticket.state = Ticket.DONE;
+            for (ArrayDeque<Ticket> queue : queues) {
+                next = queue.pollFirst();
+                if (next != null) {
+                    queued--;
+                    next.state = Ticket.ADMITTED;
+                    break;
+                }
+            }
+            if (next == null) {
+                inFlight--;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (next != null) {
+            admittedCalls[next.lane.ordinal()].increment();
+            waitNanos[next.lane.ordinal()].add(System.nanoTime() - next.enqueuedNanos);
+            next.admitted.complete(null);
+        }
+    }
+
+    private boolean remove(Ticket ticket, int state) {
+        lock.lock();
+        try {
+            if (ticket.state != Ticket.QUEUED) {
+                return false;
+            }
+            queues[ticket.lane.ordinal()].remove(ticket);
+            queued--;
+            ticket.state = state;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Ticket pollNewestAfter(RequestLane lane) {
+        for (int i = LANES.length - 1; i > lane.ordinal(); i--) {
+            Ticket ticket = queues[i].pollLast();
+            if (ticket != null) {
+                queued--;
+                ticket.state = Ticket.SHED;
+                return ticket;
+            }
+        }
+        return null;
+    }
+
+    private void shed(Ticket ticket, String reason) {
+        shedCalls[ticket.lane.ordinal()].increment();
+        ticket.admitted.completeExceptionally(new RequestShedException(ticket.lane, reason));
+    }
+
+    /**
+     * The turn of one call
+     */
+    static final class Ticket {
+        private static final int QUEUED = 0;
+        private static final int ADMITTED = 1;
+        private static final int SHED = 2;
+        private static final int DONE = 3;
+
+        private final RequestLane lane;
+        private final long enqueuedNanos = System.nanoTime();
+        private final CompletableFuture<Void> admitted = new CompletableFuture<Void>();
+        private int state = QUEUED;
+
+        Ticket(RequestLane lane) {
+            this.lane = lane;
+        }
+
+        RequestLane getLane() {
+            return lane;
+        }
+
+        /**
+         * @return completed when the call may be sent, exceptionally with RequestShedException when it was shed
+         */
+        CompletableFuture<Void> getAdmitted() {
+            return admitted;
+        }
+    }
+}
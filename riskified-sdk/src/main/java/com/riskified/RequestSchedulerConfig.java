@@ -0,0 +1,72 @@
+package com.riskified;
+
+/**
+ * Settings of the {@link RequestScheduler} of a client.
+ * At most maxInFlight calls are sent together, the others wait in their {@link RequestLane} and are started
+ * most urgent lane first. At most maxQueueSize calls wait: when the queue is full a new call sheds the newest
+ * call of a less urgent lane, or is shed itself when there is none. A call waiting longer than
+ * maxQueueWaitMillis (or past its deadline) is shed as well. Shed calls fail with {@link RequestShedException}.
+ */
+public class RequestSchedulerConfig {
+    private final int maxInFlight;
+    private final int maxQueueSize;
+    private final long maxQueueWaitMillis;
+
+    private RequestSchedulerConfig(RequestSchedulerConfigBuilder builder) {
+        this.maxInFlight = builder.maxInFlight;
+        this.maxQueueSize = builder.maxQueueSize;
+        this.maxQueueWaitMillis = builder.maxQueueWaitMillis;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public int getMaxQueueSize() {
+        return maxQueueSize;
+    }
+
+    public long getMaxQueueWaitMillis() {
+        return maxQueueWaitMillis;
+    }
+
+    public static class RequestSchedulerConfigBuilder {
+        private int maxInFlight = 200;
+        private int maxQueueSize = 1000;
+        private long maxQueueWaitMillis = 5000;
+
+        /**
+         * @param maxInFlight the calls sent together, usually the size of the connection pool (default 200)
+         * @return this builder
+         */
+        public RequestSchedulerConfigBuilder setMaxInFlight(int maxInFlight) {
+            if (maxInFlight < 1) {
+                throw new IllegalArgumentException("maxInFlight must be at least 1");
+            }
+            this.maxInFlight = maxInFlight;
+            return this;
+        }
+
+        /**
+         * @param maxQueueSize the calls waiting in all the lanes together (default 1000)
+         * @return this builder
+         */
+        public RequestSchedulerConfigBuilder setMaxQueueSize(int maxQueueSize) {
+            this.maxQueueSize = Math.max(0, maxQueueSize);
+            return this;
+        }
+
+        /**
+         * @param maxQueueWaitMillis the time a call may wait for its turn (default 5000)
+         * @return this builder
+         */
+        public RequestSchedulerConfigBuilder setMaxQueueWaitMillis(long maxQueueWaitMillis) {
+            this.maxQueueWaitMillis = maxQueueWaitMillis;
+            return this;
+        }
+
+        public RequestSchedulerConfig build() {
+            return new RequestSchedulerConfig(this);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.riskified;
+
+import java.io.IOException;
+
+/**
+ * Thrown without calling Riskified when the {@link RequestScheduler} shed the call to keep more urgent calls flowing
+ */
+public class RequestShedException extends IOException {
+    private final RequestLane lane;
+
+    public RequestShedException(RequestLane lane, String reason) {
+        super("Riskified call of the " + lane + " lane was shed: " + reason);
+        this.lane = lane;
+    }
+
+    public RequestLane getLane() {
+        return lane;
+    }
+}
@@ -0,0 +1,246 @@
+package com.riskified;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.riskified.models.AuthenticationType;
+import com.riskified.models.CheckoutResponse;
+import com.riskified.models.Error;
+import com.riskified.models.ResOrder;
+import com.riskified.models.Response;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ContentType;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming reader of the Riskified api responses.
+ * The entity stream is read token by token straight into Response / ResOrder, without buffering the
+ * body in a String or building a json tree. Fields the sdk doesn't know are skipped, and the common
+ * status strings are replaced with shared constants so parsed responses don't retain copies of them.
+ */
+final class ResponseParser {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Map<String, String> CONSTANTS = new HashMap<String, String>();
+
+    static {
+        for (String constant : new String[] {"approved", "declined", "submitted", "captured", "checkout", "created",
+                "updated", "cancelled", "canceled", "fulfilled", "refunded", "success", "failure", "error", "ok"}) {
+            CONSTANTS.put(constant, constant);
+        }
+    }
+
+    private ResponseParser() {
+    }
+
+    /**
+     * Parse an order response, the order fields are snake_case
+     * @param entity the response body
+     * @return the response, null for an empty body
+     * @throws IOException error reading the body or malformed json
+     */
+    static Response parseOrderResponse(HttpEntity entity) throws IOException {
+        JsonReader reader = open(entity);
+        try {
+            if (!hasContent(reader)) {
+                return null;
+            }
+            Response response = new Response();
+            readResponse(reader, response, false);
+            return response;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Parse a checkout response, the order is under "checkout" and its fields are camelCase
+     * @param entity the response body
+     * @return the response, null for an empty body
+     * @throws IOException error reading the body or malformed json
+     */
+    static CheckoutResponse parseCheckoutResponse(HttpEntity entity) throws IOException {
+        JsonReader reader = open(entity);
+        try {
+            if (!hasContent(reader)) {
+                return null;
+            }
+            CheckoutResponse response = new CheckoutResponse();
+            readResponse(reader, response, true);
+            response.setOrder(response.getCheckout());
+            return response;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static JsonReader open(HttpEntity entity) throws IOException {
+        InputStream content = entity == null ? null : entity.getContent();
+        if (content == null) {
+            content = new ByteArrayInputStream(new byte[0]);
+        }
+        ContentType contentType = ContentType.get(entity);
+        Charset charset = contentType != null && contentType.getCharset() != null ? contentType.getCharset() : UTF_8;
+        JsonReader reader = new JsonReader(new PooledStreamReader(content, charset, BufferPool.shared()));
+        // same leniency as Gson.fromJson
+        reader.setLenient(true);
+        return reader;
+    }
+
+    private static boolean hasContent(JsonReader reader) throws IOException {
+        try {
+            reader.peek();
+            return true;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    private static void readResponse(JsonReader reader, Response response, boolean checkout) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("order")) {
+                response.setOrder(readOrder(reader, checkout));
+            } else if (checkout && name.equals("checkout")) {
+                ((CheckoutResponse) response).setCheckout(readOrder(reader, true));
+            } else if (name.equals("decision")) {
+                response.setDecision(readString(reader));
+            } else if (name.equals("received")) {
+                Integer received = readInteger(reader);
+                if (received != null) {
+                    response.setReceived(received);
+                }
+            } else if (name.equals("warnings")) {
+                response.setWarnings(readStrings(reader));
+            } else if (name.equals("error")) {
+                response.setError(readError(reader));
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static ResOrder readOrder(JsonReader reader, boolean checkout) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        ResOrder order = new ResOrder();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("id")) {
+                order.setId(readString(reader));
+            } else if (name.equals("status")) {
+                order.setStatus(readString(reader));
+            } else if (name.equals("description")) {
+                order.setDescription(readString(reader));
+            } else if (name.equals(checkout ? "oldStatus" : "old_status")) {
+                order.setOldStatus(readString(reader));
+            } else if (name.equals(checkout ? "decisionCode" : "decision_code")) {
+                order.setDecisionCode(readString(reader));
+            } else if (name.equals("category")) {
+                order.setCategory(readString(reader));
+            } else if (name.equals("score")) {
+                Integer score = readInteger(reader);
+                if (score != null) {
+                    order.setScore(score);
+                }
+            } else if (name.equals("authentication_type")) {
+                order.setAuthenticationType(readAuthenticationType(reader));
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return order;
+    }
+
+    private static AuthenticationType readAuthenticationType(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        AuthenticationType authenticationType = new AuthenticationType(null);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("auth_type")) {
+                authenticationType.setAuthType(readString(reader));
+            } else if (name.equals("exemption_method")) {
+                authenticationType.setExemptionMethod(readString(reader));
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return authenticationType;
+    }
+
+    private static Error readError(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        Error error = new Error();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("message")) {
+                error.setMessage(readString(reader));
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return error;
+    }
+
+    private static List<String> readStrings(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        List<String> values = new ArrayList<String>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            values.add(readString(reader));
+        }
+        reader.endArray();
+        return values;
+    }
+
+    private static String readString(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        if (token == JsonToken.BOOLEAN) {
+            return Boolean.toString(reader.nextBoolean());
+        }
+        String value = reader.nextString();
+        String constant = CONSTANTS.get(value);
+        return constant != null ? constant : value;
+    }
+
+    private static Integer readInteger(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextInt();
+    }
+}
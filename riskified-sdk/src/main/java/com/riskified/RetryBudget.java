@@ -0,0 +1,77 @@
+package com.riskified;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caps the retries of a client to a ratio of its requests, so retries can't snowball while Riskified is degraded.
+ * Every call deposits retryRatio in the budget and every retry withdraws 1, a retry is skipped when the
+ * budget is empty. The balance starts at, and never exceeds, maxRetryBurst, letting a quiet client retry
+ * a few times before it has built up any deposits. The budget is lock-free and shared by all threads.
+ */
+public class RetryBudget {
+    private static final long SCALE = 1000;
+
+    private final long deposit;
+    private final long maxBalance;
+    private final AtomicLong balance;
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder rejectedRetries = new LongAdder();
+
+    /**
+     * @param retryRatio the retries allowed per call, e.g. 0.1 for one retry every ten calls
+     * @param maxRetryBurst the retries that can be made in a row from a full budget
+     */
+    public RetryBudget(double retryRatio, int maxRetryBurst) {
+        if (retryRatio < 0 || maxRetryBurst < 0) {
+            throw new IllegalArgumentException("retryRatio and maxRetryBurst can't be negative");
+        }
+        this.deposit = Math.round(retryRatio * SCALE);
+        this.maxBalance = maxRetryBurst * SCALE;
+        this.balance = new AtomicLong(maxBalance);
+    }
+
+    /**
+     * Record a call, done once per call whatever its number of attempts
+     */
+    void onRequest() {
+        long current;
+        do {
+            current = balance.get();
+            if (current >= maxBalance) {
+                return;
+            }
+        } while (!balance.compareAndSet(current, Math.min(maxBalance, current + deposit)));
+    }
+
+    /**
+     * Withdraw a retry from the budget
+     * @return true when the retry may be made
+     */
+    boolean tryRetry() {
+        long current;
+        do {
+            current = balance.get();
+            if (current < SCALE) {
+                rejectedRetries.increment();
+                return false;
+            }
+        } while (!balance.compareAndSet(current, current - SCALE));
+        retries.increment();
+        return true;
+    }
+
+    /**
+     * @return the number of retries made
+     */
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    /**
+     * @return the number of retries skipped because the budget was empty
+     */
+    public long getRejectedRetries() {
+        return rejectedRetries.sum();
+    }
+}
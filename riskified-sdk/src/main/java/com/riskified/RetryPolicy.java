@@ -0,0 +1,169 @@
+package com.riskified;
+
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * When and how often RiskifiedClient retries a failed call.
+ * A call is retried on the retryable statuses (504 by default) and, unless disabled, on connection failures
+ * (the request never reached Riskified). Read timeouts and connections closed without a response are only
+ * retried for calls carrying an idempotency key (see {@link RequestOptions}), otherwise the order may have been
+ * processed.
+ * Attempts are spaced by an exponential backoff with full jitter: before retry n the client waits a random
+ * time between 0 and min(maxBackoff, initialBackoff * multiplier^(n-1)).
+ * Retries send the already signed body again, the request is serialized once.
+ */
+public class RetryPolicy {
+    /**
+     * Never retry, the default of the client
+     */
+    public static final RetryPolicy NONE = new RetryPolicyBuilder().setMaxAttempts(1).build();
+
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final double multiplier;
+    private final Set<Integer> retryableStatuses;
+    private final boolean retryOnConnectionFailure;
+
+    private RetryPolicy(RetryPolicyBuilder builder) {
+        this.maxAttempts = builder.maxAttempts;
+        this.initialBackoffMillis = builder.initialBackoffMillis;
+        this.maxBackoffMillis = builder.maxBackoffMillis;
+        this.multiplier = builder.multiplier;
+        this.retryableStatuses = new HashSet<Integer>(builder.retryableStatuses);
+        this.retryOnConnectionFailure = builder.retryOnConnectionFailure;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public long getInitialBackoffMillis() {
+        return initialBackoffMillis;
+    }
+
+    public long getMaxBackoffMillis() {
+        return maxBackoffMillis;
+    }
+
+    public double getMultiplier() {
+        return multiplier;
+    }
+
+    public boolean isRetryOnConnectionFailure() {
+        return retryOnConnectionFailure;
+    }
+
+    /**
+     * @param error the error of the failed attempt
+     * @param idempotent true when the call carries an idempotency key
+     * @return true when the error is transient under this policy
+     */
+    boolean isRetryable(Throwable error, boolean idempotent) {
+        if (error instanceof HttpResponseException) {
+            return retryableStatuses.contains(((HttpResponseException) error).getStatusCode());
+        }
+        if (!retryOnConnectionFailure || error instanceof ConnectionPoolTimeoutException) {
+            // an exhausted pool isn't helped by more requests
+            return false;
+        }
+        if (error instanceof ConnectException || error instanceof ConnectTimeoutException) {
+            return true;
+        }
+        // the request may have been processed before the connection was lost
+        return idempotent && (error instanceof SocketTimeoutException || error instanceof NoHttpResponseException);
+    }
+
+    /**
+     * @param retry the retry number, starting at 1
+     * @return the jittered time to wait before the retry
+     */
+    long backoffMillis(int retry) {
+        double ceiling = initialBackoffMillis * Math.pow(multiplier, retry - 1);
+        long bound = (long) Math.min(maxBackoffMillis, ceiling);
+        if (bound <= 0) {
+            return 0;
+        }
+        return ThreadLocalRandom.current().nextLong(bound + 1);
+    }
+
+    public static class RetryPolicyBuilder {
+        private int maxAttempts = 3;
+        private long initialBackoffMillis = 100;
+        private long maxBackoffMillis = 2000;
+        private double multiplier = 2;
+        private Set<Integer> retryableStatuses = new HashSet<Integer>(Arrays.asList(504));
+        private boolean retryOnConnectionFailure = true;
+
+        /**
+         * @param maxAttempts the number of attempts including the first one (default 3)
+         * @return this builder
+         */
+        public RetryPolicyBuilder setMaxAttempts(int maxAttempts) {
+            if (maxAttempts < 1) {
+                throw new IllegalArgumentException("maxAttempts must be at least 1");
+            }
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * @param initialBackoffMillis the backoff ceiling of the first retry (default 100)
+         * @return this builder
+         */
+        public RetryPolicyBuilder setInitialBackoffMillis(long initialBackoffMillis) {
+            this.initialBackoffMillis = initialBackoffMillis;
+            return this;
+        }
+
+        /**
+         * @param maxBackoffMillis the largest backoff ceiling (default 2000)
+         * @return this builder
+         */
+        public RetryPolicyBuilder setMaxBackoffMillis(long maxBackoffMillis) {
+            this.maxBackoffMillis = maxBackoffMillis;
+            return this;
+        }
+
+        /**
+         * @param multiplier the growth of the backoff ceiling between retries (default 2)
+         * @return this builder
+         */
+        public RetryPolicyBuilder setMultiplier(double multiplier) {
+            this.multiplier = multiplier;
+            return this;
+        }
+
+        /**
+         * @param retryableStatuses the http statuses worth a retry (default 504)
+         * @return this builder
+         */
+        public RetryPolicyBuilder setRetryableStatuses(Integer... retryableStatuses) {
+            this.retryableStatuses = new HashSet<Integer>(Arrays.asList(retryableStatuses));
+            return this;
+        }
+
+        /**
+         * @param retryOnConnectionFailure retry when Riskified couldn't be reached (default true)
+         * @return this builder
+         */
+        public RetryPolicyBuilder setRetryOnConnectionFailure(boolean retryOnConnectionFailure) {
+            this.retryOnConnectionFailure = retryOnConnectionFailure;
+            return this;
+        }
+
+        public RetryPolicy build() {
+            return new RetryPolicy(this);
+        }
+    }
+}
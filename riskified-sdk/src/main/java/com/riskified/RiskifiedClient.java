@@ -1,47 +1,73 @@
 package com.riskified;
 
-import com.google.gson.FieldNamingPolicy;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.riskified.models.*;
 import com.riskified.validations.FieldBadFormatException;
 import com.riskified.validations.IValidated;
 import com.riskified.validations.Validation;
 import org.apache.http.HttpHeaders;
-import org.apache.http.HttpHost;
 import org.apache.http.HttpResponse;
-import org.apache.http.auth.AUTH;
-import org.apache.http.auth.AuthScope;
-import org.apache.http.auth.MalformedChallengeException;
-import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.CredentialsProvider;
-import org.apache.http.client.HttpClient;
 import org.apache.http.client.HttpResponseException;
-import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.methods.HttpPost;
-import org.apache.http.client.protocol.HttpClientContext;
-import org.apache.http.entity.ByteArrayEntity;
-import org.apache.http.entity.ContentType;
-import org.apache.http.impl.auth.BasicScheme;
-import org.apache.http.impl.client.BasicAuthCache;
-import org.apache.http.impl.client.BasicCredentialsProvider;
-import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.impl.client.ProxyAuthenticationStrategy;
-import org.apache.http.message.BasicHeader;
 import org.apache.http.util.EntityUtils;
 
+import java.io.Closeable;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
 
 
 /**
  * Riskified API Client
  * The client implements the API for Riskified as described in:
  * http://apiref.riskified.com/
+ *
+ * The client owns a pooled HTTP transport that is shared by all calls, so a single
+ * instance should be reused for the lifetime of the application and closed on shutdown.
+ * Every API call also has an asynchronous twin (e.g. createOrderAsync) returning a CompletableFuture, completed
+ * with the Response or exceptionally with the exceptions of the blocking call. The twins run on the executor
+ * given, or on the client's executor (see {@link RiskifiedClientBuilder#setExecutor}) when there is none.
+ * The client doesn't hold monitors while calling Riskified, so it can be called from virtual threads
+ * without pinning their carrier threads.
+ * Transient failures (504, connection failures) can be retried by the client, see {@link RetryPolicy}.
+ * Each Riskified base URL can be guarded by a circuit breaker failing calls fast while it is degraded,
+ * see {@link CircuitBreakerConfig}.
+ * Per call options such as a deadline are applied through {@link #withOptions(RequestOptions)}.
+ * Each {@link EndpointGroup} can be isolated by a {@link Bulkhead}, with its own connections and concurrency limit.
+ * A {@link RequestScheduler} can start the calls by priority lane and shed the least urgent ones under saturation.
+ * A {@link ConcurrencyLimiter} can adapt the calls in flight of each endpoint group to the latency of Riskified.
+ * {@link RateLimits} can keep the calls of the shop, and of single endpoints, under the rates agreed with Riskified.
+ * A {@link RequestCoalescer} can share one round trip between identical update and decision calls in flight.
+ * A {@link PayloadDeduplicator} can skip update and fulfillment calls repeating the payload just sent.
+ * An {@link OrderDeltaEncoder} can send only the fields an update changed.
+ * An {@link AccountEventQueue} can send the account actions in the background, off the caller's request path.
  */
-public class RiskifiedClient {
+public class RiskifiedClient implements Closeable {
     private Validation validation = Validation.ALL;
     private Environment environment = Environment.SANDBOX;
     private String baseUrl;
@@ -52,13 +78,42 @@ public class RiskifiedClient {
     private SHA256Handler sha256Handler;
     private int requestTimeout = 10000;
     private int connectionTimeout = 5000;
+    private int socketTimeout = 10000;
+    private int maxConnections = 200;
+    private int maxConnectionsPerRoute = 50;
     private String authKey;
 
     private String proxyUrl;
     private int proxyPort;
     private String proxyUsername;
     private String proxyPassword;
-    private HttpClientContext context;
+    private TransportType transportType = TransportType.BLOCKING;
+    private volatile HttpTransport transport;
+    private final AtomicReferenceArray<HttpTransport> groupTransports = new AtomicReferenceArray<HttpTransport>(EndpointGroup.values().length);
+    private Map<EndpointGroup, Bulkhead> bulkheads = Collections.emptyMap();
+    private RequestScheduler requestScheduler;
+    private Map<EndpointGroup, ConcurrencyLimiter> concurrencyLimiters = Collections.emptyMap();
+    private RateLimits rateLimits;
+    private RequestCoalescer requestCoalescer;
+    private PayloadDeduplicator payloadDeduplicator;
+    private OrderDeltaEncoder orderDeltaEncoder;
+    private Outbox outbox;
+    private AccountEventQueue accountEventQueue;
+    private volatile Executor executor;
+    private ExecutorService ownedExecutor;
+    private volatile boolean closed;
+    private boolean virtualThreads;
+    private RetryPolicy retryPolicy = RetryPolicy.NONE;
+    private Map<String, RetryPolicy> endpointRetryPolicies = Collections.emptyMap();
+    private RetryBudget retryBudget = new RetryBudget(0.1, 10);
+    private ScheduledExecutorService scheduler;
+    private CircuitBreakerConfig circuitBreakerConfig;
+    private ConcurrentHashMap<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<String, CircuitBreaker>();
+    private RequestOptions requestOptions = RequestOptions.DEFAULT;
+    private RiskifiedClient parent;
+    private final ReentrantLock lifecycleLock = new ReentrantLock();
+
+    private static final ThreadLocal<DeferredCall> DEFERRED_CALL = new ThreadLocal<DeferredCall>();
 
     /**
      * Riskified API client
@@ -213,7 +268,7 @@ public class RiskifiedClient {
      * @throws FieldBadFormatException bad format found on field
      */
     public Response checkoutOrder(CheckoutOrder order) throws IOException, FieldBadFormatException {
-        String url = baseUrl + "/api/checkout_create";
+        String url = baseUrl + Endpoints.CHECKOUT_CREATE;
 
         // Validation.ALL is not relevant when checkout.
         if(validation != validation.NONE) {
@@ -235,7 +290,7 @@ public class RiskifiedClient {
      * @throws FieldBadFormatException bad format found on field
      */
     public Response adviseOrder(CheckoutOrder order) throws IOException, FieldBadFormatException {
-        String url = baseUrl + "/api/advise";
+        String url = baseUrl + Endpoints.ADVISE;
 
         // Validation.ALL is not relevant when checkout.
         if(validation != validation.NONE) {
@@ -257,7 +312,7 @@ public class RiskifiedClient {
      * @throws FieldBadFormatException bad format found on field
      */
     public Response checkoutOrder(CheckoutOrder order, Validation validation) throws IOException, FieldBadFormatException {
-        String url = baseUrl + "/api/checkout_create";
+        String url = baseUrl + Endpoints.CHECKOUT_CREATE;
         validate(order, validation);
         return postCheckoutOrder(new CheckoutOrderWrapper<CheckoutOrder>(order), url);
     }
@@ -273,7 +328,7 @@ public class RiskifiedClient {
      * @throws FieldBadFormatException bad format found on field
      */
     public Response checkoutDeniedOrder(CheckoutDeniedOrder order) throws IOException, FieldBadFormatException {
-        String url = baseUrl + "/api/checkout_denied";
+        String url = baseUrl + Endpoints.CHECKOUT_DENIED;
         validate(order);
         return postCheckoutOrder(new CheckoutOrderWrapper<CheckoutDeniedOrder>(order), url);
     }
@@ -290,7 +345,7 @@ public class RiskifiedClient {
      * @throws FieldBadFormatException bad format found on field
      */
     public Response checkoutDeniedOrder(CheckoutDeniedOrder order, Validation validation) throws IOException, FieldBadFormatException {
-        String url = baseUrl + "/api/checkout_denied";
+        String url = baseUrl + Endpoints.CHECKOUT_DENIED;
         validate(order, validation);
         return postCheckoutOrder(new CheckoutOrderWrapper<CheckoutDeniedOrder>(order), url);
     }
@@ -308,7 +363,7 @@ public class RiskifiedClient {
      * @throws FieldBadFormatException bad format found on field
      */
     public Response createOrder(Order order) throws IOException, FieldBadFormatException {
-        String url = baseUrl + "/api/create";
+        String url = baseUrl + Endpoints.CREATE;
         validate(order);
         return postOrder(new OrderWrapper<Order>(order), url);
     }
@@ -327,7 +382,7 @@ public class RiskifiedClient {
      * @throws FieldBadFormatException bad format found on field
      */
     public Response createOrder(Order order, Validation validation) throws IOException, FieldBadFormatException {
-        String url = baseUrl + "/api/create";
+        String url = baseUrl + Endpoints.CREATE;
         validate(order, validation);
         return postOrder(new OrderWrapper<Order>(order), url);
     }
@@ -362,7 +417,7 @@ public class RiskifiedClient {
      * @throws FieldBadFormatException bad format found on field
      */
     public Response submitOrder(Order order, Validation validation) throws IOException, FieldBadFormatException {
-        String url = baseUrl + "/api/submit";
+        String url = baseUrl + Endpoints.SUBMIT;
         validate(order, validation);
         return postOrder(new OrderWrapper<Order>(order), url);
     }
@@ -380,14 +435,14 @@ public class RiskifiedClient {
      * @throws FieldBadFormatException bad format found on field
      */
     public Response updateOrder(Order order) throws IOException, FieldBadFormatException {
-        String url = baseUrl + "/api/update";
+        String url = baseUrl + Endpoints.UPDATE;
 
         // Validation.ALL is not relevant when updating.
         	if(validation != validation.NONE) {
             validate(order, Validation.IGNORE_MISSING);
         } 
 
-        return postOrder(new OrderWrapper<Order>(order), url);
+        return postUpdate(order, url);
     }
 
     /**
@@ -404,9 +459,9 @@ public class RiskifiedClient {
      * @throws FieldBadFormatException bad format found on field
      */
     public Response updateOrder(Order order, Validation validation) throws IOException, FieldBadFormatException {
-        String url = baseUrl + "/api/update";
+        String url = baseUrl + Endpoints.UPDATE;
         validate(order, validation);
-        return postOrder(new OrderWrapper<Order>(order), url);
+        return postUpdate(order, url);
     }
 
     /**
@@ -424,7 +479,7 @@ public class RiskifiedClient {
      * @throws FieldBadFormatException bad format found on field
      */
     public Response cancelOrder(CancelOrder order) throws IOException, FieldBadFormatException {
-        String url = baseUrl + "/api/cancel";
+        String url = baseUrl + Endpoints.CANCEL;
         validate(order);
         return postOrder(new OrderWrapper<CancelOrder>(order), url);
     }
@@ -445,7 +500,7 @@ public class RiskifiedClient {
      * @throws FieldBadFormatException bad format found on field
      */
     public Response cancelOrder(CancelOrder order, Validation validation) throws IOException, FieldBadFormatException {
-        String url = baseUrl + "/api/cancel";
+        String url = baseUrl + Endpoints.CANCEL;
         validate(order, validation);
         return postOrder(new OrderWrapper<CancelOrder>(order), url);
     }
@@ -463,7 +518,7 @@ public class RiskifiedClient {
      * @throws FieldBadFormatException bad format found on field
      */
     public Response refundOrder(RefundOrder order) throws IOException, FieldBadFormatException {
-        String url = baseUrl + "/api/refund";
+        String url = baseUrl + Endpoints.REFUND;
         validate(order);
         return postOrder(new OrderWrapper<RefundOrder>(order), url);
     }
@@ -482,7 +537,7 @@ public class RiskifiedClient {
      * @throws FieldBadFormatException bad format found on field
      */
     public Response refundOrder(RefundOrder order, Validation validation) throws IOException, FieldBadFormatException {
-        String url = baseUrl + "/api/refund";
+        String url = baseUrl + Endpoints.REFUND;
         validate(order, validation);
         return postOrder(new OrderWrapper<RefundOrder>(order), url);
     }
@@ -499,9 +554,9 @@ public class RiskifiedClient {
      * @throws FieldBadFormatException bad format found on field
      */
     public Response fulfillOrder(FulfillmentOrder order) throws IOException, FieldBadFormatException {
-        String url = baseUrl + "/api/fulfill";
+        String url = baseUrl + Endpoints.FULFILL;
         validate(order);
-        return postOrder(new OrderWrapper<FulfillmentOrder>(order), url);
+        return postDeduplicated(new OrderWrapper<FulfillmentOrder>(order), url, order.getId(), false);
     }
 
     /**
@@ -517,9 +572,9 @@ public class RiskifiedClient {
      * @throws FieldBadFormatException bad format found on field
      */
     public Response fulfillOrder(FulfillmentOrder order, Validation validation) throws IOException, FieldBadFormatException {
-        String url = baseUrl + "/api/fulfill";
+        String url = baseUrl + Endpoints.FULFILL;
         validate(order, validation);
-        return postOrder(new OrderWrapper<FulfillmentOrder>(order), url);
+        return postDeduplicated(new OrderWrapper<FulfillmentOrder>(order), url, order.getId(), false);
     }
 
     /**
@@ -534,9 +589,9 @@ public class RiskifiedClient {
      * @throws FieldBadFormatException bad format found on field
      */
     public Response decisionOrder(DecisionOrder order) throws IOException, FieldBadFormatException {
-        String url = baseUrl + "/api/decision";
+        String url = baseUrl + Endpoints.DECISION;
         validate(order);
-        return postOrder(new OrderWrapper<DecisionOrder>(order), url);
+        return postCoalesced(new OrderWrapper<DecisionOrder>(order), url, order.getId());
     }
 
     /**
@@ -552,9 +607,9 @@ public class RiskifiedClient {
      * @throws FieldBadFormatException bad format found on field
      */
     public Response decisionOrder(DecisionOrder order, Validation validation) throws IOException, FieldBadFormatException {
-        String url = baseUrl + "/api/decision";
+        String url = baseUrl + Endpoints.DECISION;
         validate(order, validation);
-        return postOrder(new OrderWrapper<DecisionOrder>(order), url);
+        return postCoalesced(new OrderWrapper<DecisionOrder>(order), url, order.getId());
     }
 
     /**
@@ -569,7 +624,7 @@ public class RiskifiedClient {
      * @throws FieldBadFormatException bad format found on field
      */
     public Response analyzeOrder(Order order) throws IOException, FieldBadFormatException {
-        String url = baseUrlSyncAnalyze + "/api/decide";
+        String url = baseUrlSyncAnalyze + Endpoints.DECIDE;
         validate(order);
         return postOrder(new OrderWrapper<Order>(order), url);
     }
@@ -586,7 +641,7 @@ public class RiskifiedClient {
      * @throws FieldBadFormatException bad format found on field
      */
     public Response eligible(Order order) throws IOException, FieldBadFormatException {
-        String url = decoBaseUrl + "/api/eligible";
+        String url = decoBaseUrl + Endpoints.ELIGIBLE;
         return postOrder(new OrderWrapper<Order>(order), url);
     }
 
@@ -602,7 +657,7 @@ public class RiskifiedClient {
      * @throws FieldBadFormatException bad format found on field
      */
     public Response opt_in(Order order) throws IOException, FieldBadFormatException {
-        String url = decoBaseUrl + "/api/opt_in";
+        String url = decoBaseUrl + Endpoints.OPT_IN;
         return postOrder(new OrderWrapper<Order>(order), url);
     }
 
@@ -625,7 +680,7 @@ public class RiskifiedClient {
      * @throws FieldBadFormatException bad format found on field
      */
     public Response chargebackOrder(ChargebackOrder order) throws IOException, FieldBadFormatException {
-        String url = baseUrl + "/api/chargeback";
+        String url = baseUrl + Endpoints.CHARGEBACK;
         validate(order);
         return postOrder(new OrderWrapper<ChargebackOrder>(order), url);
     }
@@ -644,7 +699,7 @@ public class RiskifiedClient {
      * @throws FieldBadFormatException bad format found on field
      */
     public Response historicalOrders(ArrayOrders orders) throws IOException, FieldBadFormatException {
-        String url = baseUrl + "/api/historical";
+        String url = baseUrl + Endpoints.HISTORICAL;
         validate(orders);
         return postOrder(orders, url);
     }
@@ -668,11 +723,105 @@ public class RiskifiedClient {
      * @throws FieldBadFormatException bad format found on field
      */
     public Response historicalOrders(ArrayOrders orders, Validation validation) throws IOException, FieldBadFormatException {
-        String url = baseUrl + "/api/historical";
+        String url = baseUrl + Endpoints.HISTORICAL;
         validate(orders, validation);
         return postOrder(orders, url);
     }
 
+    /**
+     * Bulk upload of historical orders, for backfills too large to hold in one {@link ArrayOrders}.
+     * The orders are read from an iterator or a stream, split in chunks, serialized and signed in parallel and
+     * posted with a bounded concurrency, the memory used doesn't depend on the number of orders.
+     * @param config the chunking and concurrency of the uploads
+     * @return the uploader, it can run several uploads
+     * @see #historicalOrders(ArrayOrders)
+     */
+    public HistoricalUploader historicalUploader(HistoricalUploadConfig config) {
+        return new HistoricalUploader(this, config);
+    }
+
+    /**
+     * Resumable backfill of historical orders from NDJSON files, one order per line.
+     * The files are memory mapped and sent in chunks like a {@link #historicalUploader}, the position reached is
+     * kept in a checkpoint file so a stopped backfill resumes where it stopped.
+     * With Validation.NONE the records are sent as they are, otherwise they are parsed and validated first.
+     * @param config the chunking and concurrency of the uploads
+     * @return the importer, it can import several files
+     */
+    public HistoricalFileImporter historicalFileImporter(HistoricalUploadConfig config) {
+        return new HistoricalFileImporter(this, config);
+    }
+
+    /**
+     * Serialize and sign a batch of historical orders into a spool file, to be sent later with
+     * {@link #sendSpooled(SpooledPayload)}, as many times as needed, without serializing the orders again
+     * @param orders A list of historical orders to spool
+     * @param file the spool file, replaced if it exists
+     * @return the spooled payload
+     * @throws IOException error writing the file
+     * @throws FieldBadFormatException bad format found on field
+     * @see #historicalOrders(ArrayOrders)
+     */
+    public SpooledPayload spoolHistoricalOrders(ArrayOrders orders, Path file) throws IOException, FieldBadFormatException {
+        validate(orders);
+        return SpooledPayload.write(Endpoints.HISTORICAL, orders, sha256Handler, file);
+    }
+
+    /**
+     * Serialize and sign a chargeback request into a spool file, to be sent later with
+     * {@link #sendSpooled(SpooledPayload)}
+     * @param order The order to mark as chargeback
+     * @param file the spool file, replaced if it exists
+     * @return the spooled payload
+     * @throws IOException error writing the file
+     * @throws FieldBadFormatException bad format found on field
+     * @see #chargebackOrder(ChargebackOrder)
+     */
+    public SpooledPayload spoolChargebackOrder(ChargebackOrder order, Path file) throws IOException, FieldBadFormatException {
+        validate(order);
+        return SpooledPayload.write(Endpoints.CHARGEBACK, new OrderWrapper<ChargebackOrder>(order), sha256Handler, file);
+    }
+
+    /**
+     * Send a spooled payload, the body is streamed from its file with the signature computed when it was spooled
+     * @param payload the payload, from a spool method or {@link SpooledPayload#open}
+     * @return Response object, including the status from Riskified server
+     * @throws IOException in case of an http protocol error or an error reading the file
+     * @throws HttpResponseException The server respond status wasn't 200
+     */
+    public Response sendSpooled(SpooledPayload payload) throws IOException {
+        HttpPost request = createPostRequest(baseUrl + payload.getPath());
+        request.setHeader("X-RISKIFIED-HMAC-SHA256", payload.getSignature());
+        request.setEntity(new SpoolFileEntity(payload));
+        return send(request, this::handleOrderResponse);
+    }
+
+    /**
+     * Open the durable outbox of the client, recording the fulfillments, refunds, cancellations, decisions and
+     * chargebacks on disk and delivering them in the background. The events left by a previous outbox on the
+     * directory are delivered first. The outbox is closed with the client.
+     * @param config the directory and settings of the outbox
+     * @return the outbox of the client, its events are sent with the default options even when it is opened
+     * through {@link #withOptions(RequestOptions)}
+     * @throws IOException error reading the directory, or it is used by another outbox
+     */
+    public Outbox openOutbox(OutboxConfig config) throws IOException {
+        RiskifiedClient root = parent != null ? parent : this;
+        root.lifecycleLock.lock();
+        try {
+            if (root.closed) {
+                throw new IOException("The client is closed");
+            }
+            if (root.outbox != null) {
+                throw new IllegalStateException("The client already has an outbox");
+            }
+            root.outbox = new Outbox(root, config);
+            return root.outbox;
+        } finally {
+            root.lifecycleLock.unlock();
+        }
+    }
+
     /**
      * Login Account Action
      * Notifies Riskified that there has been a login account action
@@ -685,7 +834,7 @@ public class RiskifiedClient {
      * @throws FieldBadFormatException bad format found on field
      */
     public Response login(Login login) throws IOException, FieldBadFormatException {
-        String url = accountBaseUrl + "/customers/login";
+        String url = accountBaseUrl + Endpoints.LOGIN;
         validate(login, validation);
         return postOrder(login, url);
     }
@@ -702,7 +851,7 @@ public class RiskifiedClient {
      * @throws FieldBadFormatException bad format found on field
      */
     public Response customerCreate(CustomerCreate customerCreate) throws IOException, FieldBadFormatException {
-        String url = accountBaseUrl + "/customers/customer_create";
+        String url = accountBaseUrl + Endpoints.CUSTOMER_CREATE;
         validate(customerCreate, validation);
         return postOrder(customerCreate, url);
     }
@@ -719,7 +868,7 @@ public class RiskifiedClient {
      * @throws FieldBadFormatException bad format found on field
      */
     public Response customerUpdate(CustomerUpdate customerUpdate) throws IOException, FieldBadFormatException {
-        String url = accountBaseUrl + "/customers/customer_update";
+        String url = accountBaseUrl + Endpoints.CUSTOMER_UPDATE;
         validate(customerUpdate, validation);
         return postOrder(customerUpdate, url);
     }
@@ -736,7 +885,7 @@ public class RiskifiedClient {
      * @throws FieldBadFormatException bad format found on field
      */
     public Response logout(Logout logout) throws IOException, FieldBadFormatException {
-        String url = accountBaseUrl + "/customers/logout";
+        String url = accountBaseUrl + Endpoints.LOGOUT;
         validate(logout, validation);
         return postOrder(logout, url);
     }
@@ -753,7 +902,7 @@ public class RiskifiedClient {
      * @throws FieldBadFormatException bad format found on field
      */
     public Response resetPassword(ResetPassword resetPassword) throws IOException, FieldBadFormatException {
-        String url = accountBaseUrl + "/customers/reset_password";
+        String url = accountBaseUrl + Endpoints.RESET_PASSWORD;
         validate(resetPassword, validation);
         return postOrder(resetPassword, url);
     }
@@ -770,7 +919,7 @@ public class RiskifiedClient {
      * @throws FieldBadFormatException bad format found on field
      */
     public Response wishlist(Wishlist wishlist) throws IOException, FieldBadFormatException {
-        String url = accountBaseUrl + "/customers/wishlist";
+        String url = accountBaseUrl + Endpoints.WISHLIST;
         validate(wishlist, validation);
         return postOrder(wishlist, url);
     }
@@ -787,7 +936,7 @@ public class RiskifiedClient {
      * @throws FieldBadFormatException bad format found on field
      */
     public Response redeem(Redeem redeem) throws IOException, FieldBadFormatException {
-        String url = accountBaseUrl + "/customers/redeem";
+        String url = accountBaseUrl + Endpoints.REDEEM;
         validate(redeem, validation);
         return postOrder(redeem, url);
     }
@@ -804,258 +953,1721 @@ public class RiskifiedClient {
      * @throws FieldBadFormatException bad format found on field
      */
     public Response contact(Contact contact) throws IOException, FieldBadFormatException {
-        String url = accountBaseUrl + "/customers/contact";
+        String url = accountBaseUrl + Endpoints.CONTACT;
         validate(contact, validation);
         return postOrder(contact, url);
     }
 
-    private Response postCheckoutOrder(Object data, String url) throws IOException, FieldBadFormatException {
-        HttpPost request = createPostRequest(url);
-        addDataToRequest(data, request);
-        HttpResponse response;
-        HttpClient client = constructHttpClient();
-        response = executeClient(client, request);
-        String postBody = EntityUtils.toString(response.getEntity(), "UTF-8");
-        int status = response.getStatusLine().getStatusCode();
-        Response responseObject = getCheckoutResponseObject(postBody);
-        switch (status) {
-            case 200:
-                return responseObject;
-            case 400:
-                throw new HttpResponseException(status, responseObject.getError().getMessage());
-            case 401:
-                throw new HttpResponseException(status, responseObject.getError().getMessage());
-            case 404:
-                throw new HttpResponseException(status, responseObject.getError().getMessage());
-            case 504:
-                throw new HttpResponseException(status, "Temporary error, please retry");
-            default:
-                throw new HttpResponseException(500, "Contact Riskified support");
-        }
+    /** Asynchronous version of {@link #checkoutOrder(CheckoutOrder)} */
+    public CompletableFuture<Response> checkoutOrderAsync(CheckoutOrder order) {
+        return checkoutOrderAsync(order, getExecutor());
     }
 
-	private HttpClient constructHttpClient() {
-		RequestConfig.Builder requestBuilder = RequestConfig.custom()
-				.setConnectTimeout(connectionTimeout)
-				.setConnectionRequestTimeout(requestTimeout);
-		HttpClientBuilder builder = HttpClientBuilder.create();
-		builder.setDefaultRequestConfig(requestBuilder.build());
+    /** Asynchronous version of {@link #checkoutOrder(CheckoutOrder)} */
+    public CompletableFuture<Response> checkoutOrderAsync(CheckoutOrder order, Executor executor) {
+        return supplyAsync(() -> checkoutOrder(order), executor);
+    }
 
-		if (this.proxyUrl != null) {
-			setProxyWithAuth(builder);
-		}
+    /** Asynchronous version of {@link #adviseOrder(CheckoutOrder)} */
+    public CompletableFuture<Response> adviseOrderAsync(CheckoutOrder order) {
+        return adviseOrderAsync(order, getExecutor());
+    }
 
-		return builder.build();
-	}
+    /** Asynchronous version of {@link #adviseOrder(CheckoutOrder)} */
+    public CompletableFuture<Response> adviseOrderAsync(CheckoutOrder order, Executor executor) {
+        return supplyAsync(() -> adviseOrder(order), executor);
+    }
 
-	private HttpResponse executeClient(HttpClient client, HttpPost request)
-			throws IOException {
-		HttpResponse response;
+    /** Asynchronous version of {@link #checkoutOrder(CheckoutOrder, Validation)} */
+    public CompletableFuture<Response> checkoutOrderAsync(CheckoutOrder order, Validation validation) {
+        return checkoutOrderAsync(order, validation, getExecutor());
+    }
 
-		if (context != null) {
-			response = client.execute(request, context);
-		} else {
-			response = client.execute(request);
-		}
+    /** Asynchronous version of {@link #checkoutOrder(CheckoutOrder, Validation)} */
+    public CompletableFuture<Response> checkoutOrderAsync(CheckoutOrder order, Validation validation, Executor executor) {
+        return supplyAsync(() -> checkoutOrder(order, validation), executor);
+    }
 
-		return response;
-	}
+    /** Asynchronous version of {@link #checkoutDeniedOrder(CheckoutDeniedOrder)} */
+    public CompletableFuture<Response> checkoutDeniedOrderAsync(CheckoutDeniedOrder order) {
+        return checkoutDeniedOrderAsync(order, getExecutor());
+    }
 
-    private CredentialsProvider getHttpProxyCredentials() {
-        CredentialsProvider credsProvider = new BasicCredentialsProvider();
-        credsProvider.setCredentials(
-                new AuthScope(new HttpHost(this.proxyUrl, this.proxyPort)),
-                new UsernamePasswordCredentials(this.proxyUsername, this.proxyPassword));
-       return credsProvider;
+    /** Asynchronous version of {@link #checkoutDeniedOrder(CheckoutDeniedOrder)} */
+    public CompletableFuture<Response> checkoutDeniedOrderAsync(CheckoutDeniedOrder order, Executor executor) {
+        return supplyAsync(() -> checkoutDeniedOrder(order), executor);
     }
 
-	private void setProxyWithAuth(HttpClientBuilder builder) {
-		builder.setProxy(new HttpHost(proxyUrl, proxyPort));
-		builder.setDefaultCredentialsProvider(getHttpProxyCredentials());
-		builder.setProxyAuthenticationStrategy(new ProxyAuthenticationStrategy());
+    /** Asynchronous version of {@link #checkoutDeniedOrder(CheckoutDeniedOrder, Validation)} */
+    public CompletableFuture<Response> checkoutDeniedOrderAsync(CheckoutDeniedOrder order, Validation validation) {
+        return checkoutDeniedOrderAsync(order, validation, getExecutor());
+    }
 
-		if (this.context == null) {
-			try {
-				setProxyContext();
-			} catch (MalformedChallengeException e) {
-				System.out.println("Error: failed to process challenge for proxy");
-			}
-		}
-	}
+    /** Asynchronous version of {@link #checkoutDeniedOrder(CheckoutDeniedOrder, Validation)} */
+    public CompletableFuture<Response> checkoutDeniedOrderAsync(CheckoutDeniedOrder order, Validation validation, Executor executor) {
+        return supplyAsync(() -> checkoutDeniedOrder(order, validation), executor);
+    }
 
-	private void setProxyContext() throws MalformedChallengeException {
-		BasicScheme proxyAuth = new BasicScheme();
-		proxyAuth.processChallenge(new BasicHeader(AUTH.PROXY_AUTH,
-				"BASIC realm=default"));
-		BasicAuthCache authCache = new BasicAuthCache();
-		authCache.put(new HttpHost(this.proxyUrl, this.proxyPort), proxyAuth);
+    /** Asynchronous version of {@link #createOrder(Order)} */
+    public CompletableFuture<Response> createOrderAsync(Order order) {
+        return createOrderAsync(order, getExecutor());
+    }
 
-		HttpClientContext context = HttpClientContext.create();
-		context.setAuthCache(authCache);
-		context.setCredentialsProvider(getHttpProxyCredentials());
+    /** Asynchronous version of {@link #createOrder(Order)} */
+    public CompletableFuture<Response> createOrderAsync(Order order, Executor executor) {
+        return supplyAsync(() -> createOrder(order), executor);
+    }
 
-		this.context = context;
-	}
+    /** Asynchronous version of {@link #createOrder(Order, Validation)} */
+    public CompletableFuture<Response> createOrderAsync(Order order, Validation validation) {
+        return createOrderAsync(order, validation, getExecutor());
+    }
 
-    private Response postOrder(Object data, String url) throws IOException {
-        HttpPost request = createPostRequest(url);
-        addDataToRequest(data, request);
-        HttpResponse response;
-        HttpClient client = constructHttpClient();
-        response = executeClient(client, request);
-        String postBody = EntityUtils.toString(response.getEntity());
-        int status = response.getStatusLine().getStatusCode();
+    /** Asynchronous version of {@link #createOrder(Order, Validation)} */
+    public CompletableFuture<Response> createOrderAsync(Order order, Validation validation, Executor executor) {
+        return supplyAsync(() -> createOrder(order, validation), executor);
+    }
 
-        Response responseObject = getResponseObject(postBody);
-        switch (status) {
-	        case 200:
-	            return responseObject;
-	        case 400:
-	            throw new HttpResponseException(status, postBody);
-	        case 401:
-	            throw new HttpResponseException(status, postBody);
-	        case 404:
-	            throw new HttpResponseException(status, postBody);
-	        case 504:
-	            throw new HttpResponseException(status, "Temporary error, please retry");
-	        default:
-	            throw new HttpResponseException(500, "Contact Riskified support");
-	    }
+    /** Asynchronous version of {@link #submitOrder(Order)} */
+    public CompletableFuture<Response> submitOrderAsync(Order order) {
+        return submitOrderAsync(order, getExecutor());
     }
 
-    private Response getResponseObject(String postBody) throws IOException {
-        Gson gson = new GsonBuilder().setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES).create();
-        Response res = gson.fromJson(postBody, Response.class);
-        return res;
+    /** Asynchronous version of {@link #submitOrder(Order)} */
+    public CompletableFuture<Response> submitOrderAsync(Order order, Executor executor) {
+        return supplyAsync(() -> submitOrder(order), executor);
     }
 
-    private CheckoutResponse getCheckoutResponseObject(String postBody) throws IOException {
-        Gson gson = new Gson();
-        CheckoutResponse res = gson.fromJson(postBody, CheckoutResponse.class);
-        res.setOrder(res.getCheckout());
-        return res;
+    /** Asynchronous version of {@link #submitOrder(Order, Validation)} */
+    public CompletableFuture<Response> submitOrderAsync(Order order, Validation validation) {
+        return submitOrderAsync(order, validation, getExecutor());
     }
 
-    private void addDataToRequest(Object data, HttpPost postRequest) throws IllegalStateException, UnsupportedEncodingException {
-        String jsonData = JSONFormater.toJson(data);
-        byte[] body = jsonData.getBytes("UTF-8");
-    	String hmac = sha256Handler.createSHA256(body);
-        postRequest.setHeader("X-RISKIFIED-HMAC-SHA256", hmac);
+    /** Asynchronous version of {@link #submitOrder(Order, Validation)} */
+    public CompletableFuture<Response> submitOrderAsync(Order order, Validation validation, Executor executor) {
+        return supplyAsync(() -> submitOrder(order, validation), executor);
+    }
 
-        ByteArrayEntity input;
-        input = new ByteArrayEntity(body, ContentType.APPLICATION_JSON);
-		postRequest.setEntity(input);
+    /** Asynchronous version of {@link #updateOrder(Order)} */
+    public CompletableFuture<Response> updateOrderAsync(Order order) {
+        return updateOrderAsync(order, getExecutor());
     }
 
-    private HttpPost createPostRequest(String url) {
-        HttpPost postRequest = new HttpPost(url);
-        postRequest.setHeader(HttpHeaders.ACCEPT, "application/vnd.riskified.com; version=2");
-        postRequest.setHeader("X-RISKIFIED-SHOP-DOMAIN", shopUrl);
-        postRequest.setHeader("User-Agent","riskified_java_sdk/1.2.9"); // TODO: take the version automatically
+    /** Asynchronous version of {@link #updateOrder(Order)} */
+    public CompletableFuture<Response> updateOrderAsync(Order order, Executor executor) {
+        return supplyAsync(() -> updateOrder(order), executor);
+    }
 
-        return postRequest;
+    /** Asynchronous version of {@link #updateOrder(Order, Validation)} */
+    public CompletableFuture<Response> updateOrderAsync(Order order, Validation validation) {
+        return updateOrderAsync(order, validation, getExecutor());
     }
 
-    private void validate(IValidated objToValidated) throws FieldBadFormatException {
-        if (this.validation != Validation.NONE) {
-            objToValidated.validate(this.validation);
-        }
+    /** Asynchronous version of {@link #updateOrder(Order, Validation)} */
+    public CompletableFuture<Response> updateOrderAsync(Order order, Validation validation, Executor executor) {
+        return supplyAsync(() -> updateOrder(order, validation), executor);
     }
 
-    private void validate(IValidated objToValidated, Validation validationType) throws FieldBadFormatException {
-        if (validationType != Validation.NONE) {
-            objToValidated.validate(validationType);
-        }
+    /** Asynchronous version of {@link #cancelOrder(CancelOrder)} */
+    public CompletableFuture<Response> cancelOrderAsync(CancelOrder order) {
+        return cancelOrderAsync(order, getExecutor());
     }
 
-    public String getShopUrl() {
-        return shopUrl;
+    /** Asynchronous version of {@link #cancelOrder(CancelOrder)} */
+    public CompletableFuture<Response> cancelOrderAsync(CancelOrder order, Executor executor) {
+        return supplyAsync(() -> cancelOrder(order), executor);
     }
 
-    public int getRequestTimeout() {
-        return requestTimeout;
+    /** Asynchronous version of {@link #cancelOrder(CancelOrder, Validation)} */
+    public CompletableFuture<Response> cancelOrderAsync(CancelOrder order, Validation validation) {
+        return cancelOrderAsync(order, validation, getExecutor());
     }
 
-    public int getConnectionTimeout() {
-        return connectionTimeout;
+    /** Asynchronous version of {@link #cancelOrder(CancelOrder, Validation)} */
+    public CompletableFuture<Response> cancelOrderAsync(CancelOrder order, Validation validation, Executor executor) {
+        return supplyAsync(() -> cancelOrder(order, validation), executor);
     }
 
-    public Environment getEnvironment() {
-        return environment;
+    /** Asynchronous version of {@link #refundOrder(RefundOrder)} */
+    public CompletableFuture<Response> refundOrderAsync(RefundOrder order) {
+        return refundOrderAsync(order, getExecutor());
     }
 
-    public String getBaseUrl() {
-        return baseUrl;
+    /** Asynchronous version of {@link #refundOrder(RefundOrder)} */
+    public CompletableFuture<Response> refundOrderAsync(RefundOrder order, Executor executor) {
+        return supplyAsync(() -> refundOrder(order), executor);
     }
 
-    public String getAuthKey() {
-        return authKey;
+    /** Asynchronous version of {@link #refundOrder(RefundOrder, Validation)} */
+    public CompletableFuture<Response> refundOrderAsync(RefundOrder order, Validation validation) {
+        return refundOrderAsync(order, validation, getExecutor());
+    }
+
+    /** Asynchronous version of {@link #refundOrder(RefundOrder, Validation)} */
+    public CompletableFuture<Response> refundOrderAsync(RefundOrder order, Validation validation, Executor executor) {
+        return supplyAsync(() -> refundOrder(order, validation), executor);
+    }
+
+    /** Asynchronous version of {@link #fulfillOrder(FulfillmentOrder)} */
+    public CompletableFuture<Response> fulfillOrderAsync(FulfillmentOrder order) {
+        return fulfillOrderAsync(order, getExecutor());
+    }
+
+    /** Asynchronous version of {@link #fulfillOrder(FulfillmentOrder)} */
+    public CompletableFuture<Response> fulfillOrderAsync(FulfillmentOrder order, Executor executor) {
+        return supplyAsync(() -> fulfillOrder(order), executor);
+    }
+
+    /** Asynchronous version of {@link #fulfillOrder(FulfillmentOrder, Validation)} */
+    public CompletableFuture<Response> fulfillOrderAsync(FulfillmentOrder order, Validation validation) {
+        return fulfillOrderAsync(order, validation, getExecutor());
+    }
+
+    /** Asynchronous version of {@link #fulfillOrder(FulfillmentOrder, Validation)} */
+    public CompletableFuture<Response> fulfillOrderAsync(FulfillmentOrder order, Validation validation, Executor executor) {
+        return supplyAsync(() -> fulfillOrder(order, validation), executor);
+    }
+
+    /** Asynchronous version of {@link #decisionOrder(DecisionOrder)} */
+    public CompletableFuture<Response> decisionOrderAsync(DecisionOrder order) {
+        return decisionOrderAsync(order, getExecutor());
+    }
+
+    /** Asynchronous version of {@link #decisionOrder(DecisionOrder)} */
+    public CompletableFuture<Response> decisionOrderAsync(DecisionOrder order, Executor executor) {
+        return supplyAsync(() -> decisionOrder(order), executor);
+    }
+
+    /** Asynchronous version of {@link #decisionOrder(DecisionOrder, Validation)} */
+    public CompletableFuture<Response> decisionOrderAsync(DecisionOrder order, Validation validation) {
+        return decisionOrderAsync(order, validation, getExecutor());
+    }
+
+    /** Asynchronous version of {@link #decisionOrder(DecisionOrder, Validation)} */
+    public CompletableFuture<Response> decisionOrderAsync(DecisionOrder order, Validation validation, Executor executor) {
+        return supplyAsync(() -> decisionOrder(order, validation), executor);
+    }
+
+    /** Asynchronous version of {@link #analyzeOrder(Order)} */
+    public CompletableFuture<Response> analyzeOrderAsync(Order order) {
+        return analyzeOrderAsync(order, getExecutor());
+    }
+
+    /** Asynchronous version of {@link #analyzeOrder(Order)} */
+    public CompletableFuture<Response> analyzeOrderAsync(Order order, Executor executor) {
+        return supplyAsync(() -> analyzeOrder(order), executor);
+    }
+
+    /** Asynchronous version of {@link #eligible(Order)} */
+    public CompletableFuture<Response> eligibleAsync(Order order) {
+        return eligibleAsync(order, getExecutor());
+    }
+
+    /** Asynchronous version of {@link #eligible(Order)} */
+    public CompletableFuture<Response> eligibleAsync(Order order, Executor executor) {
+        return supplyAsync(() -> eligible(order), executor);
+    }
+
+    /** Asynchronous version of {@link #opt_in(Order)} */
+    public CompletableFuture<Response> optInAsync(Order order) {
+        return optInAsync(order, getExecutor());
+    }
+
+    /** Asynchronous version of {@link #opt_in(Order)} */
+    public CompletableFuture<Response> optInAsync(Order order, Executor executor) {
+        return supplyAsync(() -> opt_in(order), executor);
+    }
+
+    /** Asynchronous version of {@link #chargebackOrder(ChargebackOrder)} */
+    public CompletableFuture<Response> chargebackOrderAsync(ChargebackOrder order) {
+        return chargebackOrderAsync(order, getExecutor());
+    }
+
+    /** Asynchronous version of {@link #chargebackOrder(ChargebackOrder)} */
+    public CompletableFuture<Response> chargebackOrderAsync(ChargebackOrder order, Executor executor) {
+        return supplyAsync(() -> chargebackOrder(order), executor);
+    }
+
+    /** Asynchronous version of {@link #historicalOrders(ArrayOrders)} */
+    public CompletableFuture<Response> historicalOrdersAsync(ArrayOrders orders) {
+        return historicalOrdersAsync(orders, getExecutor());
+    }
+
+    /** Asynchronous version of {@link #historicalOrders(ArrayOrders)} */
+    public CompletableFuture<Response> historicalOrdersAsync(ArrayOrders orders, Executor executor) {
+        return supplyAsync(() -> historicalOrders(orders), executor);
+    }
+
+    /** Asynchronous version of {@link #historicalOrders(ArrayOrders, Validation)} */
+    public CompletableFuture<Response> historicalOrdersAsync(ArrayOrders orders, Validation validation) {
+        return historicalOrdersAsync(orders, validation, getExecutor());
+    }
+
+    /** Asynchronous version of {@link #historicalOrders(ArrayOrders, Validation)} */
+    public CompletableFuture<Response> historicalOrdersAsync(ArrayOrders orders, Validation validation, Executor executor) {
+        return supplyAsync(() -> historicalOrders(orders, validation), executor);
+    }
+
+    /** Asynchronous version of {@link #login(Login)} */
+    public CompletableFuture<Response> loginAsync(Login login) {
+        return loginAsync(login, getExecutor());
+    }
+
+    /** Asynchronous version of {@link #login(Login)} */
+    public CompletableFuture<Response> loginAsync(Login login, Executor executor) {
+        return supplyAsync(() -> login(login), executor);
+    }
+
+    /** Asynchronous version of {@link #customerCreate(CustomerCreate)} */
+    public CompletableFuture<Response> customerCreateAsync(CustomerCreate customerCreate) {
+        return customerCreateAsync(customerCreate, getExecutor());
+    }
+
+    /** Asynchronous version of {@link #customerCreate(CustomerCreate)} */
+    public CompletableFuture<Response> customerCreateAsync(CustomerCreate customerCreate, Executor executor) {
+        return supplyAsync(() -> customerCreate(customerCreate), executor);
+    }
+
+    /** Asynchronous version of {@link #customerUpdate(CustomerUpdate)} */
+    public CompletableFuture<Response> customerUpdateAsync(CustomerUpdate customerUpdate) {
+        return customerUpdateAsync(customerUpdate, getExecutor());
+    }
+
+    /** Asynchronous version of {@link #customerUpdate(CustomerUpdate)} */
+    public CompletableFuture<Response> customerUpdateAsync(CustomerUpdate customerUpdate, Executor executor) {
+        return supplyAsync(() -> customerUpdate(customerUpdate), executor);
+    }
+
+    /** Asynchronous version of {@link #logout(Logout)} */
+    public CompletableFuture<Response> logoutAsync(Logout logout) {
+        return logoutAsync(logout, getExecutor());
+    }
+
+    /** Asynchronous version of {@link #logout(Logout)} */
+    public CompletableFuture<Response> logoutAsync(Logout logout, Executor executor) {
+        return supplyAsync(() -> logout(logout), executor);
+    }
+
+    /** Asynchronous version of {@link #resetPassword(ResetPassword)} */
+    public CompletableFuture<Response> resetPasswordAsync(ResetPassword resetPassword) {
+        return resetPasswordAsync(resetPassword, getExecutor());
+    }
+
+    /** Asynchronous version of {@link #resetPassword(ResetPassword)} */
+    public CompletableFuture<Response> resetPasswordAsync(ResetPassword resetPassword, Executor executor) {
+        return supplyAsync(() -> resetPassword(resetPassword), executor);
+    }
+
+    /** Asynchronous version of {@link #wishlist(Wishlist)} */
+    public CompletableFuture<Response> wishlistAsync(Wishlist wishlist) {
+        return wishlistAsync(wishlist, getExecutor());
+    }
+
+    /** Asynchronous version of {@link #wishlist(Wishlist)} */
+    public CompletableFuture<Response> wishlistAsync(Wishlist wishlist, Executor executor) {
+        return supplyAsync(() -> wishlist(wishlist), executor);
+    }
+
+    /** Asynchronous version of {@link #redeem(Redeem)} */
+    public CompletableFuture<Response> redeemAsync(Redeem redeem) {
+        return redeemAsync(redeem, getExecutor());
+    }
+
+    /** Asynchronous version of {@link #redeem(Redeem)} */
+    public CompletableFuture<Response> redeemAsync(Redeem redeem, Executor executor) {
+        return supplyAsync(() -> redeem(redeem), executor);
+    }
+
+    /** Asynchronous version of {@link #contact(Contact)} */
+    public CompletableFuture<Response> contactAsync(Contact contact) {
+        return contactAsync(contact, getExecutor());
+    }
+
+    /** Asynchronous version of {@link #contact(Contact)} */
+    public CompletableFuture<Response> contactAsync(Contact contact, Executor executor) {
+        return supplyAsync(() -> contact(contact), executor);
+    }
+
+    private CompletableFuture<Response> supplyAsync(final Call call, Executor executor) {
+        final CompletableFuture<Response> future = new CompletableFuture<Response>();
+        try {
+            if (requestOptions.hasDeadline()) {
+                // the future fails at the deadline even while the call still waits for a thread
+                failAtDeadline(future, requestOptions);
+            }
+            executor.execute(() -> {
+                try {
+                    if (transportType == TransportType.NON_BLOCKING) {
+                        callNonBlocking(call, future);
+                    } else {
+                        future.complete(call.call());
+                    }
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException | IllegalStateException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private void failAtDeadline(final CompletableFuture<?> future, RequestOptions options) {
+        final ScheduledFuture<?> timer = getScheduler().schedule(() -> future.completeExceptionally(new DeadlineExceededException()),
+                Math.max(0, options.getRemainingMillis()), TimeUnit.MILLISECONDS);
+        future.whenComplete((result, error) -> timer.cancel(false));
     }
 
     /**
-     * Change the Riskified server url
-     * You shouldn't use this regular
-     * @param url the new server url
+     * Runs the validation, serialization and signing of the call on the current thread,
+     * the request itself is handed to the event loop without waiting for the response.
      */
-    public void setBaseUrl(String url) {
-        this.baseUrl = url;
+    private void callNonBlocking(Call call, final CompletableFuture<Response> future) throws IOException, FieldBadFormatException {
+        DeferredCall deferred = new DeferredCall();
+        DEFERRED_CALL.set(deferred);
+        Response response;
+        try {
+            response = call.call();
+        } finally {
+            DEFERRED_CALL.remove();
+        }
+        if (deferred.future == null) {
+            future.complete(response);
+            return;
+        }
+        deferred.future.whenComplete((result, error) -> {
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                future.complete(result);
+            }
+        });
     }
 
-    public Validation getValidation() {
-        return validation;
+    Executor getExecutor() {
+        if (parent != null) {
+            return parent.getExecutor();
+        }
+        Executor current = executor;
+        if (current == null) {
+            lifecycleLock.lock();
+            try {
+                if (closed) {
+                    throw new IllegalStateException("RiskifiedClient is closed");
+                }
+                current = executor;
+                if (current == null) {
+                    ownedExecutor = createOwnedExecutor();
+                    current = ownedExecutor;
+                    executor = current;
+                }
+            } finally {
+                lifecycleLock.unlock();
+            }
+        }
+        return current;
     }
 
-    public void setValidation(Validation validation) {
-        this.validation = validation;
+    private ExecutorService createOwnedExecutor() {
+        if (virtualThreads) {
+            ExecutorService virtualThreadExecutor = VirtualThreads.newVirtualThreadPerTaskExecutor();
+            if (virtualThreadExecutor != null) {
+                return virtualThreadExecutor;
+            }
+        }
+        return Executors.newCachedThreadPool(new RiskifiedThreadFactory("riskified-client"));
     }
 
-    public static class RiskifiedClientBuilder {
-        private String shopUrl;
-        private String authKey;
-        private Environment environment;
-        private Integer requestTimeout;
-        private Integer connectionTimeout;
-        private Validation validation;
+    private interface Call {
+        Response call() throws IOException, FieldBadFormatException;
+    }
+
+    private static class DeferredCall {
+        private CompletableFuture<Response> future;
+    }
+
+    /**
+     * The attempts of one call, sharing its signed request, options and deadline
+     */
+    private static final class Exchange {
+        private final HttpTransport transport;
+        private final HttpPost request;
+        // the path relative to the base URL, e.g. "/api/create"
+        private final String endpoint;
+        private final ResponseHandler<Response> handler;
+        private final RequestOptions options;
+        private final RetryPolicy policy;
+        private final CircuitBreaker breaker;
+        private final ConcurrencyLimiter limiter;
+        private final Bulkhead bulkhead;
+        private final RequestScheduler scheduler;
+        private final RequestScheduler.Ticket ticket;
+        private final CompletableFuture<Response> future = new CompletableFuture<Response>();
+        private volatile ScheduledFuture<?> timer;
+        private volatile boolean expired;
+        private volatile long attemptStart;
+        // held by the exchange and by each attempt in flight, the last one out returns the body to the pool
+        private final AtomicInteger bodyHolds = new AtomicInteger(1);
+
+        Exchange(HttpTransport transport, HttpPost request, String endpoint, ResponseHandler<Response> handler,
+                 RequestOptions options, RetryPolicy policy, CircuitBreaker breaker, ConcurrencyLimiter limiter, Bulkhead bulkhead,
+                 RequestScheduler scheduler, RequestScheduler.Ticket ticket) {
+            this.transport = transport;
+            this.request = request;
+            this.endpoint = endpoint;
+            this.handler = handler;
+            this.options = options;
+            this.policy = policy;
+            this.breaker = breaker;
+            this.limiter = limiter;
+            this.bulkhead = bulkhead;
+            this.scheduler = scheduler;
+            this.ticket = ticket;
+        }
 
         /**
-         * Required arguments to build a RiskifiedClient
-         * @param shopUrl The shop URL as registered in Riskified
-         * @param authKey From the advance settings in Riskified web site
-         * @param environment The Riskified environment (SANDBOX / PRODUCTION)
+         * Prepare the next attempt, its timeouts are capped by the time left before the deadline
+         * @return the circuit breaker permit of the attempt
          */
-        public RiskifiedClientBuilder(String shopUrl, String authKey, Environment environment) {
-            this.shopUrl = shopUrl;
-            this.authKey = authKey;
-            this.environment = environment;
+        long acquire() throws CircuitBreakerOpenException, ConcurrencyLimitExceededException {
+            long start = limiter != null ? limiter.acquire() : 0;
+            long permit;
+            try {
+                permit = breaker != null ? breaker.acquire() : 0;
+            } catch (CircuitBreakerOpenException e) {
+                if (limiter != null) {
+                    limiter.onResult(start, e);
+                }
+                throw e;
+            }
+            attemptStart = start;
+            if (options.hasDeadline()) {
+                request.setConfig(transport.createRequestConfig(options.getRemainingMillis()));
+            }
+            return permit;
         }
 
-        public RiskifiedClientBuilder setRequestTimeout(Integer requestTimeout) {
-            this.requestTimeout = requestTimeout;
-            return this;
+        /**
+         * Record the outcome of the attempt
+         * @param permit the circuit breaker permit of the attempt
+         * @param error the error of the attempt, null on success
+         */
+        void onResult(long permit, Throwable error) {
+            if (limiter != null) {
+                limiter.onResult(attemptStart, error);
+            }
+            if (breaker != null) {
+                if (error != null && request.isAborted()) {
+                    // whatever the transport reports for an aborted request (e.g. a closed socket)
+                    breaker.onAbort(permit);
+                } else {
+                    breaker.onResult(permit, error);
+                }
+            }
         }
 
-        public RiskifiedClientBuilder setConnectionTimeout(Integer connectionTimeout) {
-            this.connectionTimeout = connectionTimeout;
-            return this;
+        /**
+         * Hold the body for an attempt, the transport may read it until the attempt is over
+         * @return false when the body was already returned to the pool
+         */
+        boolean retainBody() {
+            for (;;) {
+                int holds = bodyHolds.get();
+                if (holds == 0) {
+                    return false;
+                }
+                if (bodyHolds.compareAndSet(holds, holds + 1)) {
+                    return true;
+                }
+            }
         }
 
-        public RiskifiedClientBuilder setValidation(Validation validation) {
-            this.validation = validation;
-            return this;
+        void returnBody() {
+            if (bodyHolds.decrementAndGet() == 0) {
+                releaseBody(request);
+            }
         }
 
-        public RiskifiedClient build() throws RiskifiedError {
-            return new RiskifiedClient(this);
+        void finish() {
+            ScheduledFuture<?> current = timer;
+            if (current != null) {
+                current.cancel(false);
+            }
+            returnBody();
+            if (ticket != null) {
+                scheduler.leave(ticket);
+            }
+            if (bulkhead != null) {
+                bulkhead.release();
+            }
         }
     }
 
-    public RiskifiedClient(RiskifiedClientBuilder riskifiedClientBuilder) throws RiskifiedError {
-        this.shopUrl = riskifiedClientBuilder.shopUrl;
-        this.authKey = riskifiedClientBuilder.authKey;
-        this.environment = riskifiedClientBuilder.environment;
+    private Response postCheckoutOrder(Object data, String url) throws IOException, FieldBadFormatException {
+        HttpPost request = createPostRequest(url);
+        addDataToRequest(data, request);
+        return send(request, this::handleCheckoutResponse);
+    }
 
-        if (riskifiedClientBuilder.validation != null) {
-            this.validation = riskifiedClientBuilder.validation;
+    private Response handleCheckoutResponse(HttpResponse response) throws IOException {
+        int status = response.getStatusLine().getStatusCode();
+        switch (status) {
+            case 200:
+                return ResponseParser.parseCheckoutResponse(response.getEntity());
+            case 400:
+                throw new HttpResponseException(status, ResponseParser.parseCheckoutResponse(response.getEntity()).getError().getMessage());
+            case 401:
+                throw new HttpResponseException(status, ResponseParser.parseCheckoutResponse(response.getEntity()).getError().getMessage());
+            case 404:
+                throw new HttpResponseException(status, ResponseParser.parseCheckoutResponse(response.getEntity()).getError().getMessage());
+            case 429:
+            case 503:
+            case 504:
+                throw new HttpResponseException(status, "Temporary error, please retry");
+            default:
+                throw new HttpResponseException(500, "Contact Riskified support");
+        }
+    }
+
+    private Response postOrder(Object data, String url) throws IOException {
+        HttpPost request = createPostRequest(url);
+        addDataToRequest(data, request);
+        return send(request, this::handleOrderResponse);
+    }
+
+    /**
+     * Post an order, skipped when the client deduplicates payloads and the same payload was just sent
+     */
+    private Response postDeduplicated(Object data, String url, String orderId, boolean coalesced) throws IOException {
+        HttpPost request = createPostRequest(url);
+        addDataToRequest(data, request);
+        return postDeduplicated(request, orderId, coalesced);
+    }
+
+    private Response postDeduplicated(HttpPost request, String orderId, boolean coalesced) throws IOException {
+        final PayloadDeduplicator deduplicator = payloadDeduplicator;
+        if (deduplicator == null) {
+            return coalesced ? sendCoalesced(request, orderId) : send(request, this::handleOrderResponse);
+        }
+        final String key = request.getURI().getPath() + " " + orderId;
+        // the body signature is a hash of the payload
+        final String digest = ((SignedJsonEntity) request.getEntity()).getSignature();
+        Response last = deduplicator.lookup(key, digest);
+        if (last != null) {
+            releaseBody(request);
+            return last;
+        }
+        Response response;
+        try {
+            response = coalesced ? sendCoalesced(request, orderId) : send(request, this::handleOrderResponse);
+        } catch (IOException | RuntimeException e) {
+            deduplicator.forget(key);
+            throw e;
+        }
+        whenDone(response, (result, error) -> {
+            if (error != null) {
+                deduplicator.forget(key);
+            } else {
+                deduplicator.record(key, digest, result);
+            }
+        });
+        return response;
+    }
+
+    /**
+     * Post an update, with only the changed fields when the client delta-encodes the updates
+     */
+    private Response postUpdate(Order order, String url) throws IOException {
+        final OrderDeltaEncoder encoder = orderDeltaEncoder;
+        if (encoder == null || order.getId() == null) {
+            return postDeduplicated(new OrderWrapper<Order>(order), url, order.getId(), true);
+        }
+        final OrderDeltaEncoder.Delta delta = encoder.encode(order);
+        if (delta.getSkipped() != null) {
+            return delta.getSkipped();
+        }
+        Response response;
+        try {
+            // the order was serialized by the encoder, only the wrapper is added around it
+            SignedJsonEntity body = signedBody().append("{\"order\":").append(delta.getPayload()).append("}").build();
+            HttpPost request = createPostRequest(url);
+            request.setHeader("X-RISKIFIED-HMAC-SHA256", body.getSignature());
+            request.setEntity(body);
+            response = postDeduplicated(request, order.getId(), true);
+        } catch (IOException | RuntimeException e) {
+            encoder.forget(order.getId());
+            throw e;
+        }
+        whenDone(response, (result, error) -> {
+            if (error != null) {
+                encoder.forget(order.getId());
+            } else {
+                encoder.commit(delta, result);
+            }
+        });
+        return response;
+    }
+
+    private Response postCoalesced(Object data, String url, String orderId) throws IOException {
+        HttpPost request = createPostRequest(url);
+        addDataToRequest(data, request);
+        return sendCoalesced(request, orderId);
+    }
+
+    /**
+     * Send an order, sharing the response of an identical call in flight when the client coalesces calls
+     */
+    private Response sendCoalesced(HttpPost request, String orderId) throws IOException {
+        final RequestCoalescer coalescer = requestCoalescer;
+        if (coalescer == null) {
+            return send(request, this::handleOrderResponse);
+        }
+        // the body signature is a hash of the payload
+        final String key = request.getURI().getPath() + " " + orderId + " " + ((SignedJsonEntity) request.getEntity()).getSignature();
+        final CompletableFuture<Response> leader = new CompletableFuture<Response>();
+        CompletableFuture<Response> current = coalescer.join(key, leader);
+        if (current != null) {
+            releaseBody(request);
+            return awaitCoalesced(current);
+        }
+        Response response;
+        try {
+            response = send(request, this::handleOrderResponse);
+        } catch (IOException | RuntimeException e) {
+            coalescer.complete(key, leader, null, e);
+            throw e;
+        }
+        whenDone(response, (result, error) -> coalescer.complete(key, leader, result, error));
+        return response;
+    }
+
+    /**
+     * Run the action once the call is over: at once for a blocking call, on completion for a call handed to the event loop
+     * @param response the response returned by the call
+     * @param action receives the response, or the error of the call
+     */
+    private static void whenDone(Response response, BiConsumer<Response, Throwable> action) {
+        DeferredCall deferred = DEFERRED_CALL.get();
+        if (deferred != null && deferred.future != null) {
+            deferred.future.whenComplete(action);
+        } else {
+            action.accept(response, null);
+        }
+    }
+
+    private Response awaitCoalesced(CompletableFuture<Response> call) throws IOException {
+        DeferredCall deferred = DEFERRED_CALL.get();
+        if (deferred != null) {
+            deferred.future = call;
+            return null;
+        }
+        long remaining = requestOptions.getRemainingMillis();
+        try {
+            return remaining == Long.MAX_VALUE ? call.get() : call.get(Math.max(0, remaining), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        } catch (TimeoutException e) {
+            throw new DeadlineExceededException();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for an identical Riskified request");
+        }
+    }
+
+    private Response handleOrderResponse(HttpResponse response) throws IOException {
+        int status = response.getStatusLine().getStatusCode();
+        // successful bodies are parsed straight from the stream, error bodies are reported as is
+        switch (status) {
+	        case 200:
+	            return ResponseParser.parseOrderResponse(response.getEntity());
+	        case 400:
+	            throw new HttpResponseException(status, EntityUtils.toString(response.getEntity()));
+	        case 401:
+	            throw new HttpResponseException(status, EntityUtils.toString(response.getEntity()));
+	        case 404:
+	            throw new HttpResponseException(status, EntityUtils.toString(response.getEntity()));
+	        case 429:
+	        case 503:
+	        case 504:
+	            throw new HttpResponseException(status, "Temporary error, please retry");
+	        default:
+	            throw new HttpResponseException(500, "Contact Riskified support");
+	    }
+    }
+
+    /**
+     * Reads the status only, the body of the response is skipped
+     */
+    private Response handleAcknowledgement(HttpResponse response) throws IOException {
+        int status = response.getStatusLine().getStatusCode();
+        EntityUtils.consume(response.getEntity());
+        switch (status) {
+            case 200:
+                return null;
+            case 400:
+            case 401:
+            case 404:
+                throw new HttpResponseException(status, response.getStatusLine().getReasonPhrase());
+            case 429:
+            case 503:
+            case 504:
+                throw new HttpResponseException(status, "Temporary error, please retry");
+            default:
+                throw new HttpResponseException(500, "Contact Riskified support");
+        }
+    }
+
+    private Response send(HttpPost request, ResponseHandler<Response> handler) throws IOException {
+        RequestOptions options = requestOptions;
+        String endpoint = endpointPath(request);
+        EndpointGroup group = EndpointGroup.forPath(endpoint);
+        Bulkhead bulkhead = group != null ? bulkheads.get(group) : null;
+        HttpTransport transport;
+        boolean admitted = false;
+        try {
+            if (options.getRemainingMillis() <= 0) {
+                // validation and serialization already used up the time of the call
+                throw new DeadlineExceededException();
+            }
+            if (bulkhead != null) {
+                bulkhead.acquire(options.getRemainingMillis());
+                admitted = true;
+            }
+            transport = getTransport(group);
+        } catch (IOException | RuntimeException e) {
+            if (admitted) {
+                bulkhead.release();
+            }
+            releaseBody(request);
+            throw e;
+        }
+        if (options.getIdempotencyKey() != null) {
+            request.setHeader("Idempotency-Key", options.getIdempotencyKey());
+        }
+        RequestScheduler.Ticket ticket = requestScheduler != null
+                ? requestScheduler.enter(RequestLane.of(group, endpoint, options.getPriority())) : null;
+        Exchange exchange = new Exchange(transport, request, endpoint, handler, options, getRetryPolicy(endpoint),
+                getCircuitBreaker(request.getURI()), group != null ? concurrencyLimiters.get(group) : null,
+                bulkhead, requestScheduler, ticket);
+        retryBudget.onRequest();
+        if (transport instanceof NonBlockingHttpTransport) {
+            CompletableFuture<Response> future = exchange.future;
+            try {
+                startDeadline(exchange);
+            } catch (IllegalStateException e) {
+                exchange.finish();
+                throw e;
+            }
+            if (ticket == null) {
+                sendAsync(exchange, 1);
+            } else {
+                sendWhenAdmitted(exchange);
+            }
+            // an attempt still in flight keeps the body chunks until its transport future completes
+            future.whenComplete((response, error) -> exchange.finish());
+            DeferredCall deferred = DEFERRED_CALL.get();
+            if (deferred != null) {
+                deferred.future = future;
+                return null;
+            }
+            return ((NonBlockingHttpTransport) transport).await(future, request);
+        }
+        try {
+            startDeadline(exchange);
+            awaitTurn(exchange);
+            for (int attempt = 1; ; attempt++) {
+                long wait = reserveTokens(exchange);
+                if (wait > 0) {
+                    try {
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    } catch (InterruptedException interrupted) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while waiting for the rate limit of the Riskified request");
+                    }
+                }
+                long permit = exchange.acquire();
+                try {
+                    Response response = transport.execute(request, handler);
+                    exchange.onResult(permit, null);
+                    return response;
+                } catch (IOException e) {
+                    exchange.onResult(permit, e);
+                    if (exchange.expired) {
+                        throw new DeadlineExceededException();
+                    }
+                    long backoff = exchange.policy.backoffMillis(attempt);
+                    if (!shouldRetry(exchange, attempt, e, backoff)) {
+                        throw e;
+                    }
+                    // the signed body is repeatable, the same request is sent again
+                    try {
+                        Thread.sleep(backoff);
+                    } catch (InterruptedException interrupted) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while waiting to retry the Riskified request");
+                    }
+                } catch (RuntimeException e) {
+                    exchange.onResult(permit, e);
+                    throw e;
+                }
+            }
+        } finally {
+            exchange.finish();
+        }
+    }
+
+    /**
+     * Block until the scheduler admits the call
+     */
+    private void awaitTurn(Exchange exchange) throws IOException {
+        RequestScheduler.Ticket ticket = exchange.ticket;
+        if (ticket == null) {
+            return;
+        }
+        long wait = Math.min(exchange.scheduler.getConfig().getMaxQueueWaitMillis(), exchange.options.getRemainingMillis());
+        try {
+            try {
+                ticket.getAdmitted().get(Math.max(0, wait), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // shed, unless it was admitted meanwhile
+                exchange.scheduler.expire(ticket);
+                ticket.getAdmitted().get();
+            }
+        } catch (ExecutionException e) {
+            if (exchange.expired) {
+                throw new DeadlineExceededException();
+            }
+            throw (IOException) e.getCause();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the turn of the Riskified request");
+        }
+    }
+
+    /**
+     * Start the exchange once the scheduler admits it, without holding a thread meanwhile
+     */
+    private void sendWhenAdmitted(final Exchange exchange) {
+        final RequestScheduler.Ticket ticket = exchange.ticket;
+        if (!ticket.getAdmitted().isDone()) {
+            long wait = Math.min(exchange.scheduler.getConfig().getMaxQueueWaitMillis(), exchange.options.getRemainingMillis());
+            try {
+                final ScheduledFuture<?> timer = getScheduler().schedule(() -> exchange.scheduler.expire(ticket),
+                        Math.max(0, wait), TimeUnit.MILLISECONDS);
+                ticket.getAdmitted().whenComplete((admitted, error) -> timer.cancel(false));
+            } catch (IllegalStateException e) {
+                exchange.future.completeExceptionally(e);
+                return;
+            }
+        }
+        ticket.getAdmitted().whenComplete((admitted, error) -> {
+            if (error != null) {
+                exchange.future.completeExceptionally(error);
+            } else {
+                sendAsync(exchange, 1);
+            }
+        });
+    }
+
+    private void sendAsync(final Exchange exchange, final int attempt) {
+        long wait;
+        try {
+            wait = reserveTokens(exchange);
+        } catch (RateLimitExceededException e) {
+            exchange.future.completeExceptionally(e);
+            return;
+        }
+        if (wait == 0) {
+            sendAttempt(exchange, attempt);
+            return;
+        }
+        try {
+            getScheduler().schedule(() -> sendAttempt(exchange, attempt), wait, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException | IllegalStateException e) {
+            exchange.future.completeExceptionally(e);
+        }
+    }
+
+    private void sendAttempt(final Exchange exchange, final int attempt) {
+        if (exchange.request.isAborted() || !exchange.retainBody()) {
+            // the caller gave up, or the deadline passed, while the retry was waiting
+            exchange.future.completeExceptionally(exchange.expired
+                    ? new DeadlineExceededException() : new InterruptedIOException("Riskified request was aborted"));
+            return;
+        }
+        final long permit;
+        try {
+            permit = exchange.acquire();
+        } catch (CircuitBreakerOpenException | ConcurrencyLimitExceededException e) {
+            exchange.returnBody();
+            exchange.future.completeExceptionally(e);
+            return;
+        }
+        NonBlockingHttpTransport transport = (NonBlockingHttpTransport) exchange.transport;
+        transport.executeAsync(exchange.request, exchange.handler).whenComplete((response, error) -> {
+            // the transport is done with the body, only now can the chunks be reused
+            exchange.returnBody();
+            exchange.onResult(permit, error);
+            if (error == null) {
+                exchange.future.complete(response);
+                return;
+            }
+            long backoff = exchange.policy.backoffMillis(attempt);
+            if (shouldRetry(exchange, attempt, error, backoff)) {
+                try {
+                    getScheduler().schedule(() -> sendAsync(exchange, attempt + 1), backoff, TimeUnit.MILLISECONDS);
+                    return;
+                } catch (RejectedExecutionException | IllegalStateException e) {
+                    // the client was closed, the last error is reported
+                }
+            }
+            // the abort of the deadline fails the attempt, the caller sees the deadline and not the cancel
+            exchange.future.completeExceptionally(exchange.expired ? new DeadlineExceededException() : error);
+        });
+    }
+
+    /**
+     * Reserve the tokens of the shop and of the endpoint for the next attempt
+     * @return the nanoseconds to wait before the attempt
+     */
+    private long reserveTokens(Exchange exchange) throws RateLimitExceededException {
+        RateLimits limits = rateLimits;
+        if (limits == null) {
+            return 0;
+        }
+        long maxWait = Math.min(limits.getConfig().getMaxWaitMillis(), exchange.options.getRemainingMillis());
+        return limits.reserve(shopUrl, exchange.endpoint, maxWait);
+    }
+
+    /**
+     * Abort the exchange at the deadline of its options
+     */
+    private void startDeadline(final Exchange exchange) {
+        if (!exchange.options.hasDeadline()) {
+            return;
+        }
+        exchange.timer = getScheduler().schedule(() -> {
+            exchange.expired = true;
+            // aborted first, the attempt in flight must be stopped before the caller sees the exchange over
+            exchange.request.abort();
+            exchange.future.completeExceptionally(new DeadlineExceededException());
+        }, Math.max(0, exchange.options.getRemainingMillis()), TimeUnit.MILLISECONDS);
+    }
+
+    private boolean shouldRetry(Exchange exchange, int attempt, Throwable error, long backoff) {
+        RequestOptions options = exchange.options;
+        return attempt < exchange.policy.getMaxAttempts()
+                && options.getPriority() != RequestOptions.Priority.LOW
+                && exchange.policy.isRetryable(error, options.getIdempotencyKey() != null)
+                && backoff < options.getRemainingMillis()
+                && !exchange.request.isAborted() && !isClosed()
+                && retryBudget.tryRetry();
+    }
+
+    private CircuitBreaker getCircuitBreaker(URI uri) {
+        CircuitBreakerConfig config = circuitBreakerConfig;
+        if (config == null) {
+            return null;
+        }
+        String key = uri.getScheme() + "://" + uri.getRawAuthority();
+        CircuitBreaker breaker = circuitBreakers.get(key);
+        if (breaker == null) {
+            CircuitBreaker created = new CircuitBreaker(key, config);
+            breaker = circuitBreakers.putIfAbsent(key, created);
+            if (breaker == null) {
+                breaker = created;
+            }
+        }
+        return breaker;
+    }
+
+    private RetryPolicy getRetryPolicy(String endpoint) {
+        RetryPolicy policy = endpointRetryPolicies.get(endpoint);
+        return policy != null ? policy : retryPolicy;
+    }
+
+    /**
+     * @param request the request of a call
+     * @return the path of the endpoint relative to the base URL of the request, so a base URL with a path prefix
+     * (e.g. https://proxy.example.com/riskified) still matches "/api/create"
+     */
+    private String endpointPath(HttpPost request) {
+        String url = request.getURI().toString();
+        String base = null;
+        for (String candidate : new String[]{baseUrl, baseUrlSyncAnalyze, decoBaseUrl, accountBaseUrl}) {
+            // the longest one, a base URL may be the prefix of another
+            if (candidate != null && url.startsWith(candidate) && (base == null || candidate.length() > base.length())) {
+                base = candidate;
+            }
+        }
+        if (base == null) {
+            return request.getURI().getPath();
+        }
+        String path = url.substring(base.length());
+        return path.startsWith("/") ? path : "/" + path;
+    }
+
+    /**
+     * The timer of the client, running the retries of the non-blocking transport and the deadlines
+     */
+    private ScheduledExecutorService getScheduler() {
+        if (parent != null) {
+            return parent.getScheduler();
+        }
+        lifecycleLock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("RiskifiedClient is closed");
+            }
+            if (scheduler == null) {
+                ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, new RiskifiedThreadFactory("riskified-timer"));
+                // most deadlines are cancelled, they mustn't pile up in the queue
+                timer.setRemoveOnCancelPolicy(true);
+                scheduler = timer;
+            }
+            return scheduler;
+        } finally {
+            lifecycleLock.unlock();
+        }
+    }
+
+    private boolean isClosed() {
+        return parent != null ? parent.closed : closed;
+    }
+
+    private static void releaseBody(HttpPost request) {
+        if (request.getEntity() instanceof SignedJsonEntity) {
+            ((SignedJsonEntity) request.getEntity()).release();
+        }
+    }
+
+    /**
+     * @param group the group of the endpoint called
+     * @return the transport of the group's bulkhead when it has its own connections, the client transport otherwise
+     */
+    private HttpTransport getTransport(EndpointGroup group) throws IOException {
+        if (parent != null) {
+            return parent.getTransport(group);
+        }
+        Bulkhead bulkhead = group != null ? bulkheads.get(group) : null;
+        Integer groupConnections = bulkhead != null ? bulkhead.getConfig().getMaxConnections() : null;
+        if (groupConnections == null) {
+            return getTransport();
+        }
+        HttpTransport current = groupTransports.get(group.ordinal());
+        if (current == null) {
+            lifecycleLock.lock();
+            try {
+                if (closed) {
+                    throw new IllegalStateException("RiskifiedClient is closed");
+                }
+                current = groupTransports.get(group.ordinal());
+                if (current == null) {
+                    current = constructTransport(groupConnections, groupConnections);
+                    groupTransports.set(group.ordinal(), current);
+                }
+            } finally {
+                lifecycleLock.unlock();
+            }
+        }
+        return current;
+    }
+
+    private HttpTransport getTransport() throws IOException {
+        HttpTransport current = transport;
+        if (current == null) {
+            lifecycleLock.lock();
+            try {
+                if (closed) {
+                    throw new IllegalStateException("RiskifiedClient is closed");
+                }
+                current = transport;
+                if (current == null) {
+                    current = constructTransport(maxConnections, maxConnectionsPerRoute);
+                    transport = current;
+                }
+            } finally {
+                lifecycleLock.unlock();
+            }
+        }
+        return current;
+    }
+
+    private HttpTransport constructTransport(int maxConnections, int maxConnectionsPerRoute) throws IOException {
+        ProxyClientDetails proxy = null;
+        if (this.proxyUrl != null) {
+            proxy = new ProxyClientDetails(proxyUrl, proxyPort, proxyUsername, proxyPassword);
+        }
+        if (transportType == TransportType.NON_BLOCKING) {
+            try {
+                return new NonBlockingHttpTransport(connectionTimeout, requestTimeout, socketTimeout, maxConnections, maxConnectionsPerRoute,
+                        proxy, baseUrl, baseUrlSyncAnalyze, decoBaseUrl, accountBaseUrl);
+            } catch (RiskifiedError e) {
+                throw new IOException(e);
+            }
+        }
+        return new BlockingHttpTransport(connectionTimeout, requestTimeout, socketTimeout, maxConnections, maxConnectionsPerRoute,
+                proxy, baseUrl, baseUrlSyncAnalyze, decoBaseUrl, accountBaseUrl);
+    }
+
+    /**
+     * @return a body to be assembled from json fragments, signed with the key of the client
+     */
+    SignedJsonEntity.Builder signedBody() {
+        return SignedJsonEntity.builder(sha256Handler, BufferPool.shared());
+    }
+
+    /**
+     * Post a body already serialized and signed, the body is released once the call is over
+     * @param path the path of the endpoint, e.g. "/api/historical"
+     * @param body the signed body
+     * @return Response object, including the status from Riskified server
+     */
+    Response postSigned(String path, SignedJsonEntity body) throws IOException {
+        HttpPost request = createPostRequest(baseUrl + path);
+        request.setHeader("X-RISKIFIED-HMAC-SHA256", body.getSignature());
+        request.setEntity(body);
+        return send(request, this::handleOrderResponse);
+    }
+
+    /**
+     * Post an account action already serialized and signed, only the status of the response is read
+     * @param path the path of the account endpoint, e.g. "/customers/login"
+     * @param body the signed body, released once the call is over
+     */
+    void postAccountAction(String path, SignedJsonEntity body) throws IOException {
+        HttpPost request = createPostRequest(accountBaseUrl + path);
+        request.setHeader("X-RISKIFIED-HMAC-SHA256", body.getSignature());
+        request.setEntity(body);
+        send(request, this::handleAcknowledgement);
+    }
+
+    private void addDataToRequest(Object data, HttpPost postRequest) throws IOException {
+        // the body is signed while it is serialized, the header is set once the last byte is written
+        SignedJsonEntity input = SignedJsonEntity.create(data, sha256Handler, BufferPool.shared());
+        postRequest.setHeader("X-RISKIFIED-HMAC-SHA256", input.getSignature());
+        postRequest.setEntity(input);
+    }
+
+    private HttpPost createPostRequest(String url) {
+        HttpPost postRequest = new HttpPost(url);
+        postRequest.setHeader(HttpHeaders.ACCEPT, "application/vnd.riskified.com; version=2");
+        postRequest.setHeader("X-RISKIFIED-SHOP-DOMAIN", shopUrl);
+        postRequest.setHeader("User-Agent","riskified_java_sdk/1.2.9"); // TODO: take the version automatically
+
+        return postRequest;
+    }
+
+    private void validate(IValidated objToValidated) throws FieldBadFormatException {
+        if (this.validation != Validation.NONE) {
+            objToValidated.validate(this.validation);
+        }
+    }
+
+    private void validate(IValidated objToValidated, Validation validationType) throws FieldBadFormatException {
+        if (validationType != Validation.NONE) {
+            objToValidated.validate(validationType);
+        }
+    }
+
+    public String getShopUrl() {
+        return shopUrl;
+    }
+
+    public int getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    public int getConnectionTimeout() {
+        return connectionTimeout;
+    }
+
+    public int getSocketTimeout() {
+        return socketTimeout;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute;
+    }
+
+    public TransportType getTransportType() {
+        return transportType;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * A view of this client applying the options to every call made through it, e.g.
+     * {@code client.withOptions(options).checkoutOrder(order)}.
+     * The view shares the connection pool, executor, retry budget and circuit breakers of this client,
+     * it is cheap enough to be created per call and doesn't need to be closed.
+     * @param options the options of the calls
+     * @return the view
+     */
+    public RiskifiedClient withOptions(RequestOptions options) {
+        return new RiskifiedClient(this, options);
+    }
+
+    public RequestOptions getRequestOptions() {
+        return requestOptions;
+    }
+
+    /**
+     * @param group an endpoint group
+     * @return the bulkhead of the group, null when it has none
+     */
+    public Bulkhead getBulkhead(EndpointGroup group) {
+        return bulkheads.get(group);
+    }
+
+    /**
+     * @param group an endpoint group
+     * @return the adaptive concurrency limiter of the group, null when it has none
+     */
+    public ConcurrencyLimiter getConcurrencyLimiter(EndpointGroup group) {
+        return concurrencyLimiters.get(group);
+    }
+
+    /**
+     * @return the delta encoding of the updates, null when the client sends the orders whole
+     */
+    public OrderDeltaEncoder getOrderDeltaEncoder() {
+        return orderDeltaEncoder;
+    }
+
+    /**
+     * @return the deduplication of the update and fulfillment payloads, null when the client sends them all
+     */
+    public PayloadDeduplicator getPayloadDeduplicator() {
+        return payloadDeduplicator;
+    }
+
+    /**
+     * @return the fire and forget queue of the account actions, null when the client has none
+     */
+    public AccountEventQueue getAccountEventQueue() {
+        return accountEventQueue;
+    }
+
+    /**
+     * @return the durable outbox of the client, null until {@link #openOutbox} is called
+     */
+    public Outbox getOutbox() {
+        return parent != null ? parent.getOutbox() : outbox;
+    }
+
+    /**
+     * @return the single-flight of the update and decision calls, null when the client doesn't coalesce them
+     */
+    public RequestCoalescer getRequestCoalescer() {
+        return requestCoalescer;
+    }
+
+    /**
+     * @return the token buckets limiting the request rates, null when the client has none
+     */
+    public RateLimits getRateLimits() {
+        return rateLimits;
+    }
+
+    /**
+     * @return the scheduler admitting the calls by priority lane, null when the client has none
+     */
+    public RequestScheduler getRequestScheduler() {
+        return requestScheduler;
+    }
+
+    public RetryBudget getRetryBudget() {
+        return retryBudget;
+    }
+
+    /**
+     * The circuit breaker guarding a Riskified base URL, e.g. to fail open without calling when it is open:
+     * {@code client.getCircuitBreaker(client.getBaseUrl()).isOpen()}
+     * @param url a base URL, or any URL on the same host
+     * @return the breaker of that host, null when the client has no circuit breakers
+     */
+    public CircuitBreaker getCircuitBreaker(String url) {
+        return getCircuitBreaker(URI.create(url));
+    }
+
+    /**
+     * @return true when the asynchronous api calls run on virtual threads, the blocking calls run on the caller's thread
+     */
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public Environment getEnvironment() {
+        return environment;
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public String getAuthKey() {
+        return authKey;
+    }
+
+    /**
+     * Change the Riskified server url
+     * You shouldn't use this regular
+     * @param url the new server url
+     */
+    public void setBaseUrl(String url) {
+        this.baseUrl = url;
+    }
+
+    /**
+     * Change the Riskified account actions server url
+     * You shouldn't use this regular
+     * @param url the new server url
+     */
+    public void setAccountBaseUrl(String url) {
+        this.accountBaseUrl = url;
+    }
+
+    public Validation getValidation() {
+        return validation;
+    }
+
+    public void setValidation(Validation validation) {
+        this.validation = validation;
+    }
+
+    /**
+     * Release the pooled connections held by this client, after sending the account actions queued, and close its outbox.
+     * The client can't be used after it was closed. Closing a view made by withOptions does nothing.
+     * @throws IOException in case of an error while shutting down the connection pool
+     */
+    public void close() throws IOException {
+        if (parent != null) {
+            return;
+        }
+        HttpTransport current;
+        List<HttpTransport> groups = new ArrayList<HttpTransport>();
+        Outbox openOutbox;
+        if (accountEventQueue != null) {
+            // first, the actions left are sent while the transports are open
+            accountEventQueue.close();
+        }
+        lifecycleLock.lock();
+        try {
+            closed = true;
+            openOutbox = outbox;
+            outbox = null;
+            current = transport;
+            transport = null;
+            for (int i = 0; i < groupTransports.length(); i++) {
+                HttpTransport group = groupTransports.getAndSet(i, null);
+                if (group != null) {
+                    groups.add(group);
+                }
+            }
+            if (ownedExecutor != null) {
+                ownedExecutor.shutdown();
+                ownedExecutor = null;
+                executor = null;
+            }
+            if (scheduler != null) {
+                scheduler.shutdown();
+                scheduler = null;
+            }
+        } finally {
+            lifecycleLock.unlock();
+        }
+        if (openOutbox != null) {
+            // before the transports, a delivery in flight ends with them
+            openOutbox.close();
+        }
+        for (HttpTransport group : groups) {
+            group.close();
+        }
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    public static class RiskifiedClientBuilder {
+        private String shopUrl;
+        private String authKey;
+        private Environment environment;
+        private Integer requestTimeout;
+        private Integer connectionTimeout;
+        private Integer socketTimeout;
+        private Integer maxConnections;
+        private Integer maxConnectionsPerRoute;
+        private Executor executor;
+        private TransportType transportType;
+        private boolean virtualThreads;
+        private Validation validation;
+        private RetryPolicy retryPolicy;
+        private final Map<String, RetryPolicy> endpointRetryPolicies = new HashMap<String, RetryPolicy>();
+        private RetryBudget retryBudget;
+        private CircuitBreakerConfig circuitBreakerConfig;
+        private RequestSchedulerConfig requestSchedulerConfig;
+        private RateLimits rateLimits;
+        private boolean requestCoalescing;
+        private PayloadDeduplicator payloadDeduplicator;
+        private OrderDeltaEncoder orderDeltaEncoder;
+        private AccountEventQueueConfig accountEventQueueConfig;
+        private final Map<EndpointGroup, ConcurrencyLimitConfig> concurrencyLimits = new EnumMap<EndpointGroup, ConcurrencyLimitConfig>(EndpointGroup.class);
+        private final Map<EndpointGroup, BulkheadConfig> bulkheads = new EnumMap<EndpointGroup, BulkheadConfig>(EndpointGroup.class);
+
+        /**
+         * Required arguments to build a RiskifiedClient
+         * @param shopUrl The shop URL as registered in Riskified
+         * @param authKey From the advance settings in Riskified web site
+         * @param environment The Riskified environment (SANDBOX / PRODUCTION)
+         */
+        public RiskifiedClientBuilder(String shopUrl, String authKey, Environment environment) {
+            this.shopUrl = shopUrl;
+            this.authKey = authKey;
+            this.environment = environment;
+        }
+
+        public RiskifiedClientBuilder setRequestTimeout(Integer requestTimeout) {
+            this.requestTimeout = requestTimeout;
+            return this;
+        }
+
+        public RiskifiedClientBuilder setConnectionTimeout(Integer connectionTimeout) {
+            this.connectionTimeout = connectionTimeout;
+            return this;
+        }
+
+        /**
+         * Maximum inactivity while waiting for response data
+         * @param socketTimeout the read timeout in milliseconds (default 10000, 0 for none)
+         * @return this builder
+         */
+        public RiskifiedClientBuilder setSocketTimeout(Integer socketTimeout) {
+            this.socketTimeout = socketTimeout;
+            return this;
+        }
+
+        public RiskifiedClientBuilder setValidation(Validation validation) {
+            this.validation = validation;
+            return this;
+        }
+
+        /**
+         * Maximum number of pooled connections kept open to all Riskified hosts together
+         * @param maxConnections the total pool size (default 200)
+         * @return this builder
+         */
+        public RiskifiedClientBuilder setMaxConnections(Integer maxConnections) {
+            this.maxConnections = maxConnections;
+            return this;
+        }
+
+        /**
+         * Maximum number of pooled connections kept open to a single Riskified host
+         * @param maxConnectionsPerRoute the per host pool size (default 50)
+         * @return this builder
+         */
+        public RiskifiedClientBuilder setMaxConnectionsPerRoute(Integer maxConnectionsPerRoute) {
+            this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+            return this;
+        }
+
+        /**
+         * Default executor for the asynchronous api calls (e.g. createOrderAsync)
+         * When not set the client creates its own pool of daemon threads, shut down on close.
+         * @param executor the executor running asynchronous calls
+         * @return this builder
+         */
+        public RiskifiedClientBuilder setExecutor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * The HTTP engine used to talk to Riskified
+         * @param transportType BLOCKING (default) or NON_BLOCKING
+         * @return this builder
+         */
+        public RiskifiedClientBuilder setTransportType(TransportType transportType) {
+            this.transportType = transportType;
+            return this;
+        }
+
+        /**
+         * Run every asynchronous api call (e.g. createOrderAsync) on its own virtual thread.
+         * Only the asynchronous twins are affected, a blocking call (e.g. createOrder) always runs on the thread
+         * calling it - call it from a virtual thread to get the same benefit.
+         * Requires JDK 21 or later, on older runtimes the client keeps using its platform thread pool.
+         * Ignored when an executor was set.
+         * @param virtualThreads true to use virtual threads
+         * @return this builder
+         */
+        public RiskifiedClientBuilder setVirtualThreads(boolean virtualThreads) {
+            this.virtualThreads = virtualThreads;
+            return this;
+        }
+
+        /**
+         * Retry policy of every endpoint without a policy of its own
+         * @param retryPolicy the policy (default {@link RetryPolicy#NONE})
+         * @return this builder
+         */
+        public RiskifiedClientBuilder setRetryPolicy(RetryPolicy retryPolicy) {
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
+        /**
+         * Retry policy of a single endpoint
+         * @param endpoint the path of the endpoint, e.g. "/api/create"
+         * @param retryPolicy the policy of this endpoint
+         * @return this builder
+         */
+        public RiskifiedClientBuilder setRetryPolicy(String endpoint, RetryPolicy retryPolicy) {
+            this.endpointRetryPolicies.put(endpoint, retryPolicy);
+            return this;
+        }
+
+        /**
+         * Budget shared by the retries of all endpoints
+         * @param retryBudget the budget (default 1 retry every 10 calls, bursts of 10 retries)
+         * @return this builder
+         */
+        public RiskifiedClientBuilder setRetryBudget(RetryBudget retryBudget) {
+            this.retryBudget = retryBudget;
+            return this;
+        }
+
+        /**
+         * Guard each Riskified base URL with a circuit breaker
+         * @param circuitBreakerConfig the breakers settings (default none, calls are never failed fast)
+         * @return this builder
+         */
+        public RiskifiedClientBuilder setCircuitBreakerConfig(CircuitBreakerConfig circuitBreakerConfig) {
+            this.circuitBreakerConfig = circuitBreakerConfig;
+            return this;
+        }
+
+        /**
+         * Isolate an endpoint group, e.g. so a historical backfill can't slow the checkout calls
+         * @param group the endpoint group
+         * @param bulkheadConfig the connections and concurrency limit of the group
+         * @return this builder
+         */
+        public RiskifiedClientBuilder setBulkhead(EndpointGroup group, BulkheadConfig bulkheadConfig) {
+            this.bulkheads.put(group, bulkheadConfig);
+            return this;
+        }
+
+        /**
+         * Adapt the calls in flight to an endpoint group to its latency, rejecting the excess calls fast
+         * @param group the endpoint group
+         * @param concurrencyLimitConfig the bounds and sensitivity of the limit
+         * @return this builder
+         */
+        public RiskifiedClientBuilder setConcurrencyLimit(EndpointGroup group, ConcurrencyLimitConfig concurrencyLimitConfig) {
+            this.concurrencyLimits.put(group, concurrencyLimitConfig);
+            return this;
+        }
+
+        /**
+         * Adapt the calls in flight to each endpoint group to its latency, every group has its own limit
+         * @param concurrencyLimitConfig the bounds and sensitivity of the limits
+         * @return this builder
+         */
+        public RiskifiedClientBuilder setConcurrencyLimit(ConcurrencyLimitConfig concurrencyLimitConfig) {
+            for (EndpointGroup group : EndpointGroup.values()) {
+                this.concurrencyLimits.put(group, concurrencyLimitConfig);
+            }
+            return this;
+        }
+
+        /**
+         * Send only the id and the changed fields of the orders given to updateOrder
+         * @param orderDeltaEncoder the last state of the orders, e.g. {@code new OrderDeltaEncoder(10000)}
+         * @return this builder
+         */
+        public RiskifiedClientBuilder setOrderDeltaEncoder(OrderDeltaEncoder orderDeltaEncoder) {
+            this.orderDeltaEncoder = orderDeltaEncoder;
+            return this;
+        }
+
+        /**
+         * Skip the updateOrder and fulfillOrder calls whose payload is byte-identical to the one just sent for the order
+         * @param payloadDeduplicator the memory of the payloads sent, e.g. {@code new PayloadDeduplicator(10000, 600000)}
+         * @return this builder
+         */
+        public RiskifiedClientBuilder setPayloadDeduplicator(PayloadDeduplicator payloadDeduplicator) {
+            this.payloadDeduplicator = payloadDeduplicator;
+            return this;
+        }
+
+        /**
+         * Share one round trip between identical updateOrder or decisionOrder calls in flight,
+         * e.g. when a webhook is delivered twice. Identical calls have the same order id and payload.
+         * @param requestCoalescing true to coalesce the calls (default false)
+         * @return this builder
+         */
+        public RiskifiedClientBuilder setRequestCoalescing(boolean requestCoalescing) {
+            this.requestCoalescing = requestCoalescing;
+            return this;
+        }
+
+        /**
+         * Keep the calls under the rates agreed with Riskified, e.g. while replaying historical orders
+         * @param rateLimits the token buckets, to be shared by all the clients of a shop
+         * @return this builder
+         */
+        public RiskifiedClientBuilder setRateLimits(RateLimits rateLimits) {
+            this.rateLimits = rateLimits;
+            return this;
+        }
+
+        /**
+         * Start the calls by priority lane, shedding the least urgent ones under saturation
+         * @param requestSchedulerConfig the scheduler settings (default none, calls are sent as they come)
+         * @return this builder
+         */
+        public RiskifiedClientBuilder setRequestScheduler(RequestSchedulerConfig requestSchedulerConfig) {
+            this.requestSchedulerConfig = requestSchedulerConfig;
+            return this;
+        }
+
+        /**
+         * Send the account actions of {@link RiskifiedClient#getAccountEventQueue()} in the background
+         * @param accountEventQueueConfig the queue settings (default none, account actions are sent by the caller)
+         * @return this builder
+         */
+        public RiskifiedClientBuilder setAccountEventQueue(AccountEventQueueConfig accountEventQueueConfig) {
+            this.accountEventQueueConfig = accountEventQueueConfig;
+            return this;
+        }
+
+        public RiskifiedClient build() throws RiskifiedError {
+            return new RiskifiedClient(this);
+        }
+    }
+
+    public RiskifiedClient(RiskifiedClientBuilder riskifiedClientBuilder) throws RiskifiedError {
+        this.shopUrl = riskifiedClientBuilder.shopUrl;
+        this.authKey = riskifiedClientBuilder.authKey;
+        this.environment = riskifiedClientBuilder.environment;
+
+        if (riskifiedClientBuilder.validation != null) {
+            this.validation = riskifiedClientBuilder.validation;
         }
 
         if (riskifiedClientBuilder.requestTimeout != null) {
@@ -1066,10 +2678,113 @@ public class RiskifiedClient {
             this.connectionTimeout = riskifiedClientBuilder.connectionTimeout;
         }
 
+        if (riskifiedClientBuilder.socketTimeout != null) {
+            this.socketTimeout = riskifiedClientBuilder.socketTimeout;
+        }
+
+        if (riskifiedClientBuilder.maxConnections != null) {
+            this.maxConnections = riskifiedClientBuilder.maxConnections;
+        }
+
+        if (riskifiedClientBuilder.maxConnectionsPerRoute != null) {
+            this.maxConnectionsPerRoute = riskifiedClientBuilder.maxConnectionsPerRoute;
+        }
+
+        this.executor = riskifiedClientBuilder.executor;
+
+        if (riskifiedClientBuilder.transportType != null) {
+            this.transportType = riskifiedClientBuilder.transportType;
+        }
+
+        this.virtualThreads = riskifiedClientBuilder.virtualThreads && riskifiedClientBuilder.executor == null
+                && VirtualThreads.isSupported();
+
+        if (riskifiedClientBuilder.retryPolicy != null) {
+            this.retryPolicy = riskifiedClientBuilder.retryPolicy;
+        }
+
+        if (!riskifiedClientBuilder.endpointRetryPolicies.isEmpty()) {
+            this.endpointRetryPolicies = new HashMap<String, RetryPolicy>(riskifiedClientBuilder.endpointRetryPolicies);
+        }
+
+        if (riskifiedClientBuilder.retryBudget != null) {
+            this.retryBudget = riskifiedClientBuilder.retryBudget;
+        }
+
+        this.circuitBreakerConfig = riskifiedClientBuilder.circuitBreakerConfig;
+
+        this.rateLimits = riskifiedClientBuilder.rateLimits;
+        this.payloadDeduplicator = riskifiedClientBuilder.payloadDeduplicator;
+        this.orderDeltaEncoder = riskifiedClientBuilder.orderDeltaEncoder;
+        if (riskifiedClientBuilder.requestCoalescing) {
+            this.requestCoalescer = new RequestCoalescer();
+        }
+
+        if (riskifiedClientBuilder.requestSchedulerConfig != null) {
+            this.requestScheduler = new RequestScheduler(riskifiedClientBuilder.requestSchedulerConfig);
+        }
+
+        if (!riskifiedClientBuilder.concurrencyLimits.isEmpty()) {
+            this.concurrencyLimiters = new EnumMap<EndpointGroup, ConcurrencyLimiter>(EndpointGroup.class);
+            for (Map.Entry<EndpointGroup, ConcurrencyLimitConfig> entry : riskifiedClientBuilder.concurrencyLimits.entrySet()) {
+                this.concurrencyLimiters.put(entry.getKey(), new ConcurrencyLimiter(entry.getKey(), entry.getValue()));
+            }
+        }
+
+        if (!riskifiedClientBuilder.bulkheads.isEmpty()) {
+            this.bulkheads = new EnumMap<EndpointGroup, Bulkhead>(EndpointGroup.class);
+            for (Map.Entry<EndpointGroup, BulkheadConfig> entry : riskifiedClientBuilder.bulkheads.entrySet()) {
+                this.bulkheads.put(entry.getKey(), new Bulkhead(entry.getKey(), entry.getValue()));
+            }
+        }
+
         this.sha256Handler = new SHA256Handler(authKey);
         this.baseUrl = Utils.getBaseUrlFromEnvironment(environment);
         this.baseUrlSyncAnalyze = Utils.getBaseUrlSyncAnalyzeFromEnvironment(environment);
         this.decoBaseUrl = Utils.getDecoBaseFromEnvironment(environment);
         this.accountBaseUrl = Utils.getAccountBaseFromEnvironment(environment);
+
+        if (riskifiedClientBuilder.accountEventQueueConfig != null) {
+            // last, its workers may send as soon as they start
+            this.accountEventQueue = new AccountEventQueue(this, riskifiedClientBuilder.accountEventQueueConfig);
+        }
+    }
+
+    private RiskifiedClient(RiskifiedClient client, RequestOptions options) {
+        this.parent = client.parent != null ? client.parent : client;
+        this.requestOptions = options;
+        this.validation = client.validation;
+        this.environment = client.environment;
+        this.baseUrl = client.baseUrl;
+        this.baseUrlSyncAnalyze = client.baseUrlSyncAnalyze;
+        this.decoBaseUrl = client.decoBaseUrl;
+        this.accountBaseUrl = client.accountBaseUrl;
+        this.shopUrl = client.shopUrl;
+        this.sha256Handler = client.sha256Handler;
+        this.requestTimeout = client.requestTimeout;
+        this.connectionTimeout = client.connectionTimeout;
+        this.socketTimeout = client.socketTimeout;
+        this.maxConnections = client.maxConnections;
+        this.maxConnectionsPerRoute = client.maxConnectionsPerRoute;
+        this.authKey = client.authKey;
+        this.proxyUrl = client.proxyUrl;
+        this.proxyPort = client.proxyPort;
+        this.proxyUsername = client.proxyUsername;
+        this.proxyPassword = client.proxyPassword;
+        this.transportType = client.transportType;
+        this.virtualThreads = client.virtualThreads;
+        this.retryPolicy = client.retryPolicy;
+        this.endpointRetryPolicies = client.endpointRetryPolicies;
+        this.retryBudget = client.retryBudget;
+        this.circuitBreakerConfig = client.circuitBreakerConfig;
+        this.circuitBreakers = client.circuitBreakers;
+        this.bulkheads = client.bulkheads;
+        this.requestScheduler = client.requestScheduler;
+        this.concurrencyLimiters = client.concurrencyLimiters;
+        this.rateLimits = client.rateLimits;
+        this.requestCoalescer = client.requestCoalescer;
+        this.payloadDeduplicator = client.payloadDeduplicator;
+        this.orderDeltaEncoder = client.orderDeltaEncoder;
+        this.accountEventQueue = client.accountEventQueue;
     }
 }
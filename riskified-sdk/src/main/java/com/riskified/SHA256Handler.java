@@ -5,23 +5,78 @@ import javax.crypto.spec.SecretKeySpec;
 import java.security.InvalidKeyException;
 import java.security.Key;
 import java.security.NoSuchAlgorithmException;
-import java.util.Formatter;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * HMAC-SHA256 signer shared by all the threads of a client.
+ * Each signature borrows a Mac from a small lock-free pool of clones of the initialized prototype,
+ * so concurrent requests never wait on each other (or pin virtual threads).
+ */
 public class SHA256Handler {
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final int MAX_POOLED_MACS = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
 
-    private Mac mac;
+    private final Key key;
+    private final Mac prototype;
+    private final ConcurrentLinkedQueue<Mac> pool = new ConcurrentLinkedQueue<Mac>();
+    private final AtomicInteger pooled = new AtomicInteger();
 
     public SHA256Handler(String authKay) throws RiskifiedError {
-        mac = createSHA256Key(authKay);
+        key = new SecretKeySpec(authKay.getBytes(), "HmacSHA256");
+        prototype = createSHA256Key(key);
     }
 
-    public synchronized String createSHA256(byte[] data) throws IllegalStateException {
-        final byte[] hmac = mac.doFinal(data);
-        return toHexString(hmac);
+    public String createSHA256(byte[] data) throws IllegalStateException {
+        return createSHA256(data, 0, data.length);
     }
 
-    private Mac createSHA256Key(String authKey) throws RiskifiedError {
-        Key sk = new SecretKeySpec(authKey.getBytes(), "HmacSHA256");
+    public String createSHA256(byte[] data, int offset, int length) throws IllegalStateException {
+        Mac mac = borrowMac();
+        try {
+            mac.update(data, offset, length);
+            return toHexString(mac.doFinal());
+        } finally {
+            returnMac(mac);
+        }
+    }
+
+    /**
+     * Start an incremental signature, the data can be fed while it is produced.
+     * The returned signer must be completed with {@link Signer#sign()}.
+     * @return a signer holding one of the pooled macs
+     */
+    public Signer signer() {
+        return new Signer(borrowMac());
+    }
+
+    private Mac borrowMac() {
+        Mac mac = pool.poll();
+        if (mac != null) {
+            pooled.decrementAndGet();
+            return mac;
+        }
+        try {
+            return (Mac) prototype.clone();
+        } catch (CloneNotSupportedException e) {
+            try {
+                return createSHA256Key(key);
+            } catch (RiskifiedError error) {
+                throw new IllegalStateException(error);
+            }
+        }
+    }
+
+    private void returnMac(Mac mac) {
+        // doFinal already reset the mac, it is ready for the next signature
+        if (pooled.incrementAndGet() <= MAX_POOLED_MACS) {
+            pool.offer(mac);
+        } else {
+            pooled.decrementAndGet();
+        }
+    }
+
+    private static Mac createSHA256Key(Key sk) throws RiskifiedError {
         Mac mac;
         try {
             mac = Mac.getInstance(sk.getAlgorithm());
@@ -36,16 +91,48 @@ public class SHA256Handler {
         return mac;
     }
 
-    private String toHexString(byte[] bytes) {
-        StringBuilder sb = new StringBuilder(bytes.length * 2);
+    static String toHexString(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int b = bytes[i] & 0xff;
+            hex[i * 2] = HEX_DIGITS[b >>> 4];
+            hex[i * 2 + 1] = HEX_DIGITS[b & 0x0f];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Incremental HMAC-SHA256 signature, not thread safe.
+     */
+    public final class Signer {
+        private Mac mac;
 
-        Formatter formatter = new Formatter(sb);
-        for (byte b : bytes) {
-            formatter.format("%02x", b);
+        private Signer(Mac mac) {
+            this.mac = mac;
         }
 
-        formatter.close();
+        public void update(byte[] data, int offset, int length) {
+            if (mac == null) {
+                throw new IllegalStateException("Signature already completed");
+            }
+            mac.update(data, offset, length);
+        }
 
-        return sb.toString();
+        /**
+         * Complete the signature and release the mac
+         * @return the hex encoded signature
+         */
+        public String sign() {
+            if (mac == null) {
+                throw new IllegalStateException("Signature already completed");
+            }
+            Mac completed = mac;
+            mac = null;
+            try {
+                return toHexString(completed.doFinal());
+            } finally {
+                returnMac(completed);
+            }
+        }
     }
 }
@@ -0,0 +1,389 @@
+package com.riskified;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Json request body signed while it is serialized.
+ * The object graph is written once, UTF-8 encoded straight into fixed size chunks borrowed from a
+ * {@link BufferPool}, and every chunk is fed to the HMAC as it is filled, so the signature is ready when
+ * serialization ends and the body is sent from the same chunks - no intermediate String, no growing
+ * array copies, no second pass for the HMAC.
+ * The entity is repeatable, so the same signed body can be sent again until it is {@link #release() released}.
+ */
+final class SignedJsonEntity extends AbstractHttpEntity {
+    static final int CHUNK_SIZE = 8 * 1024;
+
+    private final BufferPool pool;
+    private final List<byte[]> chunks;
+    private final int lastChunkLength;
+    private final long length;
+    private final String signature;
+
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    private SignedJsonEntity(BufferPool pool, List<byte[]> chunks, int lastChunkLength, long length, String signature) {
+        this.pool = pool;
+        this.chunks = chunks;
+        this.lastChunkLength = lastChunkLength;
+        this.length = length;
+        this.signature = signature;
+        setContentType(ContentType.APPLICATION_JSON.toString());
+    }
+
+    /**
+     * Serialize and sign the data in one pass
+     * @param data the request object
+     * @param sha256Handler the signer of the client
+     * @param pool the pool lending the body chunks
+     * @return the signed body, to be released once the request is over
+     * @throws IOException error serializing the data
+     */
+    static SignedJsonEntity create(Object data, SHA256Handler sha256Handler, BufferPool pool) throws IOException {
+        SpoolWriter spool = new SpoolWriter(sha256Handler.signer(), pool);
+        boolean serialized = false;
+        String signature;
+        try {
+            JSONFormater.toJson(data, spool);
+            serialized = true;
+        } finally {
+            // always completed, so the mac goes back to the pool even when serialization failed
+            signature = spool.finish();
+            if (!serialized) {
+                for (byte[] chunk : spool.chunks) {
+                    pool.release(chunk);
+                }
+            }
+        }
+        return new SignedJsonEntity(pool, spool.chunks, spool.position, spool.length, signature);
+    }
+
+    /**
+     * Start a body assembled from json fragments already encoded, e.g. orders serialized one by one
+     * @param sha256Handler the signer of the client
+     * @param pool the pool lending the body chunks
+     * @return the builder, to be built or discarded
+     */
+    static Builder builder(SHA256Handler sha256Handler, BufferPool pool) {
+        return new Builder(new SpoolWriter(sha256Handler.signer(), pool), pool);
+    }
+
+    /**
+     * @return the hex HMAC-SHA256 of the body, the X-RISKIFIED-HMAC-SHA256 header value
+     */
+    String getSignature() {
+        return signature;
+    }
+
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    public long getContentLength() {
+        return length;
+    }
+
+    public InputStream getContent() {
+        checkNotReleased();
+        return new ChunksInputStream();
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        checkNotReleased();
+        int last = chunks.size() - 1;
+        for (int i = 0; i <= last; i++) {
+            out.write(chunks.get(i), 0, i == last ? lastChunkLength : CHUNK_SIZE);
+        }
+        out.flush();
+    }
+
+    public boolean isStreaming() {
+        return false;
+    }
+
+    /**
+     * Give the chunks back to the pool, the entity can't be sent afterwards
+     */
+    void release() {
+        if (released.compareAndSet(false, true)) {
+            for (byte[] chunk : chunks) {
+                pool.release(chunk);
+            }
+        }
+    }
+
+    private void checkNotReleased() {
+        if (released.get()) {
+            throw new IllegalStateException("The request body was already released");
+        }
+    }
+
+    private int chunkLength(int index) {
+        return index == chunks.size() - 1 ? lastChunkLength : CHUNK_SIZE;
+    }
+
+    /**
+     * UTF-8 encoder writing into the pooled chunks, invalid surrogates are replaced by '?' like OutputStreamWriter does
+     */
+    private static final class SpoolWriter extends Writer {
+        private final SHA256Handler.Signer signer;
+        private final BufferPool pool;
+        private final List<byte[]> chunks = new ArrayList<byte[]>();
+        private byte[] current;
+        private int position;
+        private long length;
+        private char highSurrogate;
+
+        SpoolWriter(SHA256Handler.Signer signer, BufferPool pool) {
+            this.signer = signer;
+            this.pool = pool;
+            current = pool.acquire(CHUNK_SIZE);
+            chunks.add(current);
+        }
+
+        @Override
+        public void write(int c) {
+            encode((char) c);
+        }
+
+        @Override
+        public void write(char[] buffer, int offset, int count) {
+            for (int i = offset, end = offset + count; i < end; i++) {
+                char c = buffer[i];
+                if (c < 0x80 && highSurrogate == 0 && position < CHUNK_SIZE) {
+                    current[position++] = (byte) c;
+                    length++;
+                } else {
+                    encode(c);
+                }
+            }
+        }
+
+        @Override
+        public void write(String value, int offset, int count) {
+            for (int i = offset, end = offset + count; i < end; i++) {
+                char c = value.charAt(i);
+                if (c < 0x80 && highSurrogate == 0 && position < CHUNK_SIZE) {
+                    current[position++] = (byte) c;
+                    length++;
+                } else {
+                    encode(c);
+                }
+            }
+        }
+
+        private void encode(char c) {
+            if (highSurrogate != 0) {
+                char high = highSurrogate;
+                highSurrogate = 0;
+                if (Character.isLowSurrogate(c)) {
+                    int codePoint = Character.toCodePoint(high, c);
+                    put(0xf0 | (codePoint >> 18));
+                    put(0x80 | ((codePoint >> 12) & 0x3f));
+                    put(0x80 | ((codePoint >> 6) & 0x3f));
+                    put(0x80 | (codePoint & 0x3f));
+                    return;
+                }
+                put('?');
+            }
+            if (c < 0x80) {
+                put(c);
+            } else if (c < 0x800) {
+                put(0xc0 | (c >> 6));
+                put(0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c)) {
+                highSurrogate = c;
+            } else if (Character.isLowSurrogate(c)) {
+                put('?');
+            } else {
+                put(0xe0 | (c >> 12));
+                put(0x80 | ((c >> 6) & 0x3f));
+                put(0x80 | (c & 0x3f));
+            }
+        }
+
+        private void put(int b) {
+            if (position == CHUNK_SIZE) {
+                signer.update(current, 0, CHUNK_SIZE);
+                current = pool.acquire(CHUNK_SIZE);
+                chunks.add(current);
+                position = 0;
+            }
+            current[position++] = (byte) b;
+            length++;
+        }
+
+        /**
+         * Append bytes already UTF-8 encoded
+         */
+        void write(byte[] data, int offset, int count) {
+            while (count > 0) {
+                if (position == CHUNK_SIZE) {
+                    // signs the full chunk and moves to a new one
+                    put(data[offset++]);
+                    count--;
+                    continue;
+                }
+                int copied = Math.min(count, CHUNK_SIZE - position);
+                System.arraycopy(data, offset, current, position, copied);
+                position += copied;
+                length += copied;
+                offset += copied;
+                count -= copied;
+            }
+        }
+
+        /**
+         * Append the remaining bytes of a buffer, already UTF-8 encoded
+         */
+        void write(ByteBuffer data) {
+            while (data.hasRemaining()) {
+                if (position == CHUNK_SIZE) {
+                    put(data.get());
+                    continue;
+                }
+                int copied = Math.min(data.remaining(), CHUNK_SIZE - position);
+                data.get(current, position, copied);
+                position += copied;
+                length += copied;
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        /**
+         * Sign the last chunk and complete the signature
+         */
+        String finish() {
+            if (highSurrogate != 0) {
+                highSurrogate = 0;
+                put('?');
+            }
+            signer.update(current, 0, position);
+            return signer.sign();
+        }
+    }
+
+    /**
+     * A body growing fragment by fragment, signed as it grows like a serialized one
+     */
+    static final class Builder {
+        private final SpoolWriter spool;
+        private final BufferPool pool;
+
+        private Builder(SpoolWriter spool, BufferPool pool) {
+            this.spool = spool;
+            this.pool = pool;
+        }
+
+        /**
+         * @param json UTF-8 encoded json
+         * @return this builder
+         */
+        Builder append(byte[] json) {
+            spool.write(json, 0, json.length);
+            return this;
+        }
+
+        /**
+         * @param json UTF-8 encoded json, from the position to the limit of the buffer, the buffer is consumed
+         * @return this builder
+         */
+        Builder append(ByteBuffer json) {
+            spool.write(json);
+            return this;
+        }
+
+        /**
+         * @param ascii json made of ascii characters only, e.g. punctuation
+         * @return this builder
+         */
+        Builder append(String ascii) {
+            spool.write(ascii, 0, ascii.length());
+            return this;
+        }
+
+        /**
+         * @return the bytes appended so far
+         */
+        long length() {
+            return spool.length;
+        }
+
+        /**
+         * @return the signed body, to be released once the request is over
+         */
+        SignedJsonEntity build() {
+            String signature = spool.finish();
+            return new SignedJsonEntity(pool, spool.chunks, spool.position, spool.length, signature);
+        }
+
+        /**
+         * Give the chunks back without building the body
+         */
+        void discard() {
+            spool.finish();
+            for (byte[] chunk : spool.chunks) {
+                pool.release(chunk);
+            }
+        }
+    }
+
+    private final class ChunksInputStream extends InputStream {
+        private int chunk;
+        private int position;
+
+        @Override
+        public int read() {
+            if (!advance()) {
+                return -1;
+            }
+            return chunks.get(chunk)[position++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) {
+            if (count == 0) {
+                return 0;
+            }
+            if (!advance()) {
+                return -1;
+            }
+            int copied = Math.min(count, chunkLength(chunk) - position);
+            System.arraycopy(chunks.get(chunk), position, buffer, offset, copied);
+            position += copied;
+            return copied;
+        }
+
+        @Override
+        public int available() {
+            return advance() ? chunkLength(chunk) - position : 0;
+        }
+
+        private boolean advance() {
+            while (position == chunkLength(chunk)) {
+                if (chunk == chunks.size() - 1) {
+                    return false;
+                }
+                chunk++;
+                position = 0;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.riskified;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentEncoder;
+import org.apache.http.nio.ContentEncoderChannel;
+import org.apache.http.nio.FileContentEncoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.entity.HttpAsyncContentProducer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Request body streamed from a {@link SpooledPayload} file.
+ * On the non-blocking transport the body is handed to the connection with FileChannel.transferTo, a zero-copy
+ * sendfile on plain connections, and a bounded copy when the connection encrypts. The blocking transport copies the
+ * file to the connection stream through a small buffer. The entity is repeatable, every attempt reads the file again.
+ */
+final class SpoolFileEntity extends AbstractHttpEntity implements HttpAsyncContentProducer {
+    private final SpooledPayload payload;
+
+    // the file of the attempt in progress on the non-blocking transport
+    private FileChannel channel;
+    private long position;
+
+    SpoolFileEntity(SpooledPayload payload) {
+        this.payload = payload;
+        setContentType(ContentType.APPLICATION_JSON.toString());
+    }
+
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    public long getContentLength() {
+        return payload.getLength();
+    }
+
+    public InputStream getContent() throws IOException {
+        FileChannel file = open();
+        file.position(payload.getOffset());
+        return Channels.newInputStream(file);
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        try (FileChannel file = open()) {
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = payload.getOffset();
+            long end = position + payload.getLength();
+            while (position < end) {
+                position += file.transferTo(position, end - position, target);
+            }
+        }
+        out.flush();
+    }
+
+    public boolean isStreaming() {
+        return false;
+    }
+
+    public void produceContent(ContentEncoder encoder, IOControl ioControl) throws IOException {
+        if (channel == null) {
+            channel = open();
+            position = payload.getOffset();
+        }
+        long remaining = payload.getOffset() + payload.getLength() - position;
+        long transferred;
+        if (encoder instanceof FileContentEncoder) {
+            transferred = ((FileContentEncoder) encoder).transfer(channel, position, remaining);
+        } else {
+            transferred = channel.transferTo(position, remaining, new ContentEncoderChannel(encoder));
+        }
+        position += Math.max(0, transferred);
+        if (position == payload.getOffset() + payload.getLength()) {
+            encoder.complete();
+            close();
+        }
+    }
+
+    /**
+     * Called after every attempt, the next one reads the file from the start
+     */
+    public void close() throws IOException {
+        FileChannel file = channel;
+        channel = null;
+        if (file != null) {
+            file.close();
+        }
+    }
+
+    private FileChannel open() throws IOException {
+        FileChannel file = FileChannel.open(payload.getFile(), StandardOpenOption.READ);
+        if (file.size() < payload.getOffset() + payload.getLength()) {
+            file.close();
+            throw new IOException("The spool file " + payload.getFile() + " was truncated");
+        }
+        return file;
+    }
+}
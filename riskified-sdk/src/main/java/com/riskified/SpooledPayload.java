@@ -0,0 +1,171 @@
+package com.riskified;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A request body serialized and signed once into a spool file, to be sent again later without the objects,
+ * e.g. a historical or chargeback batch sent again after an incident.
+ * The file starts with a fixed size header line holding the endpoint path and the X-RISKIFIED-HMAC-SHA256 value,
+ * followed by the json body. The body is streamed from the file when it is sent, it is never loaded in memory.
+ * The signature is the one of the auth key used to spool the body, a spool file must be sent by a client of the
+ * same shop and key.
+ */
+public class SpooledPayload {
+    static final int HEADER_SIZE = 256;
+    private static final String MAGIC = "RSKSPOOL1";
+    private static final int SIGNATURE_LENGTH = 64;
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final Path file;
+    private final String path;
+    private final String signature;
+    private final long length;
+
+    private SpooledPayload(Path file, String path, String signature, long length) {
+        this.file = file;
+        this.path = path;
+        this.signature = signature;
+        this.length = length;
+    }
+
+    /**
+     * Open a spool file written by a client, e.g. after a restart
+     * @param file the spool file
+     * @return the payload, ready to be sent
+     * @throws IOException error reading the file or the file isn't a spool file
+     */
+    public static SpooledPayload open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+            }
+            String[] fields = new String(header.array(), 0, header.position(), US_ASCII).trim().split(" ");
+            if (header.hasRemaining() || fields.length != 3 || !fields[0].equals(MAGIC)
+                    || fields[1].length() != SIGNATURE_LENGTH || !fields[2].startsWith("/")) {
+                throw new IOException("Not a spooled payload: " + file);
+            }
+            return new SpooledPayload(file, fields[2], fields[1], channel.size() - HEADER_SIZE);
+        }
+    }
+
+    /**
+     * Serialize and sign the data into a spool file, the file is replaced once complete
+     * @param path the path of the endpoint, e.g. "/api/historical"
+     * @param data the request object
+     * @param sha256Handler the signer of the client
+     * @param file the spool file
+     * @return the payload
+     * @throws IOException error writing the file
+     */
+    static SpooledPayload write(String path, Object data, SHA256Handler sha256Handler, Path file) throws IOException {
+        if (MAGIC.length() + SIGNATURE_LENGTH + path.length() + 3 > HEADER_SIZE || path.indexOf(' ') >= 0) {
+            throw new IllegalArgumentException("Invalid endpoint path: " + path);
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        String signature;
+        long length;
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            // the header is written last, once the signature is known
+            channel.position(HEADER_SIZE);
+            SigningOutputStream body = new SigningOutputStream(Channels.newOutputStream(channel), sha256Handler.signer());
+            try {
+                Writer writer = new OutputStreamWriter(body, UTF_8);
+                JSONFormater.toJson(data, writer);
+            } finally {
+                // always completed, so the mac goes back to the pool even when serialization failed
+                signature = body.signer.sign();
+            }
+            length = body.count;
+            ByteBuffer header = ByteBuffer.wrap(header(path, signature));
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return new SpooledPayload(file, path, signature, length);
+    }
+
+    private static byte[] header(String path, String signature) {
+        byte[] header = new byte[HEADER_SIZE];
+        Arrays.fill(header, (byte) ' ');
+        byte[] fields = (MAGIC + " " + signature + " " + path).getBytes(US_ASCII);
+        System.arraycopy(fields, 0, header, 0, fields.length);
+        header[HEADER_SIZE - 1] = '\n';
+        return header;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * @return the path of the endpoint the body is sent to, e.g. "/api/historical"
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return the hex HMAC-SHA256 of the body, the X-RISKIFIED-HMAC-SHA256 header value
+     */
+    public String getSignature() {
+        return signature;
+    }
+
+    /**
+     * @return the length of the json body, without the header
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @return the position of the json body in the file
+     */
+    long getOffset() {
+        return HEADER_SIZE;
+    }
+
+    /**
+     * Signs the bytes on their way to the file
+     */
+    private static final class SigningOutputStream extends FilterOutputStream {
+        private final SHA256Handler.Signer signer;
+        private long count;
+
+        SigningOutputStream(OutputStream out, SHA256Handler.Signer signer) {
+            super(out);
+            this.signer = signer;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException {
+            signer.update(data, offset, length);
+            out.write(data, offset, length);
+            count += length;
+        }
+    }
+}
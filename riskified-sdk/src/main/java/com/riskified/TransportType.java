@@ -0,0 +1,16 @@
+package com.riskified;
+
+/**
+ * The HTTP engine used by RiskifiedClient to talk to Riskified.
+ */
+public enum TransportType {
+    /**
+     * Pooled blocking client, every in-flight call occupies a thread.
+     */
+    BLOCKING,
+    /**
+     * Event loop based client, in-flight calls don't occupy threads.
+     * The asynchronous api calls (e.g. createOrderAsync) only use a thread to validate, serialize and sign.
+     */
+    NON_BLOCKING
+}
@@ -0,0 +1,104 @@
+package com.riskified.codegen;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+
+/**
+ * Base class of the adapters generated by the riskified-codegen annotation processor.
+ * Holds the runtime helpers the generated code relies on.
+ * @param <T> the model type
+ */
+public abstract class GeneratedTypeAdapter<T> extends TypeAdapter<T> {
+    // the class of the adapters Gson builds by reflection, found through the public api only
+    private static final Class<?> REFLECTIVE_ADAPTER = new Gson().getAdapter(ReflectionProbe.class).getClass();
+
+    protected final Gson gson;
+    private final TypeAdapterFactory factory;
+    private final Class<T> type;
+    private volatile TypeAdapter<T> reflectiveAdapter;
+
+    protected GeneratedTypeAdapter(Gson gson, TypeAdapterFactory factory, Class<T> type) {
+        this.gson = gson;
+        this.factory = factory;
+        this.type = type;
+    }
+
+    /**
+     * The adapter Gson would have used without the generated factory.
+     * Used to read types the generated code can't instantiate (abstract or without a no-arg constructor).
+     * @return the reflective adapter
+     */
+    protected TypeAdapter<T> reflectiveAdapter() {
+        TypeAdapter<T> adapter = reflectiveAdapter;
+        if (adapter == null) {
+            adapter = gson.getDelegateAdapter(factory, TypeToken.get(type));
+            reflectiveAdapter = adapter;
+        }
+        return adapter;
+    }
+
+    /**
+     * Write a value of a non final declared type, choosing between the declared and the runtime type adapter
+     * the same way Gson's reflective adapters do. Generated adapters count as reflective ones,
+     * so polymorphic types (e.g. payment details) keep using their declared type adapter.
+     */
+    @SuppressWarnings("unchecked")
+    protected static void writeRuntime(Gson gson, JsonWriter out, TypeAdapter<?> declared, Class<?> declaredClass,
+                                       Object value) throws IOException {
+        TypeAdapter chosen = declared;
+        if (value != null && value.getClass() != declaredClass) {
+            TypeAdapter<?> runtime = gson.getAdapter(value.getClass());
+            if (!isReflective(runtime)) {
+                chosen = runtime;
+            } else if (!isReflective(declared)) {
+                chosen = declared;
+            } else {
+                chosen = runtime;
+            }
+        }
+        chosen.write(out, value);
+    }
+
+    private static boolean isReflective(TypeAdapter<?> adapter) {
+        return adapter instanceof GeneratedTypeAdapter || REFLECTIVE_ADAPTER.isInstance(adapter);
+    }
+
+    private static final class ReflectionProbe {
+        private int value;
+    }
+
+    /**
+     * Fields without a matching accessor are reached through a cached Field.
+     */
+    protected static Field field(Class<?> owner, String name) {
+        try {
+            Field field = owner.getDeclaredField(name);
+            field.setAccessible(true);
+            return field;
+        } catch (NoSuchFieldException e) {
+            throw new IllegalStateException("Generated json adapter is out of date, missing field " + owner.getName() + "." + name, e);
+        }
+    }
+
+    protected static Object get(Field field, Object target) {
+        try {
+            return field.get(target);
+        } catch (IllegalAccessException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    protected static void set(Field field, Object target, Object value) {
+        try {
+            field.set(target, value);
+        } catch (IllegalAccessException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
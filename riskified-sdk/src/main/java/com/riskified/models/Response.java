@@ -8,11 +8,21 @@ public class Response {
     private Integer received;
     private List<String> warnings;
     private Error error;
+    private transient boolean deduplicated;
 
     public Response() {
 
     }
 
+    public Response(Response response) {
+        this.order = response.order;
+        this.decision = response.decision;
+        this.received = response.received;
+        this.warnings = response.warnings;
+        this.error = response.error;
+        this.deduplicated = response.deduplicated;
+    }
+
     public Response(CheckoutResponse checkoutResponse) {
         this.order = checkoutResponse.getCheckout();
         this.received = checkoutResponse.getReceived();
@@ -59,4 +69,16 @@ public class Response {
     public void setError(Error error) {
         this.error = error;
     }
+
+    /**
+     * @return true when the call wasn't sent because the same payload was sent for the order recently,
+     * the response is then the one of that earlier call
+     */
+    public boolean isDeduplicated() {
+        return deduplicated;
+    }
+
+    public void setDeduplicated(boolean deduplicated) {
+        this.deduplicated = deduplicated;
+    }
 }
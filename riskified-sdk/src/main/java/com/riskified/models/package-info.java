@@ -0,0 +1,7 @@
+/**
+ * Json adapters for this package are generated at compile time, see {@link com.riskified.codegen.processor.GenerateJsonAdapters}.
+ */
+@GenerateJsonAdapters
+package com.riskified.models;
+
+import com.riskified.codegen.processor.GenerateJsonAdapters;
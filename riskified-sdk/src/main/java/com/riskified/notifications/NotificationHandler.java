@@ -1,10 +1,16 @@
 package com.riskified.notifications;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
 
 import javax.servlet.http.HttpServletRequest;
 
 import com.google.gson.*;
+import com.riskified.BufferPool;
 import com.riskified.RiskifiedError;
 import com.riskified.SHA256Handler;
 
@@ -13,6 +19,8 @@ import com.riskified.SHA256Handler;
  * see http://apiref.riskified.com/curl/#notifications
  */
 public class NotificationHandler {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
     private Gson gson;
     private SHA256Handler sha256Handler;
 
@@ -22,7 +30,10 @@ public class NotificationHandler {
      * @throws RiskifiedError When there was a critical error, look at the exception to see more data
      */
     public NotificationHandler(String authKey) throws RiskifiedError {
-        gson = new GsonBuilder().setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES).create();
+        gson = new GsonBuilder().setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
+                .registerTypeAdapterFactory(new com.riskified.models.GeneratedJsonAdapters())
+                .registerTypeAdapterFactory(new GeneratedJsonAdapters())
+                .create();
         this.sha256Handler = new SHA256Handler(authKey);
     }
 
@@ -37,7 +48,7 @@ public class NotificationHandler {
      * @throws JsonSyntaxException json syntax exception
      */
     public Notification toObject(String data, String hash) throws AuthError, JsonSyntaxException, IllegalStateException, UnsupportedEncodingException {
-        String calcHash = sha256Handler.createSHA256(data.getBytes("UTF-8"));
+        String calcHash = createSHA256(data);
         if (hash.equals(calcHash))
             return gson.fromJson(data, Notification.class);
         else
@@ -57,6 +68,27 @@ public class NotificationHandler {
         return this.toObject(jb.toString(), hash);
     }
 
+    private String createSHA256(String data) throws UnsupportedEncodingException {
+        int maxLength = data.length() * 3;
+        if (maxLength > BufferPool.MAX_BUFFER_SIZE) {
+            return sha256Handler.createSHA256(data.getBytes("UTF-8"));
+        }
+        // small notifications are encoded into a pooled buffer, replacing invalid characters like getBytes does
+        BufferPool pool = BufferPool.shared();
+        byte[] buffer = pool.acquire(maxLength);
+        try {
+            CharsetEncoder encoder = UTF_8.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            ByteBuffer bytes = ByteBuffer.wrap(buffer);
+            encoder.encode(CharBuffer.wrap(data), bytes, true);
+            encoder.flush(bytes);
+            return sha256Handler.createSHA256(buffer, 0, bytes.position());
+        } finally {
+            pool.release(buffer);
+        }
+    }
+
     private StringBuffer getPostBody(HttpServletRequest req) throws IOException {
         StringBuffer jb = new StringBuffer();
         String line;
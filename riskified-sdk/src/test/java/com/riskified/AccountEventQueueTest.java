@@ -0,0 +1,106 @@
+package com.riskified;
+
+import com.riskified.models.Login;
+import com.riskified.models.Logout;
+import org.junit.Test;
+
+import static com.riskified.TestClients.*;
+import static org.junit.Assert.*;
+
+public class AccountEventQueueTest {
+    private static Login login(String customerId) {
+        return new Login(customerId, customerId + "@example.com", null, null, null);
+    }
+
+    @Test
+    public void testAccountEventQueue_sendsTheActionsInTheBackground() throws Exception {
+        TestServer server = new TestServer().reply(200, "not a json body");
+        RiskifiedClient client = client(server, builder().setAccountEventQueue(new AccountEventQueueConfig.AccountEventQueueConfigBuilder().build()));
+        try {
+            final AccountEventQueue queue = client.getAccountEventQueue();
+            assertTrue(queue.login(login("1")));
+            assertTrue(queue.logout(new Logout("2", null, null)));
+            waitFor(() -> queue.getSentEvents() == 2);
+            assertEquals(0, queue.getFailedEvents());
+            assertEquals(2, server.getRequestCount());
+            assertTrue(String.join("", server.getRequestBodies()).contains("\"customer_id\":\"2\""));
+        } finally {
+            client.close();
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testAccountEventQueue_dropsTheNewestActionWhenFull() throws Exception {
+        TestServer server = new TestServer().delay(300);
+        RiskifiedClient client = client(server, builder().setAccountEventQueue(new AccountEventQueueConfig.AccountEventQueueConfigBuilder()
+                .setCapacity(1).setWorkers(1).build()));
+        try {
+            final AccountEventQueue queue = client.getAccountEventQueue();
+            assertTrue(queue.login(login("1")));
+            waitFor(() -> server.getRequestCount() == 1);
+            assertTrue(queue.login(login("2")));
+            assertFalse(queue.login(login("3")));
+            assertEquals(1, queue.getDroppedEvents());
+            waitFor(() -> queue.getSentEvents() == 2);
+            assertTrue(server.getRequestBodies().get(1).contains("\"customer_id\":\"2\""));
+        } finally {
+            client.close();
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testAccountEventQueue_dropsTheOldestActionWhenFull() throws Exception {
+        TestServer server = new TestServer().delay(300);
+        RiskifiedClient client = client(server, builder().setAccountEventQueue(new AccountEventQueueConfig.AccountEventQueueConfigBuilder()
+                .setCapacity(1).setWorkers(1).setDropPolicy(AccountEventQueueConfig.DropPolicy.DROP_OLDEST).build()));
+        try {
+            final AccountEventQueue queue = client.getAccountEventQueue();
+            assertTrue(queue.login(login("1")));
+            waitFor(() -> server.getRequestCount() == 1);
+            assertTrue(queue.login(login("2")));
+            assertTrue(queue.login(login("3")));
+            assertEquals(1, queue.getDroppedEvents());
+            waitFor(() -> queue.getSentEvents() == 2);
+            assertTrue(server.getRequestBodies().get(1).contains("\"customer_id\":\"3\""));
+        } finally {
+            client.close();
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testAccountEventQueue_countsTheRefusedActions() throws Exception {
+        TestServer server = new TestServer().reply(400, "{\"error\":{\"message\":\"bad\"}}");
+        RiskifiedClient client = client(server, builder().setAccountEventQueue(new AccountEventQueueConfig.AccountEventQueueConfigBuilder().build()));
+        try {
+            final AccountEventQueue queue = client.getAccountEventQueue();
+            queue.login(login("1"));
+            waitFor(() -> queue.getFailedEvents() == 1);
+            assertEquals(0, queue.getSentEvents());
+        } finally {
+            client.close();
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testClose_sendsTheActionsLeft() throws Exception {
+        TestServer server = new TestServer().delay(50);
+        RiskifiedClient client = client(server, builder().setAccountEventQueue(new AccountEventQueueConfig.AccountEventQueueConfigBuilder()
+                .setWorkers(1).build()));
+        AccountEventQueue queue = client.getAccountEventQueue();
+        try {
+            for (int i = 0; i < 5; i++) {
+                queue.login(login(String.valueOf(i)));
+            }
+        } finally {
+            client.close();
+            server.stop();
+        }
+        assertEquals(5, queue.getSentEvents());
+        assertEquals(0, queue.getQueuedEvents());
+        assertFalse(queue.login(login("6")));
+    }
+}
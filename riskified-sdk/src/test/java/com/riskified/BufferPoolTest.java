@@ -0,0 +1,74 @@
+package com.riskified;
+
+import com.riskified.models.Order;
+import com.riskified.validations.Validation;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BufferPoolTest {
+
+    @Test
+    public void testAcquire_roundsUpToTheSizeClass() {
+        BufferPool pool = new BufferPool(1024 * 1024);
+        assertEquals(BufferPool.MIN_BUFFER_SIZE, pool.acquire(1).length);
+        assertEquals(8 * 1024, pool.acquire(5000).length);
+        assertEquals(8 * 1024, pool.acquire(8 * 1024).length);
+        assertEquals(BufferPool.MAX_BUFFER_SIZE + 1, pool.acquire(BufferPool.MAX_BUFFER_SIZE + 1).length);
+        assertEquals(4, pool.getMisses());
+        assertEquals(0, pool.getHits());
+    }
+
+    @Test
+    public void testRelease_buffersAreReused() {
+        BufferPool pool = new BufferPool(1024 * 1024);
+        byte[] buffer = pool.acquire(8 * 1024);
+        pool.release(buffer);
+        assertSame(buffer, pool.acquire(6000));
+        assertEquals(1, pool.getHits());
+        assertEquals(1, pool.getMisses());
+        assertEquals(0, pool.getPooledBytes());
+    }
+
+    @Test
+    public void testRelease_isBounded() {
+        BufferPool pool = new BufferPool(16 * 1024);
+        for (int i = 0; i < 5; i++) {
+            pool.release(new byte[8 * 1024]);
+        }
+        pool.release(new byte[5000]);
+        pool.release(new byte[BufferPool.MAX_BUFFER_SIZE * 2]);
+        pool.release(null);
+        assertEquals(16 * 1024, pool.getPooledBytes());
+    }
+
+    @Test
+    public void testShared_isNotMissedAfterTheWarmUp() throws Exception {
+        TestServer server = new TestServer();
+        try {
+            for (TransportType transport : TransportType.values()) {
+                RiskifiedClient client = new RiskifiedClient.RiskifiedClientBuilder("test.pass.com",
+                        "ad6b6e6376fb1e3521e44ca28451d58b9605d932", Environment.DEBUG).setValidation(Validation.NONE)
+                        .setTransportType(transport).build();
+                client.setBaseUrl(server.getUrl());
+                try {
+                    Order order = new Order();
+                    order.setId("1");
+                    for (int i = 0; i < 20; i++) {
+                        client.createOrder(order);
+                    }
+                    long misses = BufferPool.shared().getMisses();
+                    for (int i = 0; i < 200; i++) {
+                        client.createOrder(order);
+                    }
+                    // the request and response buffers all come back to the pool
+                    assertEquals(transport.name(), misses, BufferPool.shared().getMisses());
+                } finally {
+                    client.close();
+                }
+            }
+        } finally {
+            server.stop();
+        }
+    }
+}
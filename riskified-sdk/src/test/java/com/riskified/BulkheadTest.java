@@ -0,0 +1,49 @@
+package com.riskified;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BulkheadTest {
+
+    @Test
+    public void testAcquire_rejectsOnceFull() throws Exception {
+        Bulkhead bulkhead = new Bulkhead(EndpointGroup.HISTORICAL,
+                new BulkheadConfig.BulkheadConfigBuilder().setMaxConcurrentCalls(2).build());
+        bulkhead.acquire(Long.MAX_VALUE);
+        bulkhead.acquire(Long.MAX_VALUE);
+        assertEquals(0, bulkhead.getAvailableCalls());
+        try {
+            bulkhead.acquire(Long.MAX_VALUE);
+            fail("the bulkhead is full");
+        } catch (BulkheadFullException e) {
+            assertEquals(EndpointGroup.HISTORICAL, e.getGroup());
+        }
+        assertEquals(1, bulkhead.getRejectedCalls());
+        bulkhead.release();
+        bulkhead.acquire(Long.MAX_VALUE);
+    }
+
+    @Test
+    public void testAcquire_waitIsCappedByTheDeadline() throws Exception {
+        Bulkhead bulkhead = new Bulkhead(EndpointGroup.DECISION,
+                new BulkheadConfig.BulkheadConfigBuilder().setMaxConcurrentCalls(1).setMaxWaitMillis(10000).build());
+        bulkhead.acquire(Long.MAX_VALUE);
+        long start = System.currentTimeMillis();
+        try {
+            bulkhead.acquire(50);
+            fail("the bulkhead is full");
+        } catch (BulkheadFullException expected) {
+            assertTrue(System.currentTimeMillis() - start < 5000);
+        }
+    }
+
+    @Test
+    public void testEndpointGroups() {
+        assertEquals(EndpointGroup.DECISION, EndpointGroup.forPath("/api/checkout_create"));
+        assertEquals(EndpointGroup.LIFECYCLE, EndpointGroup.forPath("/api/refund"));
+        assertEquals(EndpointGroup.ACCOUNT, EndpointGroup.forPath("/customers/wishlist"));
+        assertEquals(EndpointGroup.HISTORICAL, EndpointGroup.forPath("/api/historical"));
+        assertNull(EndpointGroup.forPath("/api/unknown"));
+    }
+}
@@ -0,0 +1,97 @@
+package com.riskified;
+
+import org.apache.http.client.HttpResponseException;
+import org.junit.Test;
+
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+
+import static org.junit.Assert.*;
+
+public class CircuitBreakerTest {
+
+    private static CircuitBreaker breaker(long openMillis) {
+        CircuitBreakerConfig config = new CircuitBreakerConfig.CircuitBreakerConfigBuilder()
+                .setMinimumCalls(4).setFailureRateThreshold(0.5).setOpenMillis(openMillis).setHalfOpenProbes(2).build();
+        return new CircuitBreaker("http://localhost", config);
+    }
+
+    @Test
+    public void testOpensOnceTheFailureRateIsReached() throws Exception {
+        CircuitBreaker breaker = breaker(60000);
+        breaker.onResult(breaker.acquire(), null);
+        breaker.onResult(breaker.acquire(), new HttpResponseException(504, "Temporary error, please retry"));
+        breaker.onResult(breaker.acquire(), null);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.onResult(breaker.acquire(), new ConnectException());
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(0.5, breaker.getFailureRate(), 0.0001);
+        try {
+            breaker.acquire();
+            fail("an open breaker must fail fast");
+        } catch (CircuitBreakerOpenException expected) {
+            assertEquals("http://localhost", expected.getBaseUrl());
+        }
+    }
+
+    @Test
+    public void testClientErrorsAreNotFailures() throws Exception {
+        CircuitBreaker breaker = breaker(60000);
+        for (int i = 0; i < 10; i++) {
+            breaker.onResult(breaker.acquire(), new HttpResponseException(400, "bad request"));
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.getFailureRate(), 0.0001);
+    }
+
+    @Test
+    public void testHalfOpenProbesCloseOrReopenTheBreaker() throws Exception {
+        CircuitBreaker breaker = breaker(0);
+        for (int i = 0; i < 4; i++) {
+            breaker.onResult(breaker.acquire(), new ConnectException());
+        }
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        long first = breaker.acquire();
+        long second = breaker.acquire();
+        try {
+            breaker.acquire();
+            fail("only the probes go through while half-open");
+        } catch (CircuitBreakerOpenException expected) {
+        }
+        breaker.onResult(first, null);
+        breaker.onResult(second, new ConnectException());
+        assertEquals("a failed probe reopens the breaker", CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        breaker.onResult(breaker.acquire(), null);
+        breaker.onResult(breaker.acquire(), null);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testAbortsAreNeitherSuccessesNorFailures() throws Exception {
+        CircuitBreaker breaker = breaker(0);
+        for (int i = 0; i < 4; i++) {
+            breaker.onResult(breaker.acquire(), new ConnectException());
+        }
+        long first = breaker.acquire();
+        long second = breaker.acquire();
+        breaker.onResult(first, new InterruptedIOException("Riskified request was cancelled"));
+        breaker.onResult(second, new DeadlineExceededException());
+        assertEquals("aborted probes don't close the breaker", CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        // the aborted probes gave their slots back
+        breaker.onResult(breaker.acquire(), null);
+        breaker.onResult(breaker.acquire(), null);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        breaker.onResult(breaker.acquire(), new ConnectException());
+        for (int i = 0; i < 10; i++) {
+            breaker.onAbort(breaker.acquire());
+        }
+        assertEquals("aborts don't dilute the failure rate", 1.0, breaker.getFailureRate(), 0.0001);
+        breaker.onResult(breaker.acquire(), new SocketTimeoutException());
+        assertEquals(1.0, breaker.getFailureRate(), 0.0001);
+    }
+}
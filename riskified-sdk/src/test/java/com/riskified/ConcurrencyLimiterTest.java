@@ -0,0 +1,116 @@
+package com.riskified;
+
+import java.net.SocketTimeoutException;
+
+import com.riskified.models.Order;
+import org.apache.http.client.HttpResponseException;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ConcurrencyLimiterTest {
+    private static final long MILLIS = 1000000;
+
+    private static ConcurrencyLimiter limiter(int initialLimit) {
+        return new ConcurrencyLimiter(EndpointGroup.DECISION, new ConcurrencyLimitConfig.ConcurrencyLimitConfigBuilder()
+                .setInitialLimit(initialLimit).setMinLimit(2).setMaxLimit(100).build());
+    }
+
+    @Test
+    public void testAcquire_rejectsOverTheLimit() throws Exception {
+        ConcurrencyLimiter limiter = limiter(2);
+        long first = limiter.acquire();
+        limiter.acquire();
+        try {
+            limiter.acquire();
+            fail("the limit is reached");
+        } catch (ConcurrencyLimitExceededException e) {
+            assertEquals(EndpointGroup.DECISION, e.getGroup());
+            assertEquals(2, e.getLimit());
+        }
+        assertEquals(1, limiter.getRejectedCalls());
+        limiter.onResult(first, new HttpResponseException(400, "bad request"));
+        assertEquals(1, limiter.getInFlight());
+        limiter.acquire();
+    }
+
+    @Test
+    public void testOnSample_growsWhileTheLatencyIsStable() {
+        ConcurrencyLimiter limiter = limiter(10);
+        for (int i = 0; i < 50; i++) {
+            limiter.onSample(20 * MILLIS, limiter.getLimit(), false);
+        }
+        assertTrue(limiter.getLimit() > 30);
+        assertEquals(20.0, limiter.getMinRttMillis(), 0.001);
+    }
+
+    @Test
+    public void testOnSample_shrinksWhenTheLatencyRises() {
+        ConcurrencyLimiter limiter = limiter(50);
+        limiter.onSample(20 * MILLIS, 50, false);
+        int before = limiter.getLimit();
+        for (int i = 0; i < 20; i++) {
+            limiter.onSample(200 * MILLIS, limiter.getLimit(), false);
+        }
+        assertTrue(limiter.getLimit() < before / 2);
+    }
+
+    @Test
+    public void testOnSample_doesNotGrowWhenUnused() {
+        ConcurrencyLimiter limiter = limiter(40);
+        for (int i = 0; i < 50; i++) {
+            limiter.onSample(20 * MILLIS, 1, false);
+        }
+        assertEquals(40, limiter.getLimit());
+    }
+
+    @Test
+    public void testOnResult_timeoutsBackOff() throws Exception {
+        ConcurrencyLimiter limiter = limiter(20);
+        for (int i = 0; i < 10; i++) {
+            limiter.onResult(limiter.acquire(), new SocketTimeoutException());
+        }
+        assertEquals(6, limiter.getLimit());
+        for (int i = 0; i < 50; i++) {
+            limiter.onResult(limiter.acquire(), new HttpResponseException(503, "unavailable"));
+        }
+        assertEquals(2, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void testOnResult_throttlingBacksOff() throws Exception {
+        TestServer server = new TestServer();
+        for (int i = 0; i < 5; i++) {
+            server.reply(429, "").reply(503, "");
+        }
+        server.reply(400, "{\"error\":{\"message\":\"bad\"}}");
+        RiskifiedClient client = TestClients.client(server, TestClients.builder().setConcurrencyLimit(EndpointGroup.DECISION,
+                new ConcurrencyLimitConfig.ConcurrencyLimitConfigBuilder().setInitialLimit(20).setMinLimit(2).setMaxLimit(100).build()));
+        Order order = new Order();
+        order.setId("1");
+        try {
+            ConcurrencyLimiter limiter = client.getConcurrencyLimiter(EndpointGroup.DECISION);
+            for (int i = 0; i < 10; i++) {
+                try {
+                    client.createOrder(order);
+                    fail("expected the throttling");
+                } catch (HttpResponseException e) {
+                    assertEquals(i % 2 == 0 ? 429 : 503, e.getStatusCode());
+                }
+            }
+            assertEquals(6, limiter.getLimit());
+            try {
+                client.createOrder(order);
+                fail("expected the refusal");
+            } catch (HttpResponseException e) {
+                assertEquals(400, e.getStatusCode());
+            }
+            assertEquals(6, limiter.getLimit());
+            assertEquals(11, server.getRequestCount());
+        } finally {
+            client.close();
+            server.stop();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.riskified;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.riskified.TestClients.*;
+import static org.junit.Assert.*;
+
+public class HistoricalFileImporterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static HistoricalUploadConfig config(int maxOrdersPerChunk) {
+        return new HistoricalUploadConfig.HistoricalUploadConfigBuilder()
+                .setMaxOrdersPerChunk(maxOrdersPerChunk).setParallelism(1).setMaxConcurrentUploads(1).build();
+    }
+
+    private Path ordersFile(int count) throws Exception {
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            lines.append("{\"id\":\"").append(i).append("\",\"email\":\"é").append(i).append("@example.com\"}\n");
+            if (i == 3) {
+                lines.append("\r\n");
+            }
+        }
+        Path file = folder.newFile("orders.ndjson").toPath();
+        Files.write(file, lines.toString().getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static int sentOrders(TestServer server) {
+        int orders = 0;
+        for (String body : server.getRequestBodies()) {
+            JsonObject json = new JsonParser().parse(body).getAsJsonObject();
+            orders += json.getAsJsonArray("orders").size();
+        }
+        return orders;
+    }
+
+    @Test
+    public void testImportFile_sendsEveryRecordAcrossWindows() throws Exception {
+        TestServer server = new TestServer();
+        RiskifiedClient client = client(server);
+        Path file = ordersFile(25);
+        Path checkpoint = folder.getRoot().toPath().resolve("orders.checkpoint");
+        // a window of a few records, so records and chunks cross the mapped windows
+        HistoricalFileImporter importer = new HistoricalFileImporter(client, config(10), 100);
+        try {
+            HistoricalImportResult result = importer.importFile(file, checkpoint);
+            assertTrue(result.isSuccess());
+            assertTrue(result.isComplete());
+            assertEquals(25, result.getOrders());
+            assertEquals(25, result.getSentOrders());
+            assertEquals(25, sentOrders(server));
+            assertEquals(String.valueOf(Files.size(file)), new String(Files.readAllBytes(checkpoint), StandardCharsets.UTF_8));
+
+            int requests = server.getRequestCount();
+            HistoricalImportResult again = importer.importFile(file, checkpoint);
+            assertTrue(again.isComplete());
+            assertEquals(0, again.getOrders());
+            assertEquals(requests, server.getRequestCount());
+        } finally {
+            client.close();
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testImportFile_resumesAfterTheLastSentChunk() throws Exception {
+        TestServer server = new TestServer().reply(200, "{}").reply(400, "");
+        // one chunk at a time, so the second chunk is the one refused
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        RiskifiedClient client = client(server, builder().setExecutor(executor));
+        Path file = ordersFile(25);
+        Path checkpoint = folder.getRoot().toPath().resolve("orders.checkpoint");
+        try {
+            HistoricalImportResult failed = client.historicalFileImporter(config(10)).importFile(file, checkpoint);
+            assertFalse(failed.isSuccess());
+            assertFalse(failed.isComplete());
+            HistoricalChunk chunk = failed.getFailedChunks().get(0);
+            assertEquals(failed.getCheckpoint(), chunk.getStartOffset());
+            assertEquals("{\"id\":\"10\"", readRecord(file, failed.getCheckpoint()).substring(0, 10));
+        } finally {
+            client.close();
+            server.stop();
+            executor.shutdown();
+        }
+
+        server = new TestServer();
+        client = client(server);
+        try {
+            HistoricalImportResult resumed = client.historicalFileImporter(config(10)).importFile(file, checkpoint);
+            assertTrue(resumed.isComplete());
+            assertEquals(15, resumed.getSentOrders());
+            assertEquals(15, sentOrders(server));
+        } finally {
+            client.close();
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testImportFile_numbersTheChunksInTheOrderOfTheFile() throws Exception {
+        TestServer server = new TestServer();
+        RiskifiedClient client = client(server);
+        Path file = ordersFile(25);
+        final List<HistoricalChunk> chunks = Collections.synchronizedList(new ArrayList<HistoricalChunk>());
+        HistoricalUploadConfig config = new HistoricalUploadConfig.HistoricalUploadConfigBuilder()
+                .setMaxOrdersPerChunk(2).setParallelism(4).setMaxConcurrentUploads(4).build();
+        try {
+            HistoricalImportResult result = client.historicalFileImporter(config).importFile(file, null, chunks::add);
+            assertTrue(result.isComplete());
+            assertEquals(13, result.getChunks());
+            assertEquals(13, chunks.size());
+            List<HistoricalChunk> byIndex = new ArrayList<HistoricalChunk>(chunks);
+            Collections.sort(byIndex, Comparator.comparingInt(HistoricalChunk::getIndex));
+            long offset = 0;
+            for (int i = 0; i < byIndex.size(); i++) {
+                // the chunk i follows the chunk i - 1 in the file, whatever the order they were sent in
+                assertEquals(i, byIndex.get(i).getIndex());
+                assertTrue(byIndex.get(i).getStartOffset() >= offset);
+                offset = byIndex.get(i).getEndOffset();
+            }
+            assertEquals(Files.size(file), offset);
+        } finally {
+            client.close();
+            server.stop();
+        }
+    }
+
+    private static String readRecord(Path file, long offset) throws Exception {
+        byte[] bytes = Files.readAllBytes(file);
+        return new String(bytes, (int) offset, bytes.length - (int) offset, StandardCharsets.UTF_8);
+    }
+}
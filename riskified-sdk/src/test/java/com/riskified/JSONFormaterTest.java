@@ -0,0 +1,125 @@
+package com.riskified;
+
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.riskified.codegen.GeneratedTypeAdapter;
+import com.riskified.models.*;
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class JSONFormaterTest {
+
+    @Test
+    public void testToJson_matchesPerCallGson() throws Exception {
+        Order order = sampleOrder();
+        Gson reference = new GsonBuilder().setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
+                .registerTypeAdapter(Date.class, new JSONFormater.DateTimeSerializer())
+                .registerTypeAdapterFactory(JSONFormater.paymentDetailsSerializer())
+                .create();
+        String expected = reference.toJson(new OrderWrapper<Order>(order));
+
+        assertEquals(expected, JSONFormater.toJson(new OrderWrapper<Order>(order)));
+        assertArrayEquals(expected.getBytes("UTF-8"), JSONFormater.toJsonBytes(new OrderWrapper<Order>(order)));
+    }
+
+    @Test
+    public void testGeneratedAdapters_readLikeReflection() {
+        assertTrue(JSONFormater.getGson().getAdapter(Order.class) instanceof GeneratedTypeAdapter);
+
+        String json = "{\"order\":{\"id\":\"1\",\"status\":\"approved\",\"description\":\"ok\"},"
+                + "\"warnings\":[\"a\",\"b\"],\"received\":3,\"unknown\":{\"x\":[1]}}";
+        Gson reflective = new GsonBuilder().setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES).create();
+        Response expected = reflective.fromJson(json, Response.class);
+        Response actual = JSONFormater.getGson().fromJson(json, Response.class);
+
+        assertEquals(reflective.toJson(expected), reflective.toJson(actual));
+        assertEquals("approved", actual.getOrder().getStatus());
+        assertEquals(Arrays.asList("a", "b"), actual.getWarnings());
+    }
+
+    @Test
+    public void testToJson_writesTheRuntimeTypeOfSubclassesWithoutAdapter() {
+        Order order = sampleOrder();
+        ShopCustomer customer = new ShopCustomer();
+        customer.setId("7");
+        order.setCustomer(customer);
+        Gson reference = new GsonBuilder().setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
+                .registerTypeAdapter(Date.class, new JSONFormater.DateTimeSerializer())
+                .registerTypeAdapterFactory(JSONFormater.paymentDetailsSerializer())
+                .create();
+
+        String json = JSONFormater.toJson(order);
+        assertEquals(reference.toJson(order), json);
+        assertTrue(json.contains("\"loyalty_tier\":\"gold\""));
+    }
+
+    static class ShopCustomer extends Customer {
+        private String loyaltyTier = "gold";
+    }
+
+    @Test
+    public void testToJson_paymentDetailsMethod() {
+        String json = JSONFormater.toJson(sampleOrder());
+        assertTrue(json.contains("\"method\":\"credit_card\""));
+        assertTrue(json.contains("\"method\":\"paypal\""));
+    }
+
+    @Test
+    public void testDateTimeSerializer_matchesSimpleDateFormat() {
+        Date date = new Date(1400000000000L);
+        assertEquals(new SimpleDateFormat("yyyy-MM-dd'T'HH:mmXXX").format(date), JSONFormater.DateTimeSerializer.format(date));
+    }
+
+    static Order sampleOrder() {
+        Order order = new Order();
+        order.setId("order-1");
+        order.setName("#1001");
+        order.setEmail("great.customer@example.com");
+        order.setCreatedAt(new Date(1400000000000L));
+        order.setUpdatedAt(new Date(1400000360000L));
+        order.setCurrency("USD");
+        order.setGateway("mypaymentprocessor");
+        order.setBrowserIp("124.185.86.55");
+        order.setTotalPrice(113.23);
+        order.setTotalDiscounts(5.0);
+        order.setCartToken("68778783ad298f1c80c3bafcddeea02f");
+        order.setNote("Shipped to my hotel é中");
+
+        Customer customer = new Customer("great.customer@example.com", "John", "Doe", "999", new Date(1300000000000L), true, 4);
+        order.setCustomer(customer);
+
+        List<LineItem> lineItems = new ArrayList<LineItem>();
+        LineItem lineItem = new LineItem(100, 1, "ACME Widget", "101");
+        lineItem.setSku("ABCD");
+        lineItem.setGrams(1.5f);
+        lineItems.add(lineItem);
+        TravelLineItem travelLineItem = new TravelLineItem(340, 1, "Flight", "LH-1", 0, 0);
+        travelLineItem.setDepartureDate(new Date(1400100000000L));
+        lineItems.add(travelLineItem);
+        order.setLineItems(lineItems);
+
+        order.setShippingLines(Arrays.asList(new ShippingLine(123, "Free shipping")));
+        order.setDiscountCodes(Arrays.asList(new DiscountCode(19.95, "12")));
+
+        CreditCardPaymentDetails creditCard = new CreditCardPaymentDetails("370002", "y", "n", "xxxx-xxxx-xxxx-1234", "VISA");
+        PaypalPaymentDetails paypal = new PaypalPaymentDetails("payer@example.com", "verified", "confirmed", "Eligible");
+        order.setPaymentDetails(Arrays.asList(creditCard, paypal));
+
+        Address address = new Address("John", "Doe", "108 Main Street", "NYC", "1234567", "United States");
+        order.setBillingAddress(address);
+        order.setShippingAddress(address);
+
+        order.setDecision(new DecisionDetails(DecisionType.chargebackFraud, new Date(1400200000000L), "reason"));
+
+        Map<String, Object> additionalData = new LinkedHashMap<String, Object>();
+        additionalData.put("loyalty_tier", "gold");
+        additionalData.put("visits", 12);
+        order.setAdditionalData(additionalData);
+        return order;
+    }
+}
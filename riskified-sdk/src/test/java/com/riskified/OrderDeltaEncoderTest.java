@@ -0,0 +1,105 @@
+package com.riskified;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.riskified.models.LineItem;
+import com.riskified.models.Order;
+import com.riskified.models.Response;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class OrderDeltaEncoderTest {
+
+    private static Order order() {
+        Order order = new Order();
+        order.setId("1");
+        order.setEmail("buyer@example.com");
+        order.setCurrency("USD");
+        order.setTotalPrice(10.5);
+        return order;
+    }
+
+    private static JsonObject payload(OrderDeltaEncoder.Delta delta) {
+        return new JsonParser().parse(new String(delta.getPayload(), StandardCharsets.UTF_8)).getAsJsonObject();
+    }
+
+    @Test
+    public void testEncode_sendsOnlyTheChangedFields() {
+        OrderDeltaEncoder encoder = new OrderDeltaEncoder(10);
+        Order order = order();
+        OrderDeltaEncoder.Delta first = encoder.encode(order);
+        assertEquals(4, payload(first).entrySet().size());
+        encoder.commit(first, new Response());
+
+        order.setEmail("other@example.com");
+        OrderDeltaEncoder.Delta second = encoder.encode(order);
+        JsonObject payload = payload(second);
+        assertEquals(2, payload.entrySet().size());
+        assertEquals("1", payload.get("id").getAsString());
+        assertEquals("other@example.com", payload.get("email").getAsString());
+        encoder.commit(second, new Response());
+
+        order.setTotalPrice(12.0);
+        assertEquals(2, payload(encoder.encode(order)).entrySet().size());
+        assertEquals(2, encoder.getDeltaUpdates());
+        assertEquals(4, encoder.getOmittedFields());
+    }
+
+    @Test
+    public void testEncode_skipsAnUpdateWithoutAChange() {
+        OrderDeltaEncoder encoder = new OrderDeltaEncoder(10);
+        Response accepted = new Response();
+        accepted.setDecision("approved");
+        encoder.commit(encoder.encode(order()), accepted);
+        OrderDeltaEncoder.Delta unchanged = encoder.encode(order());
+        assertNull(unchanged.getPayload());
+        assertEquals("approved", unchanged.getSkipped().getDecision());
+        assertTrue(unchanged.getSkipped().isDeduplicated());
+        assertEquals(1, encoder.getSkippedUpdates());
+        assertEquals(1, encoder.getFullUpdates());
+    }
+
+    @Test
+    public void testEncode_sendsAWholeUpdateAsTheAdapterWritesIt() {
+        Order order = order();
+        order.setLineItems(Arrays.asList(new LineItem(10.5, 1, "book <1>")));
+        OrderDeltaEncoder.Delta first = new OrderDeltaEncoder(10).encode(order);
+        assertEquals(JSONFormater.toJson(order), new String(first.getPayload(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testEncode_comparesTheNestedFieldsAsWritten() {
+        OrderDeltaEncoder encoder = new OrderDeltaEncoder(10);
+        Order order = order();
+        order.setLineItems(Arrays.asList(new LineItem(10.5, 1, "book")));
+        encoder.commit(encoder.encode(order), new Response());
+
+        order.setLineItems(Arrays.asList(new LineItem(10.5, 1, "book")));
+        assertNotNull(encoder.encode(order).getSkipped());
+
+        order.setLineItems(Arrays.asList(new LineItem(10.5, 2, "book")));
+        JsonObject payload = payload(encoder.encode(order));
+        assertEquals(2, payload.entrySet().size());
+        assertEquals(2, payload.getAsJsonArray("line_items").get(0).getAsJsonObject().get("quantity").getAsInt());
+    }
+
+    @Test
+    public void testForget_nextUpdateIsWhole() {
+        OrderDeltaEncoder encoder = new OrderDeltaEncoder(1);
+        encoder.commit(encoder.encode(order()), new Response());
+        Order other = order();
+        other.setId("2");
+        encoder.commit(encoder.encode(other), new Response());
+        assertEquals(1, encoder.getSize());
+
+        Order changed = order();
+        changed.setEmail("other@example.com");
+        assertEquals(4, payload(encoder.encode(changed)).entrySet().size());
+        encoder.forget("2");
+        assertEquals(0, encoder.getSize());
+    }
+}
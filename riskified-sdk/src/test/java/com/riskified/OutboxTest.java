@@ -0,0 +1,163 @@
+package com.riskified;
+
+import com.riskified.models.CancelOrder;
+import com.riskified.models.FulfillmentDetails;
+import com.riskified.models.FulfillmentOrder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+import static com.riskified.TestClients.*;
+import static org.junit.Assert.*;
+
+public class OutboxTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static CancelOrder cancel(String id) {
+        CancelOrder order = new CancelOrder();
+        order.setId(id);
+        order.setCancelReason("customer request");
+        return order;
+    }
+
+    private static int segments(Path directory) throws IOException {
+        int segments = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "segment-*.log")) {
+            for (Path ignored : files) {
+                segments++;
+            }
+        }
+        return segments;
+    }
+
+    @Test
+    public void testOutbox_deliversTheEventsInOrder() throws Exception {
+        TestServer server = new TestServer();
+        RiskifiedClient client = client(server);
+        try {
+            final Outbox outbox = client.openOutbox(new OutboxConfig.OutboxConfigBuilder(folder.getRoot().toPath()).build());
+            assertSame(outbox, client.getOutbox());
+            outbox.cancelOrder(cancel("1")).get();
+            outbox.fulfillOrder(new FulfillmentOrder("2", new ArrayList<FulfillmentDetails>())).get();
+            outbox.cancelOrder(cancel("3")).get();
+            waitFor(() -> outbox.getPendingEvents() == 0);
+            assertEquals(3, outbox.getDeliveredEvents());
+            assertTrue(server.getRequestBodies().get(0).contains("\"id\":\"1\""));
+            assertTrue(server.getRequestBodies().get(1).contains("\"id\":\"2\""));
+            assertTrue(server.getRequestBodies().get(2).contains("\"id\":\"3\""));
+        } finally {
+            client.close();
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testOutbox_deliversThePendingEventsAfterARestart() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        OutboxConfig config = new OutboxConfig.OutboxConfigBuilder(directory).setInitialRetryMillis(60000).build();
+        TestServer down = new TestServer().reply(500, "");
+        RiskifiedClient client = client(down);
+        try {
+            Outbox outbox = client.openOutbox(config);
+            outbox.cancelOrder(cancel("1")).get();
+            outbox.cancelOrder(cancel("2")).get();
+            waitFor(() -> down.getRequestCount() > 0);
+            assertEquals(2, outbox.getPendingEvents());
+        } finally {
+            client.close();
+            down.stop();
+        }
+
+        TestServer up = new TestServer();
+        client = client(up);
+        try {
+            final Outbox outbox = client.openOutbox(config);
+            waitFor(() -> outbox.getPendingEvents() == 0);
+            assertEquals(2, outbox.getDeliveredEvents());
+            assertEquals(2, up.getRequestCount());
+            assertTrue(up.getRequestBodies().get(0).contains("\"id\":\"1\""));
+        } finally {
+            client.close();
+            up.stop();
+        }
+    }
+
+    @Test
+    public void testOutbox_deletesTheDeliveredSegments() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        TestServer server = new TestServer();
+        RiskifiedClient client = client(server);
+        try {
+            final Outbox outbox = client.openOutbox(new OutboxConfig.OutboxConfigBuilder(directory).setSegmentBytes(1024).build());
+            for (int i = 0; i < 50; i++) {
+                outbox.cancelOrder(cancel(String.valueOf(i)));
+            }
+            waitFor(() -> outbox.getDeliveredEvents() == 50);
+            waitFor(() -> segments(directory) == 1);
+        } finally {
+            client.close();
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testOutbox_setsAsideTheRefusedEvents() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        TestServer server = new TestServer().reply(400, "{\"error\":{\"message\":\"bad\"}}").reply(200, "{\"order\":{\"id\":\"2\",\"status\":\"approved\"}}");
+        RiskifiedClient client = client(server);
+        try {
+            final Outbox outbox = client.openOutbox(new OutboxConfig.OutboxConfigBuilder(directory).build());
+            outbox.cancelOrder(cancel("1"));
+            outbox.cancelOrder(cancel("2"));
+            waitFor(() -> outbox.getPendingEvents() == 0);
+            assertEquals(1, outbox.getRejectedEvents());
+            String rejected = new String(Files.readAllBytes(directory.resolve("rejected.log")), StandardCharsets.UTF_8);
+            assertTrue(rejected.startsWith("/api/cancel {"));
+            assertTrue(rejected.contains("\"id\":\"1\""));
+        } finally {
+            client.close();
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testOpenOutbox_ignoresTheOptionsOfAView() throws Exception {
+        TestServer server = new TestServer();
+        RiskifiedClient client = client(server);
+        try {
+            RequestOptions options = new RequestOptions.RequestOptionsBuilder().setTimeout(100).setIdempotencyKey("view").build();
+            final Outbox outbox = client.withOptions(options).openOutbox(new OutboxConfig.OutboxConfigBuilder(folder.getRoot().toPath()).build());
+            Thread.sleep(200);
+            outbox.cancelOrder(cancel("1")).get();
+            waitFor(() -> outbox.getDeliveredEvents() == 1);
+            assertEquals(1, server.getRequestCount());
+        } finally {
+            client.close();
+            server.stop();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testOpenOutbox_refusesADirectoryAlreadyOpen() throws Exception {
+        TestServer server = new TestServer();
+        RiskifiedClient first = client(server);
+        RiskifiedClient second = client(server);
+        try {
+            OutboxConfig config = new OutboxConfig.OutboxConfigBuilder(folder.getRoot().toPath()).build();
+            first.openOutbox(config);
+            second.openOutbox(config);
+        } finally {
+            first.close();
+            second.close();
+            server.stop();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.riskified;
+
+import com.riskified.models.Response;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PayloadDeduplicatorTest {
+
+    @Test
+    public void testLookup_returnsTheLastResponseForTheSamePayload() {
+        PayloadDeduplicator deduplicator = new PayloadDeduplicator(10, 60000);
+        Response response = new Response();
+        response.setDecision("approved");
+        assertNull(deduplicator.lookup("/api/update 1", "abc"));
+        deduplicator.record("/api/update 1", "abc", response);
+
+        Response skipped = deduplicator.lookup("/api/update 1", "abc");
+        assertTrue(skipped.isDeduplicated());
+        assertEquals("approved", skipped.getDecision());
+        assertFalse(response.isDeduplicated());
+        assertNull(deduplicator.lookup("/api/update 1", "def"));
+        assertNull(deduplicator.lookup("/api/fulfill 1", "abc"));
+        assertEquals(1, deduplicator.getDeduplicatedCalls());
+
+        deduplicator.forget("/api/update 1");
+        assertNull(deduplicator.lookup("/api/update 1", "abc"));
+    }
+
+    @Test
+    public void testLookup_windowIsOver() throws Exception {
+        PayloadDeduplicator deduplicator = new PayloadDeduplicator(10, 20);
+        deduplicator.record("/api/update 1", "abc", new Response());
+        Thread.sleep(50);
+        assertNull(deduplicator.lookup("/api/update 1", "abc"));
+    }
+
+    @Test
+    public void testRecord_forgetsTheLeastRecentlyUsedOrders() {
+        PayloadDeduplicator deduplicator = new PayloadDeduplicator(2, 60000);
+        deduplicator.record("/api/update 1", "a", new Response());
+        deduplicator.record("/api/update 2", "b", new Response());
+        assertNotNull(deduplicator.lookup("/api/update 1", "a"));
+        deduplicator.record("/api/update 3", "c", new Response());
+        assertEquals(2, deduplicator.getSize());
+        assertNotNull(deduplicator.lookup("/api/update 1", "a"));
+        assertNull(deduplicator.lookup("/api/update 2", "b"));
+    }
+}
@@ -0,0 +1,84 @@
+package com.riskified;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RateLimiterTest {
+
+    @Test
+    public void testTryAcquire_allowsTheBurstOnly() {
+        RateLimiter limiter = new RateLimiter("shop", new RateLimitConfig.Rate(1, 3));
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertEquals(1, limiter.getRejectedCalls());
+    }
+
+    @Test
+    public void testAcquire_waitsForTheNextToken() throws Exception {
+        RateLimiter limiter = new RateLimiter("shop", new RateLimitConfig.Rate(20, 1));
+        limiter.acquire(0);
+        long start = System.nanoTime();
+        limiter.acquire(1000);
+        assertTrue(System.nanoTime() - start >= 40000000);
+        assertEquals(1, limiter.getDelayedCalls());
+        try {
+            limiter.acquire(1);
+            fail("the next token is due in 50ms");
+        } catch (RateLimitExceededException e) {
+            assertEquals("shop", e.getKey());
+        }
+    }
+
+    @Test
+    public void testAcquireAsync_completesWhenTheTokenIsDue() throws Exception {
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+        try {
+            RateLimiter limiter = new RateLimiter("shop", new RateLimitConfig.Rate(10, 1));
+            assertTrue(limiter.acquireAsync(0, timer).isDone());
+            CompletableFuture<Void> next = limiter.acquireAsync(1000, timer);
+            assertFalse(next.isDone());
+            next.get();
+            try {
+                limiter.acquireAsync(0, timer).get();
+                fail("no token is due");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof RateLimitExceededException);
+            }
+        } finally {
+            timer.shutdown();
+        }
+    }
+
+    @Test
+    public void testReserve_takesTheEndpointAndShopTokens() throws Exception {
+        RateLimits limits = new RateLimits(new RateLimitConfig.RateLimitConfigBuilder()
+                .setShopRate(1, 2)
+                .setEndpointRate("/api/historical", 1, 5)
+                .build());
+        assertEquals(0, limits.reserve("shop", "/api/historical", 0));
+        assertEquals(0, limits.reserve("shop", "/api/create", 0));
+        try {
+            limits.reserve("shop", "/api/historical", 0);
+            fail("the shop has no token left");
+        } catch (RateLimitExceededException e) {
+            assertEquals("shop", e.getKey());
+        }
+        // the endpoint token of the rejected call was given back
+        RateLimiter endpoint = limits.getEndpointLimiter("shop", "/api/historical");
+        assertTrue(endpoint.tryAcquire());
+        assertTrue(endpoint.tryAcquire());
+        assertTrue(endpoint.tryAcquire());
+        assertTrue(endpoint.tryAcquire());
+        assertFalse(endpoint.tryAcquire());
+        assertNull(limits.getEndpointLimiter("shop", "/api/create"));
+        assertEquals(0, limits.reserve("other-shop", "/api/create", 0));
+    }
+}
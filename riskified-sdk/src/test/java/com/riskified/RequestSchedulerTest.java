@@ -0,0 +1,88 @@
+package com.riskified;
+
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RequestSchedulerTest {
+
+    private static RequestScheduler scheduler(int maxInFlight, int maxQueueSize) {
+        return new RequestScheduler(new RequestSchedulerConfig.RequestSchedulerConfigBuilder()
+                .setMaxInFlight(maxInFlight).setMaxQueueSize(maxQueueSize).build());
+    }
+
+    @Test
+    public void testLeave_admitsTheMostUrgentLaneFirst() {
+        RequestScheduler scheduler = scheduler(1, 10);
+        RequestScheduler.Ticket running = scheduler.enter(RequestLane.DECISION);
+        assertTrue(running.getAdmitted().isDone());
+        RequestScheduler.Ticket background = scheduler.enter(RequestLane.BACKGROUND);
+        RequestScheduler.Ticket checkout = scheduler.enter(RequestLane.CHECKOUT);
+        assertFalse(background.getAdmitted().isDone());
+        assertEquals(1, scheduler.getQueueDepth(RequestLane.CHECKOUT));
+
+        scheduler.leave(running);
+        assertTrue(checkout.getAdmitted().isDone());
+        assertFalse(background.getAdmitted().isDone());
+        assertEquals(1, scheduler.getInFlight());
+
+        scheduler.leave(checkout);
+        assertTrue(background.getAdmitted().isDone());
+        scheduler.leave(background);
+        assertEquals(0, scheduler.getInFlight());
+        assertEquals(1, scheduler.getAdmittedCalls(RequestLane.BACKGROUND));
+    }
+
+    @Test
+    public void testEnter_fullQueueShedsTheLessUrgentLanes() throws Exception {
+        RequestScheduler scheduler = scheduler(1, 1);
+        scheduler.enter(RequestLane.CHECKOUT);
+        RequestScheduler.Ticket background = scheduler.enter(RequestLane.BACKGROUND);
+        RequestScheduler.Ticket checkout = scheduler.enter(RequestLane.CHECKOUT);
+        assertShed(background, RequestLane.BACKGROUND);
+        assertFalse(checkout.getAdmitted().isDone());
+
+        RequestScheduler.Ticket fulfillment = scheduler.enter(RequestLane.FULFILLMENT);
+        assertShed(fulfillment, RequestLane.FULFILLMENT);
+        assertEquals(1, scheduler.getShedCalls(RequestLane.BACKGROUND));
+        assertEquals(1, scheduler.getShedCalls(RequestLane.FULFILLMENT));
+        assertEquals(0, scheduler.getShedCalls(RequestLane.CHECKOUT));
+    }
+
+    @Test
+    public void testExpire_shedsOnlyWaitingCalls() throws Exception {
+        RequestScheduler scheduler = scheduler(1, 10);
+        RequestScheduler.Ticket running = scheduler.enter(RequestLane.DECISION);
+        RequestScheduler.Ticket waiting = scheduler.enter(RequestLane.DECISION);
+        assertFalse(scheduler.expire(running));
+        assertTrue(scheduler.expire(waiting));
+        assertShed(waiting, RequestLane.DECISION);
+        assertEquals(0, scheduler.getQueueDepth(RequestLane.DECISION));
+
+        scheduler.leave(waiting);
+        scheduler.leave(running);
+        scheduler.leave(running);
+        assertEquals(0, scheduler.getInFlight());
+    }
+
+    @Test
+    public void testLanes() {
+        assertEquals(RequestLane.CHECKOUT, RequestLane.of("/api/decide", RequestOptions.Priority.NORMAL));
+        assertEquals(RequestLane.DECISION, RequestLane.of("/api/update", RequestOptions.Priority.NORMAL));
+        assertEquals(RequestLane.FULFILLMENT, RequestLane.of("/api/fulfill", RequestOptions.Priority.NORMAL));
+        assertEquals(RequestLane.BACKGROUND, RequestLane.of("/api/unknown", RequestOptions.Priority.NORMAL));
+        assertEquals(RequestLane.CHECKOUT, RequestLane.of("/api/historical", RequestOptions.Priority.HIGH));
+        assertEquals(RequestLane.BACKGROUND, RequestLane.of("/api/create", RequestOptions.Priority.LOW));
+    }
+
+    private static void assertShed(RequestScheduler.Ticket ticket, RequestLane lane) throws InterruptedException {
+        try {
+            ticket.getAdmitted().get();
+            fail("the call should have been shed");
+        } catch (ExecutionException e) {
+            assertEquals(lane, ((RequestShedException) e.getCause()).getLane());
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.riskified;
+
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.riskified.models.CheckoutResponse;
+import com.riskified.models.Response;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class ResponseParserTest {
+
+    private static final String ORDER_RESPONSE = "{\"order\":{\"id\":\"31\",\"status\":\"approved\",\"description\":\"Reviewed\","
+            + "\"old_status\":\"submitted\",\"decision_code\":\"c1\",\"category\":\"fraud\",\"score\":42,"
+            + "\"authentication_type\":{\"auth_type\":\"3ds\",\"exemption_method\":\"tra\"},"
+            + "\"extra\":{\"nested\":[1,{\"a\":null}]}},\"decision\":\"approved\",\"received\":1,"
+            + "\"warnings\":[\"w1\",\"w2\"],\"unknown\":[true,false]}";
+
+    @Test
+    public void testParseOrderResponse_matchesGson() throws Exception {
+        Response parsed = ResponseParser.parseOrderResponse(entity(ORDER_RESPONSE));
+        Gson gson = new GsonBuilder().setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES).create();
+        Response expected = gson.fromJson(ORDER_RESPONSE, Response.class);
+
+        assertEquals(gson.toJson(expected), gson.toJson(parsed));
+        assertEquals("31", parsed.getOrder().getId());
+        assertEquals(42, parsed.getOrder().getScore());
+        assertEquals("3ds", parsed.getOrder().getAuthenticationType().getAuthType());
+        assertEquals(Arrays.asList("w1", "w2"), parsed.getWarnings());
+        assertSame("common statuses are shared constants", "approved", parsed.getOrder().getStatus());
+    }
+
+    @Test
+    public void testParseCheckoutResponse() throws Exception {
+        String json = "{\"checkout\":{\"id\":\"7\",\"status\":\"declined\",\"oldStatus\":\"created\",\"decisionCode\":\"d\"},"
+                + "\"error\":{\"message\":\"bad\",\"code\":3}}";
+        CheckoutResponse parsed = ResponseParser.parseCheckoutResponse(entity(json));
+        CheckoutResponse expected = new Gson().fromJson(json, CheckoutResponse.class);
+        expected.setOrder(expected.getCheckout());
+
+        assertEquals(new Gson().toJson(expected), new Gson().toJson(parsed));
+        assertSame(parsed.getCheckout(), parsed.getOrder());
+        assertEquals("created", parsed.getOrder().getOldStatus());
+        assertEquals("bad", parsed.getError().getMessage());
+    }
+
+    @Test
+    public void testParse_emptyBody() throws Exception {
+        assertNull(ResponseParser.parseOrderResponse(entity("")));
+        assertNull(ResponseParser.parseCheckoutResponse(entity("  ")));
+    }
+
+    private static StringEntity entity(String body) {
+        return new StringEntity(body, ContentType.APPLICATION_JSON);
+    }
+}
@@ -0,0 +1,40 @@
+package com.riskified;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RetryBudgetTest {
+
+    @Test
+    public void testTryRetry_startsWithAFullBurst() {
+        RetryBudget budget = new RetryBudget(0.5, 2);
+        assertTrue(budget.tryRetry());
+        assertTrue(budget.tryRetry());
+        assertFalse(budget.tryRetry());
+        assertEquals(2, budget.getRetries());
+        assertEquals(1, budget.getRejectedRetries());
+    }
+
+    @Test
+    public void testOnRequest_depositsTheRetryRatio() {
+        RetryBudget budget = new RetryBudget(0.25, 1);
+        assertTrue(budget.tryRetry());
+        for (int i = 0; i < 3; i++) {
+            budget.onRequest();
+        }
+        assertFalse(budget.tryRetry());
+        budget.onRequest();
+        assertTrue(budget.tryRetry());
+    }
+
+    @Test
+    public void testOnRequest_balanceIsCapped() {
+        RetryBudget budget = new RetryBudget(1, 1);
+        for (int i = 0; i < 10; i++) {
+            budget.onRequest();
+        }
+        assertTrue(budget.tryRetry());
+        assertFalse(budget.tryRetry());
+    }
+}
@@ -0,0 +1,29 @@
+package com.riskified;
+
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.junit.Test;
+
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+
+import static org.junit.Assert.*;
+
+public class RetryPolicyTest {
+
+    @Test
+    public void testIsRetryable_retriesConnectionFailures() {
+        RetryPolicy policy = new RetryPolicy.RetryPolicyBuilder().build();
+        assertTrue(policy.isRetryable(new ConnectException(), false));
+        assertFalse(policy.isRetryable(new ConnectionPoolTimeoutException(), true));
+    }
+
+    @Test
+    public void testIsRetryable_retriesALostResponseOnlyWithAnIdempotencyKey() {
+        RetryPolicy policy = new RetryPolicy.RetryPolicyBuilder().build();
+        assertFalse(policy.isRetryable(new NoHttpResponseException("closed"), false));
+        assertTrue(policy.isRetryable(new NoHttpResponseException("closed"), true));
+        assertFalse(policy.isRetryable(new SocketTimeoutException(), false));
+        assertTrue(policy.isRetryable(new SocketTimeoutException(), true));
+    }
+}
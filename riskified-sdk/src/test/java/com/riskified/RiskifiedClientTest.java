@@ -5,15 +5,26 @@ import com.riskified.validations.FieldBadFormatException;
 import com.riskified.validations.Validation;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.client.HttpResponseException;
+import org.junit.Assume;
 import org.junit.BeforeClass;
 import org.junit.Ignore;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 import java.util.Properties;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
 
 import static org.junit.Assert.*;
 
@@ -43,6 +54,39 @@ public class RiskifiedClientTest {
         }
     }
 
+    private interface ClientCalls {
+        void run() throws Exception;
+    }
+
+    private static RiskifiedClient.RiskifiedClientBuilder testClient() {
+        return new RiskifiedClient.RiskifiedClientBuilder(shopUrl, authKey, Environment.DEBUG).setValidation(Validation.NONE);
+    }
+
+    private static Order order(String id) {
+        Order order = new Order();
+        order.setId(id);
+        return order;
+    }
+
+    private void client(TestServer server, RiskifiedClient.RiskifiedClientBuilder builder) throws RiskifiedError {
+        riskifiedClient = builder.build();
+        riskifiedClient.setBaseUrl(server.getUrl());
+        riskifiedClient.setAccountBaseUrl(server.getUrl());
+    }
+
+    /**
+     * Run the calls with a client of the builder sending to the test server, both are closed after
+     */
+    private void withClient(TestServer server, RiskifiedClient.RiskifiedClientBuilder builder, ClientCalls calls) throws Exception {
+        client(server, builder);
+        try {
+            calls.run();
+        } finally {
+            riskifiedClient.close();
+            server.stop();
+        }
+    }
+
     @Test
     public void testRiskifiedClientConstruction_withoutRequestAndConnectionTimeout() throws RiskifiedError {
         riskifiedClient = new RiskifiedClient.RiskifiedClientBuilder(shopUrl, authKey, Environment.SANDBOX).build();
@@ -63,6 +107,361 @@ public class RiskifiedClientTest {
         assertEquals(Validation.IGNORE_MISSING, riskifiedClient.getValidation());
     }
 
+    @Test
+    public void testRiskifiedClientConstruction_withConnectionPoolSettings() throws RiskifiedError, IOException {
+        riskifiedClient = new RiskifiedClient.RiskifiedClientBuilder(shopUrl, authKey, Environment.SANDBOX).setMaxConnections(20).setMaxConnectionsPerRoute(5).build();
+        assertNotNull(riskifiedClient);
+        assertEquals("Invalid max connections", 20, riskifiedClient.getMaxConnections());
+        assertEquals("Invalid max connections per route", 5, riskifiedClient.getMaxConnectionsPerRoute());
+        riskifiedClient.close();
+    }
+
+    @Test
+    public void testRiskifiedClientConstruction_withVirtualThreadsFallsBackOnOlderRuntimes() throws RiskifiedError, IOException {
+        riskifiedClient = new RiskifiedClient.RiskifiedClientBuilder(shopUrl, authKey, Environment.SANDBOX).setVirtualThreads(true).build();
+        assertEquals(VirtualThreads.isSupported(), riskifiedClient.isVirtualThreads());
+        riskifiedClient.close();
+    }
+
+    @Test
+    public void testCreateOrderAsyncRunsOnAVirtualThread() throws Exception {
+        Assume.assumeTrue(VirtualThreads.isSupported());
+        final AtomicReference<Thread> caller = new AtomicReference<Thread>();
+        final Order order = new Order() {
+            @Override
+            public void validate(Validation validationType) {
+                // runs on the thread of the call
+                caller.set(Thread.currentThread());
+            }
+        };
+        order.setId("1");
+        withClient(new TestServer(), testClient().setValidation(Validation.IGNORE_MISSING).setVirtualThreads(true), () -> {
+            assertEquals("approved", riskifiedClient.createOrderAsync(order).get().getOrder().getStatus());
+            assertTrue((Boolean) Thread.class.getMethod("isVirtual").invoke(caller.get()));
+        });
+    }
+
+    @Test
+    public void testCreateOrderRunsOnTheCallerThreadWithVirtualThreads() throws Exception {
+        final AtomicReference<Thread> caller = new AtomicReference<Thread>();
+        final Order order = new Order() {
+            @Override
+            public void validate(Validation validationType) {
+                caller.set(Thread.currentThread());
+            }
+        };
+        order.setId("1");
+        withClient(new TestServer(), testClient().setValidation(Validation.IGNORE_MISSING).setVirtualThreads(true), () -> {
+            riskifiedClient.createOrder(order);
+            assertSame(Thread.currentThread(), caller.get());
+        });
+    }
+
+    @Test
+    public void testCreateOrderAsyncCompletesExceptionallyOnValidationError() throws RiskifiedError, IOException, InterruptedException {
+        riskifiedClient = new RiskifiedClient.RiskifiedClientBuilder(shopUrl, authKey, Environment.SANDBOX).build();
+        try {
+            riskifiedClient.createOrderAsync(new Order()).get();
+            fail("expected validation error");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof FieldBadFormatException);
+        } finally {
+            riskifiedClient.close();
+        }
+    }
+
+    @Test
+    public void testAsyncCallsCompleteWithTheResponse() throws Exception {
+        TestServer server = new TestServer();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Order order = order("1");
+        CancelOrder cancel = new CancelOrder();
+        cancel.setId("1");
+        try {
+            for (TransportType transport : TransportType.values()) {
+                client(server, testClient().setTransportType(transport));
+                int before = server.getRequestCount();
+                try {
+                    List<CompletableFuture<Response>> calls = Arrays.asList(
+                            riskifiedClient.createOrderAsync(order),
+                            riskifiedClient.submitOrderAsync(order, executor),
+                            riskifiedClient.updateOrderAsync(order, Validation.NONE),
+                            riskifiedClient.cancelOrderAsync(cancel, Validation.NONE, executor),
+                            riskifiedClient.fulfillOrderAsync(new FulfillmentOrder("1", new ArrayList<FulfillmentDetails>())),
+                            riskifiedClient.loginAsync(new Login("1", "buyer@example.com", null, null, null)));
+                    for (CompletableFuture<Response> call : calls) {
+                        assertEquals("approved", call.get().getOrder().getStatus());
+                    }
+                    assertEquals(calls.size(), server.getRequestCount() - before);
+                } finally {
+                    riskifiedClient.close();
+                }
+            }
+        } finally {
+            executor.shutdown();
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testCreateOrderOnTheNonBlockingTransport() throws Exception {
+        final TestServer server = new TestServer();
+        final Order order = order("1");
+        withClient(server, testClient().setTransportType(TransportType.NON_BLOCKING), () -> {
+            Response response = riskifiedClient.createOrderAsync(order, Runnable::run).get();
+            assertEquals("approved", response.getOrder().getStatus());
+            response = riskifiedClient.createOrder(order);
+            assertEquals("1", response.getOrder().getId());
+            assertEquals(2, server.getRequestCount());
+        });
+    }
+
+    @Test
+    public void testCreateOrderRetriesATemporaryErrorWithTheSameSignedBody() throws Exception {
+        final TestServer server = new TestServer().reply(504, "").reply(200, "{\"order\":{\"id\":\"1\",\"status\":\"approved\"}}");
+        RetryPolicy policy = new RetryPolicy.RetryPolicyBuilder().setInitialBackoffMillis(1).build();
+        withClient(server, testClient().setRetryPolicy(policy), () -> {
+            assertEquals("approved", riskifiedClient.createOrder(order("1")).getOrder().getStatus());
+            assertEquals(2, server.getRequestCount());
+            assertEquals(server.getRequestBodies().get(0), server.getRequestBodies().get(1));
+            assertEquals(1, riskifiedClient.getRetryBudget().getRetries());
+        });
+    }
+
+    @Test
+    public void testCreateOrderAsyncRetriesUpToMaxAttemptsOnTheNonBlockingTransport() throws Exception {
+        final TestServer server = new TestServer().reply(504, "");
+        RetryPolicy policy = new RetryPolicy.RetryPolicyBuilder().setMaxAttempts(3).setInitialBackoffMillis(1).build();
+        withClient(server, testClient().setTransportType(TransportType.NON_BLOCKING).setRetryPolicy("/api/create", policy), () -> {
+            try {
+                riskifiedClient.createOrderAsync(order("1"), Runnable::run).get();
+                fail("expected the temporary error");
+            } catch (ExecutionException e) {
+                assertEquals(504, ((HttpResponseException) e.getCause()).getStatusCode());
+                assertEquals(3, server.getRequestCount());
+            }
+        });
+    }
+
+    @Test
+    public void testEndpointSettingsApplyBehindABaseUrlPrefix() throws Exception {
+        final TestServer server = new TestServer().reply(504, "").reply(200, "{\"order\":{\"id\":\"1\",\"status\":\"approved\"}}");
+        RetryPolicy policy = new RetryPolicy.RetryPolicyBuilder().setInitialBackoffMillis(1).build();
+        withClient(server, testClient().setRetryPolicy("/api/create", policy), () -> {
+            // e.g. behind a proxy, the endpoint is still /api/create
+            riskifiedClient.setBaseUrl(server.getUrl() + "/riskified");
+            assertEquals("approved", riskifiedClient.createOrder(order("1")).getOrder().getStatus());
+            assertEquals(2, server.getRequestCount());
+        });
+    }
+
+    @Test
+    public void testCreateOrderStopsRetryingWhenTheBudgetIsEmpty() throws Exception {
+        final TestServer server = new TestServer().reply(504, "");
+        RetryPolicy policy = new RetryPolicy.RetryPolicyBuilder().setMaxAttempts(5).setInitialBackoffMillis(1).build();
+        withClient(server, testClient().setRetryPolicy(policy).setRetryBudget(new RetryBudget(0, 1)), () -> {
+            try {
+                riskifiedClient.createOrder(order("1"));
+                fail("expected the temporary error");
+            } catch (HttpResponseException e) {
+                assertEquals(504, e.getStatusCode());
+                assertEquals(2, server.getRequestCount());
+                assertEquals(1, riskifiedClient.getRetryBudget().getRejectedRetries());
+            }
+        });
+    }
+
+    @Test
+    public void testCreateOrderFailsFastOnceTheCircuitBreakerIsOpen() throws Exception {
+        final TestServer server = new TestServer().reply(504, "");
+        CircuitBreakerConfig config = new CircuitBreakerConfig.CircuitBreakerConfigBuilder().setMinimumCalls(2).build();
+        final Order order = order("1");
+        withClient(server, testClient().setCircuitBreakerConfig(config), () -> {
+            for (int i = 0; i < 3; i++) {
+                try {
+                    riskifiedClient.createOrder(order);
+                    fail("expected an error");
+                } catch (CircuitBreakerOpenException e) {
+                    assertEquals(2, i);
+                } catch (HttpResponseException e) {
+                    assertEquals(504, e.getStatusCode());
+                }
+            }
+            assertEquals(2, server.getRequestCount());
+            assertTrue(riskifiedClient.getCircuitBreaker(riskifiedClient.getBaseUrl()).isOpen());
+        });
+    }
+
+    @Test
+    public void testWithOptionsDeadlineAbortsASlowCall() throws Exception {
+        withClient(new TestServer().delay(3000), testClient(), () -> {
+            long start = System.currentTimeMillis();
+            try {
+                riskifiedClient.withOptions(new RequestOptions.RequestOptionsBuilder().setTimeout(200).build()).createOrder(order("1"));
+                fail("expected the deadline to pass");
+            } catch (DeadlineExceededException e) {
+                assertTrue("the call must stop at the deadline", System.currentTimeMillis() - start < 2000);
+            }
+        });
+    }
+
+    @Test
+    public void testWithOptionsDeadlineFailsTheAsyncCall() throws Exception {
+        withClient(new TestServer().delay(3000), testClient().setTransportType(TransportType.NON_BLOCKING), () -> {
+            long start = System.currentTimeMillis();
+            try {
+                RequestOptions options = new RequestOptions.RequestOptionsBuilder().setTimeout(200).setIdempotencyKey("create-1").build();
+                riskifiedClient.withOptions(options).createOrderAsync(order("1")).get();
+                fail("expected the deadline to pass");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof DeadlineExceededException);
+                assertTrue("the call must stop at the deadline", System.currentTimeMillis() - start < 2000);
+            }
+        });
+    }
+
+    @Test
+    public void testFullBulkheadDoesNotBlockTheOtherGroups() throws Exception {
+        final Order order = order("1");
+        withClient(new TestServer().delay(1000), testClient().setBulkhead(EndpointGroup.LIFECYCLE,
+                new BulkheadConfig.BulkheadConfigBuilder().setMaxConnections(1).setMaxConcurrentCalls(1).build()), () -> {
+            CompletableFuture<Response> update = riskifiedClient.updateOrderAsync(order);
+            Bulkhead bulkhead = riskifiedClient.getBulkhead(EndpointGroup.LIFECYCLE);
+            while (bulkhead.getAvailableCalls() > 0) {
+                Thread.sleep(5);
+            }
+            try {
+                riskifiedClient.updateOrder(order);
+                fail("the lifecycle bulkhead is full");
+            } catch (BulkheadFullException e) {
+                assertEquals(EndpointGroup.LIFECYCLE, e.getGroup());
+            }
+            assertEquals("approved", riskifiedClient.createOrder(order).getOrder().getStatus());
+            assertEquals("approved", update.get().getOrder().getStatus());
+            assertEquals(1, bulkhead.getAvailableCalls());
+        });
+    }
+
+    @Test
+    public void testRequestSchedulerShedsWhenSaturated() throws Exception {
+        withClient(new TestServer().delay(1000), testClient().setRequestScheduler(
+                new RequestSchedulerConfig.RequestSchedulerConfigBuilder().setMaxInFlight(1).setMaxQueueSize(0).build()), () -> {
+            CompletableFuture<Response> create = riskifiedClient.createOrderAsync(order("1"));
+            RequestScheduler scheduler = riskifiedClient.getRequestScheduler();
+            while (scheduler.getInFlight() == 0) {
+                Thread.sleep(5);
+            }
+            try {
+                riskifiedClient.fulfillOrder(new FulfillmentOrder("1", new ArrayList<FulfillmentDetails>()));
+                fail("the scheduler is saturated");
+            } catch (RequestShedException e) {
+                assertEquals(RequestLane.FULFILLMENT, e.getLane());
+            }
+            assertEquals("approved", create.get().getOrder().getStatus());
+            assertEquals(0, scheduler.getInFlight());
+            assertEquals(1, scheduler.getShedCalls(RequestLane.FULFILLMENT));
+        });
+    }
+
+    @Test
+    public void testRequestCoalescingSharesOneRoundTripBetweenIdenticalCalls() throws Exception {
+        final TestServer server = new TestServer().delay(500);
+        final Order order = order("1");
+        withClient(server, testClient().setRequestCoalescing(true), () -> {
+            CompletableFuture<Response> first = riskifiedClient.updateOrderAsync(order);
+            while (server.getRequestCount() == 0) {
+                Thread.sleep(5);
+            }
+            CompletableFuture<Response> second = riskifiedClient.updateOrderAsync(order);
+            Response third = riskifiedClient.updateOrder(order("2"));
+            assertSame(first.get(), second.get());
+            assertEquals("approved", third.getOrder().getStatus());
+            assertEquals(2, server.getRequestCount());
+            assertEquals(1, riskifiedClient.getRequestCoalescer().getCoalescedCalls());
+            assertEquals(0, riskifiedClient.getRequestCoalescer().getInFlight());
+
+            riskifiedClient.updateOrder(order);
+            assertEquals(3, server.getRequestCount());
+        });
+    }
+
+    @Test
+    public void testOrderDeltaEncoderDoesNotSendAnUnchangedUpdate() throws Exception {
+        final TestServer server = new TestServer();
+        final Order order = order("1");
+        order.setEmail("buyer@example.com");
+        withClient(server, testClient().setOrderDeltaEncoder(new OrderDeltaEncoder(10)), () -> {
+            riskifiedClient.updateOrder(order);
+            Response response = riskifiedClient.updateOrder(order);
+            assertTrue(response.isDeduplicated());
+            assertEquals("approved", response.getOrder().getStatus());
+            assertEquals(1, server.getRequestCount());
+            order.setEmail("other@example.com");
+            riskifiedClient.updateOrder(order);
+            assertEquals(2, server.getRequestCount());
+            assertFalse(server.getRequestBodies().get(1).contains("\"currency\""));
+        });
+    }
+
+    @Test
+    public void testPayloadDeduplicatorSkipsUnchangedUpdates() throws Exception {
+        final TestServer server = new TestServer();
+        final Order order = order("1");
+        withClient(server, testClient().setPayloadDeduplicator(new PayloadDeduplicator(100, 60000)), () -> {
+            assertFalse(riskifiedClient.updateOrder(order).isDeduplicated());
+            Response skipped = riskifiedClient.updateOrder(order);
+            assertTrue(skipped.isDeduplicated());
+            assertEquals("approved", skipped.getOrder().getStatus());
+            assertEquals(1, server.getRequestCount());
+
+            order.setEmail("changed@example.com");
+            assertFalse(riskifiedClient.updateOrder(order).isDeduplicated());
+            assertEquals(2, server.getRequestCount());
+            assertEquals(1, riskifiedClient.getPayloadDeduplicator().getDeduplicatedCalls());
+        });
+    }
+
+    @Test
+    public void testHistoricalUploaderSplitsOrdersInChunks() throws Exception {
+        final TestServer server = new TestServer();
+        withClient(server, testClient(), () -> {
+            HistoricalUploader uploader = riskifiedClient.historicalUploader(
+                    new HistoricalUploadConfig.HistoricalUploadConfigBuilder().setMaxOrdersPerChunk(10).build());
+            HistoricalUploadResult result = uploader.upload(IntStream.range(0, 25).mapToObj(i -> order(String.valueOf(i))));
+            assertTrue(result.isSuccess());
+            assertEquals(25, result.getOrders());
+            assertEquals(25, result.getSentOrders());
+            assertEquals(3, result.getChunks());
+            assertEquals(3, server.getRequestCount());
+        });
+    }
+
+    @Test
+    public void testSendSpooledStreamsTheBodyFromTheFile() throws Exception {
+        TestServer server = new TestServer();
+        Path file = Files.createTempFile("historical", ".spool");
+        ArrayOrders orders = new ArrayOrders();
+        orders.getOrders().add(order("1"));
+        try {
+            for (TransportType transport : TransportType.values()) {
+                client(server, testClient().setTransportType(transport));
+                try {
+                    SpooledPayload payload = riskifiedClient.spoolHistoricalOrders(orders, file);
+                    assertEquals("approved", riskifiedClient.sendSpooled(payload).getOrder().getStatus());
+                    assertEquals("approved", riskifiedClient.sendSpooled(SpooledPayload.open(file)).getOrder().getStatus());
+                } finally {
+                    riskifiedClient.close();
+                }
+                List<String> bodies = server.getRequestBodies();
+                assertEquals(JSONFormater.toJson(orders), bodies.get(bodies.size() - 1));
+                assertEquals(bodies.get(bodies.size() - 2), bodies.get(bodies.size() - 1));
+            }
+        } finally {
+            Files.deleteIfExists(file);
+            server.stop();
+        }
+    }
+
     @Test
     public void testCreateOrderWithNoValidation() throws RiskifiedError, IOException, FieldBadFormatException {
         riskifiedClient = new RiskifiedClient.RiskifiedClientBuilder(shopUrl, authKey, Environment.SANDBOX).setValidation(Validation.NONE).build();
@@ -0,0 +1,69 @@
+package com.riskified;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class SHA256HandlerTest {
+
+    // RFC 4231 test case 2
+    private static final String KEY = "Jefe";
+    private static final String DATA = "what do ya want for nothing?";
+    private static final String EXPECTED = "5bdcc146bf60754e6a042426089575c75a003f089d2739839dec58b964ec3843";
+
+    @Test
+    public void testCreateSHA256() throws Exception {
+        SHA256Handler handler = new SHA256Handler(KEY);
+        assertEquals(EXPECTED, handler.createSHA256(DATA.getBytes("UTF-8")));
+        assertEquals("mac must be reusable after a signature", EXPECTED, handler.createSHA256(DATA.getBytes("UTF-8")));
+    }
+
+    @Test
+    public void testSigner_incremental() throws Exception {
+        SHA256Handler handler = new SHA256Handler(KEY);
+        byte[] data = DATA.getBytes("UTF-8");
+        SHA256Handler.Signer signer = handler.signer();
+        signer.update(data, 0, 10);
+        signer.update(data, 10, data.length - 10);
+        assertEquals(EXPECTED, signer.sign());
+    }
+
+    @Test
+    public void testToHexString() {
+        assertEquals("00017f80ff", SHA256Handler.toHexString(new byte[]{0, 1, 127, -128, -1}));
+    }
+
+    @Test
+    public void testCreateSHA256_concurrentCallers() throws Exception {
+        final SHA256Handler handler = new SHA256Handler(KEY);
+        final byte[] data = DATA.getBytes("UTF-8");
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (int i = 0; i < 64; i++) {
+                results.add(executor.submit(new Callable<Boolean>() {
+                    public Boolean call() {
+                        for (int j = 0; j < 500; j++) {
+                            if (!EXPECTED.equals(handler.createSHA256(data))) {
+                                return false;
+                            }
+                        }
+                        return true;
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.riskified;
+
+import com.riskified.models.LineItem;
+import com.riskified.models.Order;
+import com.riskified.models.OrderWrapper;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SignedJsonEntityTest {
+
+    @Test
+    public void testCreate_matchesSeparateSerializationAndSignature() throws Exception {
+        SHA256Handler handler = new SHA256Handler("auth-key");
+        Order order = JSONFormaterTest.sampleOrder();
+        List<LineItem> lineItems = new ArrayList<LineItem>(order.getLineItems());
+        for (int i = 0; i < 500; i++) {
+            lineItems.add(new LineItem(i, 1, "Widget number " + i, "sku-" + i));
+        }
+        order.setLineItems(lineItems);
+        OrderWrapper<Order> data = new OrderWrapper<Order>(order);
+
+        byte[] expected = JSONFormater.toJsonBytes(data);
+        assertTrue("the body must span several chunks", expected.length > 3 * SignedJsonEntity.CHUNK_SIZE);
+
+        SignedJsonEntity entity = SignedJsonEntity.create(data, handler, new BufferPool(1024 * 1024));
+        assertEquals(handler.createSHA256(expected), entity.getSignature());
+        assertEquals(expected.length, entity.getContentLength());
+
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        entity.writeTo(written);
+        assertArrayEquals(expected, written.toByteArray());
+        assertArrayEquals("the entity must be repeatable", expected, readFully(entity.getContent()));
+        assertArrayEquals(expected, readFully(entity.getContent()));
+    }
+
+    @Test
+    public void testBuilder_matchesTheSerializedArray() throws Exception {
+        SHA256Handler handler = new SHA256Handler("auth-key");
+        Order order = JSONFormaterTest.sampleOrder();
+        order.setEmail("j\u00f6rg@example.com");
+        SignedJsonEntity.Builder builder = SignedJsonEntity.builder(handler, new BufferPool(1024 * 1024)).append("{\"orders\":[");
+        StringBuilder expected = new StringBuilder("{\"orders\":[");
+        for (int i = 0; i < 20; i++) {
+            if (i > 0) {
+                builder.append(",");
+                expected.append(",");
+            }
+            builder.append(JSONFormater.toJsonBytes(order));
+            expected.append(JSONFormater.toJson(order));
+        }
+        SignedJsonEntity entity = builder.append("]}").build();
+        byte[] bytes = expected.append("]}").toString().getBytes("UTF-8");
+        assertTrue("the body must span several chunks", bytes.length > SignedJsonEntity.CHUNK_SIZE);
+        assertArrayEquals(bytes, readFully(entity.getContent()));
+        assertEquals(handler.createSHA256(bytes), entity.getSignature());
+    }
+
+    @Test
+    public void testCreate_smallBody() throws Exception {
+        SHA256Handler handler = new SHA256Handler("auth-key");
+        SignedJsonEntity entity = SignedJsonEntity.create(new Object(), handler, new BufferPool(1024 * 1024));
+        assertArrayEquals("{}".getBytes("UTF-8"), readFully(entity.getContent()));
+        assertEquals(handler.createSHA256("{}".getBytes("UTF-8")), entity.getSignature());
+    }
+
+    @Test
+    public void testCreate_encodesNonAsciiLikeGetBytes() throws Exception {
+        SHA256Handler handler = new SHA256Handler("auth-key");
+        Order order = JSONFormaterTest.sampleOrder();
+        order.setEmail("j\u00f6rg-\u20ac-\ud83d\ude00@example.com");
+        OrderWrapper<Order> data = new OrderWrapper<Order>(order);
+
+        byte[] expected = JSONFormater.toJsonBytes(data);
+        SignedJsonEntity entity = SignedJsonEntity.create(data, handler, new BufferPool(1024 * 1024));
+        assertArrayEquals(expected, readFully(entity.getContent()));
+        assertEquals(handler.createSHA256(expected), entity.getSignature());
+    }
+
+    @Test
+    public void testRelease_returnsChunksToThePool() throws Exception {
+        SHA256Handler handler = new SHA256Handler("auth-key");
+        BufferPool pool = new BufferPool(1024 * 1024);
+        SignedJsonEntity entity = SignedJsonEntity.create(new Object(), handler, pool);
+        entity.release();
+        entity.release();
+        assertEquals(SignedJsonEntity.CHUNK_SIZE, pool.getPooledBytes());
+
+        long misses = pool.getMisses();
+        SignedJsonEntity.create(new Object(), handler, pool).release();
+        assertEquals("steady-state calls must not allocate body chunks", misses, pool.getMisses());
+        try {
+            entity.getContent();
+            fail("a released entity can't be sent");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1000];
+        int read;
+        while ((read = in.read(buffer, 0, buffer.length)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,55 @@
+package com.riskified;
+
+import com.riskified.models.Order;
+import com.riskified.models.OrderWrapper;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class SpooledPayloadTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWrite_spoolsTheSignedSerializedBody() throws Exception {
+        SHA256Handler handler = new SHA256Handler("key");
+        OrderWrapper<Order> data = new OrderWrapper<Order>(JSONFormaterTest.sampleOrder());
+        Path file = folder.getRoot().toPath().resolve("chargeback.spool");
+
+        SpooledPayload payload = SpooledPayload.write("/api/chargeback", data, handler, file);
+
+        byte[] expected = JSONFormater.toJsonBytes(data);
+        byte[] spooled = Files.readAllBytes(file);
+        assertEquals(SpooledPayload.HEADER_SIZE + expected.length, spooled.length);
+        assertArrayEquals(expected, Arrays.copyOfRange(spooled, SpooledPayload.HEADER_SIZE, spooled.length));
+        assertEquals(handler.createSHA256(expected), payload.getSignature());
+        assertEquals(expected.length, payload.getLength());
+        assertFalse(Files.exists(file.resolveSibling("chargeback.spool.tmp")));
+    }
+
+    @Test
+    public void testOpen_readsTheHeaderBack() throws Exception {
+        SHA256Handler handler = new SHA256Handler("key");
+        Path file = folder.getRoot().toPath().resolve("historical.spool");
+        SpooledPayload written = SpooledPayload.write("/api/historical", JSONFormaterTest.sampleOrder(), handler, file);
+
+        SpooledPayload opened = SpooledPayload.open(file);
+        assertEquals("/api/historical", opened.getPath());
+        assertEquals(written.getSignature(), opened.getSignature());
+        assertEquals(written.getLength(), opened.getLength());
+    }
+
+    @Test(expected = IOException.class)
+    public void testOpen_rejectsOtherFiles() throws Exception {
+        Path file = folder.newFile("orders.json").toPath();
+        Files.write(file, "{\"orders\":[]}".getBytes("UTF-8"));
+        SpooledPayload.open(file);
+    }
+}
@@ -0,0 +1,47 @@
+package com.riskified;
+
+import com.riskified.validations.Validation;
+
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Clients of the tests, sending to a {@link TestServer} without validation.
+ */
+public class TestClients {
+    private TestClients() {
+    }
+
+    public static RiskifiedClient.RiskifiedClientBuilder builder() {
+        return new RiskifiedClient.RiskifiedClientBuilder("test.pass.com", "ad6b6e6376fb1e3521e44ca28451d58b9605d932",
+                Environment.DEBUG).setValidation(Validation.NONE);
+    }
+
+    public static RiskifiedClient client(TestServer server) throws RiskifiedError {
+        return client(server, builder());
+    }
+
+    /**
+     * @param server the server the orders and the account actions are sent to
+     * @param builder the settings of the client, usually started with {@link #builder()}
+     * @return the client
+     */
+    public static RiskifiedClient client(TestServer server, RiskifiedClient.RiskifiedClientBuilder builder) throws RiskifiedError {
+        RiskifiedClient client = builder.build();
+        client.setBaseUrl(server.getUrl());
+        client.setAccountBaseUrl(server.getUrl());
+        return client;
+    }
+
+    /**
+     * Poll the condition until it holds, failing after 10 seconds
+     */
+    public static void waitFor(Callable<Boolean> condition) throws Exception {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.call()) {
+            assertTrue("timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+}
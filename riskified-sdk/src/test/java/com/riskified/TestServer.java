@@ -0,0 +1,88 @@
+package com.riskified;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local Riskified stand-in for tests, answers every POST with the queued (status, body) replies.
+ * The last reply is repeated once the queue is drained.
+ */
+public class TestServer {
+    private final Server server;
+    private final ConcurrentLinkedQueue<String[]> replies = new ConcurrentLinkedQueue<String[]>();
+    private final List<String> requestBodies = Collections.synchronizedList(new ArrayList<String>());
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private volatile String[] lastReply = {"200", "{\"order\":{\"id\":\"1\",\"status\":\"approved\"}}"};
+    private volatile long delayMillis;
+
+    public TestServer() throws Exception {
+        server = new Server(0);
+        server.setHandler(new AbstractHandler() {
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException {
+                requestCount.incrementAndGet();
+                StringBuilder body = new StringBuilder();
+                char[] buffer = new char[4096];
+                int read;
+                while ((read = request.getReader().read(buffer)) != -1) {
+                    body.append(buffer, 0, read);
+                }
+                requestBodies.add(body.toString());
+                if (delayMillis > 0) {
+                    try {
+                        Thread.sleep(delayMillis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                String[] reply = replies.poll();
+                if (reply == null) {
+                    reply = lastReply;
+                } else {
+                    lastReply = reply;
+                }
+                response.setStatus(Integer.parseInt(reply[0]));
+                response.setContentType("application/json; charset=UTF-8");
+                response.getWriter().write(reply[1]);
+                baseRequest.setHandled(true);
+            }
+        });
+        server.start();
+    }
+
+    public TestServer reply(int status, String body) {
+        replies.add(new String[]{String.valueOf(status), body});
+        return this;
+    }
+
+    public TestServer delay(long millis) {
+        this.delayMillis = millis;
+        return this;
+    }
+
+    public String getUrl() {
+        return "http://localhost:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+    }
+
+    public int getRequestCount() {
+        return requestCount.get();
+    }
+
+    public List<String> getRequestBodies() {
+        return requestBodies;
+    }
+
+    public void stop() throws Exception {
+        server.stop();
+    }
+}